@@ -42,5 +42,25 @@ public final class Ints {
         return value <= 0 ? 1 : value >= 0x40000000 ? 0x40000000 : 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
     }
 
+    /**
+     * Returns a big-endian representation of {@code value} in a 4-element byte array.
+     */
+    public static byte[] toByteArray(int value) {
+        return new byte[] {
+                (byte) (value >> 24),
+                (byte) (value >> 16),
+                (byte) (value >> 8),
+                (byte) value
+        };
+    }
+
+    /**
+     * Returns the {@code int} value whose big-endian representation is stored in the first 4 bytes of {@code bytes}.
+     */
+    public static int fromByteArray(byte[] bytes) {
+        checkArgument(bytes.length >= 4, "array too small: " + bytes.length);
+        return bytes[0] << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
     private Ints() {}
 }
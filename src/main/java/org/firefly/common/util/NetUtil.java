@@ -1,15 +1,26 @@
 package org.firefly.common.util;
 
+import org.firefly.common.util.internal.Maps;
+
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 public class NetUtil {
 
     private static final Pattern IP_PATTERN = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}$");
     private static final String LOCAL_IP_ADDRESS;
+    // 网卡地址可能变化(DHCP, 网卡增减), 本机地址集合过期后在下一次调用时刷新
+    private static final long LOCAL_ADDRESSES_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static volatile LocalAddresses localAddresses;
 
     static {
         InetAddress localAddress;
@@ -30,6 +41,56 @@ public class NetUtil {
         return LOCAL_IP_ADDRESS;
     }
 
+    /**
+     * host 是否是本机的地址(loopback 或者本机某个网卡上的地址)
+     */
+    public static boolean isLocalAddress(String host) {
+        if (host.equals(LOCAL_IP_ADDRESS)) {
+            return true;
+        }
+
+        // 本机地址集合及每个host的结果都缓存到过期为止, 不必每次建立连接都解析host并遍历网卡
+        LocalAddresses local = localAddresses();
+        Boolean isLocal = local.hosts.get(host);
+        if (isLocal == null) {
+            isLocal = local.contains(host);
+            local.hosts.putIfAbsent(host, isLocal);
+        }
+        return isLocal;
+    }
+
+    private static LocalAddresses localAddresses() {
+        long now = SystemClock.millisClock().now();
+        LocalAddresses local = localAddresses;
+        if (local == null || now - local.timestamp > LOCAL_ADDRESSES_TTL_MILLIS) {
+            synchronized (NetUtil.class) {
+                local = localAddresses;
+                if (local == null || now - local.timestamp > LOCAL_ADDRESSES_TTL_MILLIS) {
+                    localAddresses = local = new LocalAddresses(now, getAllLocalAddresses());
+                }
+            }
+        }
+        return local;
+    }
+
+    /**
+     * 获取本机所有网卡上的地址
+     */
+    private static Set<InetAddress> getAllLocalAddresses() {
+        Set<InetAddress> addresses = new HashSet<>();
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                Enumeration<InetAddress> inetAddresses = interfaces.nextElement().getInetAddresses();
+                while (inetAddresses.hasMoreElements()) {
+                    addresses.add(inetAddresses.nextElement());
+                }
+            }
+        } catch (Throwable ignored) {}
+
+        return Collections.unmodifiableSet(addresses);
+    }
+
     /**
      * 获取网卡中第一个有效IP
      */
@@ -62,4 +123,28 @@ public class NetUtil {
                 && !"127.0.0.1".equals(name)
                 && IP_PATTERN.matcher(name).matches());
     }
+
+    static final class LocalAddresses {
+
+        final long timestamp;
+        final Set<InetAddress> addresses;
+        // host -> 是否是本机地址
+        final ConcurrentMap<String, Boolean> hosts = Maps.newConcurrentMap();
+
+        LocalAddresses(long timestamp, Set<InetAddress> addresses) {
+            this.timestamp = timestamp;
+            this.addresses = addresses;
+        }
+
+        boolean contains(String host) {
+            try {
+                InetAddress address = InetAddress.getByName(host);
+                return address.isLoopbackAddress()
+                        || address.isAnyLocalAddress()
+                        || addresses.contains(address);
+            } catch (Throwable ignored) {
+                return false;
+            }
+        }
+    }
 }
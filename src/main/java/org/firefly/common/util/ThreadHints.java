@@ -0,0 +1,36 @@
+package org.firefly.common.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * JDK9+ 的 {@code Thread.onSpinWait()}, 在JDK8上为空操作.
+ */
+public final class ThreadHints {
+
+    private static final MethodHandle ON_SPIN_WAIT_METHOD_HANDLE;
+
+    static {
+        MethodHandle methodHandle = null;
+        try {
+            methodHandle = MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (Exception ignored) {}
+
+        ON_SPIN_WAIT_METHOD_HANDLE = methodHandle;
+    }
+
+    /**
+     * 提示处理器当前处于自旋等待中(x86上为PAUSE指令), 可以降低自旋的功耗及退出自旋时的延迟.
+     */
+    public static void onSpinWait() {
+        // static final 的 MethodHandle 会被JIT内联, 最终等同于直接调用
+        if (ON_SPIN_WAIT_METHOD_HANDLE != null) {
+            try {
+                ON_SPIN_WAIT_METHOD_HANDLE.invokeExact();
+            } catch (Throwable ignored) {}
+        }
+    }
+
+    private ThreadHints() {}
+}
@@ -0,0 +1,140 @@
+package org.firefly.common.util.collection;
+
+import org.firefly.common.util.Ints;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 分段加锁的 {@link LongObjectHashMap}, key按低位轮流分配到各个分段, 不同分段之间互不影响;
+ * 分段内以去掉低位之后的key存储, 递增的key在分段内仍然是连续的.
+ *
+ * 与 {@code ConcurrentMap<Long, V>} 相比, put/get/remove 不装箱key, 也不分配链表结点(扩容除外).
+ * 适用于key为递增id, 存活时间很短的场景, 比如进行中的调用.
+ *
+ * @param <V> The value type stored in the map, {@code null} values are not allowed.
+ */
+public class ConcurrentLongObjectHashMap<V> {
+
+    private static final int DEFAULT_STRIPES = Runtime.getRuntime().availableProcessors() << 2;
+
+    private final LongObjectHashMap<V>[] stripes;
+    private final int stripeMask;
+    private final int stripeShift;
+
+    public ConcurrentLongObjectHashMap() {
+        this(DEFAULT_STRIPES, 64);
+    }
+
+    /**
+     * @param stripes            分段数, 会被调整为2的幂
+     * @param initialCapacity    每个分段的初始容量
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongObjectHashMap(int stripes, int initialCapacity) {
+        int n = Ints.findNextPositivePowerOfTwo(stripes);
+        this.stripes = new LongObjectHashMap[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new LongObjectHashMap<>(initialCapacity);
+        }
+        stripeMask = n - 1;
+        stripeShift = Integer.numberOfTrailingZeros(n);
+    }
+
+    public V get(long key) {
+        LongObjectHashMap<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.get(localKey(key));
+        }
+    }
+
+    public V put(long key, V value) {
+        LongObjectHashMap<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.put(localKey(key), value);
+        }
+    }
+
+    public V putIfAbsent(long key, V value) {
+        LongObjectHashMap<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            V prev = stripe.get(localKey(key));
+            if (prev == null) {
+                stripe.put(localKey(key), value);
+            }
+            return prev;
+        }
+    }
+
+    public V remove(long key) {
+        LongObjectHashMap<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.remove(localKey(key));
+        }
+    }
+
+    /**
+     * 只有当前映射的值为 {@code value} (同一个对象) 时才移除.
+     */
+    public boolean remove(long key, V value) {
+        LongObjectHashMap<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            if (stripe.get(localKey(key)) == value) {
+                stripe.remove(localKey(key));
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * {@code key} 所在分段的锁, 持有该锁时对同一个 {@code key} 的多次读写是原子的.
+     */
+    public Object stripeLock(long key) {
+        return stripeOf(key);
+    }
+
+    /**
+     * 所有分段的大小之和, 并发修改时不是精确值.
+     */
+    public int size() {
+        int size = 0;
+        for (LongObjectHashMap<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 逐个分段复制出所有的值, 并发修改时不是同一时刻的快照.
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        values(values);
+        return values;
+    }
+
+    public void values(Collection<? super V> dst) {
+        for (LongObjectHashMap<V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.values(dst);
+            }
+        }
+    }
+
+    private LongObjectHashMap<V> stripeOf(long key) {
+        return stripes[(int) key & stripeMask];
+    }
+
+    // 同一分段内key的低位都相同, 去掉之后不会冲突
+    private long localKey(long key) {
+        return key >>> stripeShift;
+    }
+}
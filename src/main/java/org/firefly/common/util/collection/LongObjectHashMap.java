@@ -0,0 +1,313 @@
+package org.firefly.common.util.collection;
+
+import org.firefly.common.util.Ints;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.firefly.common.util.Preconditions.checkNotNull;
+
+/**
+ * A hash map with primitive {@code long} keys that uses open addressing, the same layout as
+ * {@link ByteObjectHashMap} but without the boxed {@link java.util.Map} views, so that put/get/remove
+ * never allocate (except when the table grows).
+ * Collisions are resolved using linear probing. Deletions implement compaction, so cost of
+ * remove can approach O(N) for full maps, which makes a small loadFactor recommended.
+ *
+ * Not thread safe, see {@link ConcurrentLongObjectHashMap}.
+ *
+ * @param <V> The value type stored in the map, {@code null} values are not allowed.
+ */
+public class LongObjectHashMap<V> {
+
+    /**
+     * Default initial capacity. Used if not specified in the constructor
+     */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * Default load factor. Used if not specified in the constructor
+     */
+    public static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    private static final int BLOCK_BITS = 4;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+    /**
+     * The maximum number of elements allowed without allocating more space.
+     */
+    private int maxSize;
+
+    /**
+     * The load factor for the map. Used to calculate {@link #maxSize}.
+     */
+    private final float loadFactor;
+
+    private long[] keys;
+    private V[] values;
+    private int size;
+    private int mask;
+    private int shift;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongObjectHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    @SuppressWarnings("unchecked")
+    public LongObjectHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initialCapacity must be >= 1");
+        }
+        if (loadFactor <= 0.0f || loadFactor > 1.0f) {
+            throw new IllegalArgumentException("loadFactor must be > 0 and <= 1");
+        }
+
+        this.loadFactor = loadFactor;
+
+        int capacity = Ints.findNextPositivePowerOfTwo(initialCapacity);
+        mask = capacity - 1;
+        shift = calcShift(capacity);
+
+        keys = new long[capacity];
+        values = (V[]) new Object[capacity];
+        maxSize = calcMaxSize(capacity);
+    }
+
+    /**
+     * Gets the value in the map with the specified key.
+     *
+     * @return the value or {@code null} if the key was not found in the map.
+     */
+    public V get(long key) {
+        int index = indexOf(key);
+        return index == -1 ? null : values[index];
+    }
+
+    /**
+     * Puts the given entry into the map.
+     *
+     * @return the previous value for this key or {@code null} if there was no previous mapping.
+     */
+    public V put(long key, V value) {
+        checkNotNull(value, "value");
+
+        int startIndex = hashIndex(key);
+        int index = startIndex;
+
+        for (;;) {
+            if (values[index] == null) {
+                // Found empty slot, use it.
+                keys[index] = key;
+                values[index] = value;
+                growSize();
+                return null;
+            }
+            if (keys[index] == key) {
+                // Found existing entry with this key, just replace the value.
+                V previousValue = values[index];
+                values[index] = value;
+                return previousValue;
+            }
+
+            // Conflict, keep probing ...
+            if ((index = probeNext(index)) == startIndex) {
+                // Can only happen if the map was full at MAX_ARRAY_SIZE and couldn't grow.
+                throw new IllegalStateException("Unable to insert");
+            }
+        }
+    }
+
+    /**
+     * Removes the entry with the specified key.
+     *
+     * @return the previous value for the key, or {@code null} if there was no mapping.
+     */
+    public V remove(long key) {
+        int index = indexOf(key);
+        if (index == -1) {
+            return null;
+        }
+
+        V prev = values[index];
+        removeAt(index);
+        return prev;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Adds all the values to {@code dst}.
+     */
+    public void values(Collection<? super V> dst) {
+        for (V value : values) {
+            if (value != null) {
+                dst.add(value);
+            }
+        }
+    }
+
+    private int indexOf(long key) {
+        int startIndex = hashIndex(key);
+        int index = startIndex;
+
+        for (;;) {
+            if (values[index] == null) {
+                // It's available, so no chance that this value exists anywhere in the map.
+                return -1;
+            }
+            if (key == keys[index]) {
+                return index;
+            }
+
+            // Conflict, keep probing ...
+            if ((index = probeNext(index)) == startIndex) {
+                return -1;
+            }
+        }
+    }
+
+    // 每 BLOCK_SIZE 个连续的key为一组, 组内相邻存放(同一个缓存行), 组的位置由 Fibonacci hashing 打散;
+    // 不能直接用低位: 长时间未移除的一段连续key会在表中形成一整块, 线性探测时落入其中的新key要探测整块
+    private int hashIndex(long key) {
+        int block = (int) (((key >>> BLOCK_BITS) * 0x9e3779b97f4a7c15L) >>> shift); // 表小于一组时 shift为64, 移位无效
+        return ((block << BLOCK_BITS) | ((int) key & (BLOCK_SIZE - 1))) & mask;
+    }
+
+    private int probeNext(int index) {
+        return (index + 1) & mask;
+    }
+
+    private void growSize() {
+        size++;
+
+        if (size > maxSize) {
+            if (keys.length == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Max capacity reached at size=" + size);
+            }
+
+            // Double the capacity.
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Removes entry at the given index position. Also performs opportunistic, incremental rehashing
+     * if necessary to not break conflict chains.
+     */
+    private void removeAt(final int index) {
+        --size;
+        // Clearing the key is not strictly necessary (for GC like in a regular collection),
+        // but recommended for security. The memory location is still fresh in the cache anyway.
+        keys[index] = 0L;
+        values[index] = null;
+
+        // In the interval from index to the next available entry, the arrays may have entries
+        // that are displaced from their base position due to prior conflicts. Iterate these
+        // entries and move them back if possible, optimizing future lookups.
+        // Knuth Section 6.4 Algorithm R, also used by the JDK's IdentityHashMap.
+
+        int nextFree = index;
+        for (int i = probeNext(index); values[i] != null; i = probeNext(i)) {
+            int bucket = hashIndex(keys[i]);
+            if (i < bucket && (bucket <= nextFree || nextFree <= i) ||
+                    bucket <= nextFree && nextFree <= i) {
+                // Move the displaced entry "back" to the first available position.
+                keys[nextFree] = keys[i];
+                values[nextFree] = values[i];
+                // Put the first entry after the displaced entry
+                keys[i] = 0L;
+                values[i] = null;
+                nextFree = i;
+            }
+        }
+    }
+
+    private static int calcShift(int capacity) {
+        return 64 - Math.max(Integer.numberOfTrailingZeros(capacity) - BLOCK_BITS, 0);
+    }
+
+    /**
+     * Calculates the maximum size allowed before rehashing.
+     */
+    private int calcMaxSize(int capacity) {
+        // Clip the upper bound so that there will always be at least one available slot.
+        int upperBound = capacity - 1;
+        return Math.min(upperBound, (int) (capacity * loadFactor));
+    }
+
+    /**
+     * Rehashes the map for the given capacity.
+     */
+    @SuppressWarnings("unchecked")
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        V[] oldVals = values;
+
+        keys = new long[newCapacity];
+        values = (V[]) new Object[newCapacity];
+
+        maxSize = calcMaxSize(newCapacity);
+        mask = newCapacity - 1;
+        shift = calcShift(newCapacity);
+
+        // Insert to the new arrays.
+        for (int i = 0; i < oldVals.length; ++i) {
+            V oldVal = oldVals[i];
+            if (oldVal != null) {
+                // Inlined put(), but much simpler: we don't need to worry about
+                // duplicated keys, growing/rehashing, or failing to insert.
+                long oldKey = oldKeys[i];
+                int index = hashIndex(oldKey);
+
+                for (;;) {
+                    if (values[index] == null) {
+                        keys[index] = oldKey;
+                        values[index] = oldVal;
+                        break;
+                    }
+
+                    // Conflict, keep probing. Can wrap around, but never reaches startIndex again.
+                    index = probeNext(index);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "{}";
+        }
+        StringBuilder sb = new StringBuilder(4 * size);
+        sb.append('{');
+        boolean first = true;
+        for (int i = 0; i < values.length; ++i) {
+            V value = values[i];
+            if (value == null) {
+                continue;
+            }
+            if (!first) {
+                sb.append(", ");
+            }
+            sb.append(keys[i]).append('=').append(value == this ? "(this Map)" : value);
+            first = false;
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -41,6 +41,18 @@ public final class JConstants {
     /** 默认的调用超时时间为3秒 **/
     public static final long DEFAULT_TIMEOUT =
             SystemPropertyUtil.getInt("firefly.rpc.invoke.timeout", 3 * 1000);
+    /** 调用超时检测的时间轮刻度(毫秒), 超时最多延迟一个刻度触发 */
+    public static final long TIMEOUT_TICK_DURATION =
+            SystemPropertyUtil.getLong("firefly.rpc.invoke.timeout.tick.duration", 10);
+    /** 调用超时检测的时间轮大小, 会被调整为2的幂 */
+    public static final int TIMEOUT_TICKS_PER_WHEEL =
+            SystemPropertyUtil.getInt("firefly.rpc.invoke.timeout.ticks.per.wheel", 512);
+    /**
+     * 同步调用等待结果时先自旋的时间上限(纳秒), 之后让出CPU, 最后才park; 实际自旋时间根据近期的等待时间自适应.
+     * 默认 0 不自旋, 可通过 ProxyFactory#spinWaitMaxNanos 按代理单独设置
+     */
+    public static final long SPIN_WAIT_MAX_NANOS =
+            SystemPropertyUtil.getLong("firefly.rpc.invoke.spin.wait.max.nanos", 0);
     /** Server链路read空闲检测, 默认60秒, 60秒没读到任何数据会强制关闭连接 */
     public static final int READER_IDLE_TIME_SECONDS =
             SystemPropertyUtil.getInt("firefly.io.reader.idle.time.seconds", 60);
@@ -48,6 +60,105 @@ public final class JConstants {
     public static final int WRITER_IDLE_TIME_SECONDS =
             SystemPropertyUtil.getInt("firefly.io.writer.idle.time.seconds", 30);
 
+    /** 在业务线程中直接序列化到(池化的)出站 ByteBuf, 由encoder回填协议头, 省去中间 byte[] 及一次内存拷贝 */
+    public static final boolean SERIALIZE_TO_OUTPUT_BUF =
+            SystemPropertyUtil.getBoolean("firefly.rpc.serialize.output.buf", false);
+
+    /**
+     * 是否合并flush, 默认关闭.
+     * 开启后同一个event-loop tick内的多次flush(每个请求/响应一次)被合并为一次, 连续读取期间每
+     * FLUSH_CONSOLIDATION_EXPLICIT_FLUSH_AFTER_FLUSHES 次强制flush一次, 以减少write系统调用的次数.
+     */
+    public static final boolean FLUSH_CONSOLIDATION =
+            SystemPropertyUtil.getBoolean("firefly.io.flush.consolidation", false);
+    /** 合并flush时, 最多合并多少次flush就强制flush一次 */
+    public static final int FLUSH_CONSOLIDATION_EXPLICIT_FLUSH_AFTER_FLUSHES =
+            SystemPropertyUtil.getInt("firefly.io.flush.consolidation.explicit.after.flushes", 256);
+
+    /** 是否与对端协商使用v2协议(见 JProtocolHeader), 对端不支持时自动使用v1 */
+    public static final boolean PROTOCOL_V2 =
+            SystemPropertyUtil.getBoolean("firefly.io.protocol.v2", true);
+
+    /** 协议体最大限制, 默认5M */
+    public static final int MAX_BODY_SIZE =
+            SystemPropertyUtil.getInt("firefly.io.decoder.max.body.size", 1024 * 1024 * 5);
+
+    /**
+     * 默认的消息体压缩阈值(字节), 超过该大小的请求/响应体被压缩, 0表示不压缩, 需要协议v2.
+     * 压缩/解压都在业务线程中进行(序列化之后/反序列化之前), IO线程只负责收发帧.
+     */
+    public static final int DEFAULT_COMPRESS_THRESHOLD =
+            SystemPropertyUtil.getInt("firefly.rpc.compress.threshold", 0);
+
+    /**
+     * 是否开启大消息体的分块传输, 默认关闭, 需要协议v2.
+     * 开启后超过 CHUNK_SIZE 的请求/响应体被拆分成多个帧, 在链路可写时逐块写出,
+     * 不再受 firefly.io.decoder.max.body.size 的限制(受 MAX_CHUNKED_BODY_SIZE 限制).
+     *
+     * 接收端收到第一块时就把消息体以流的形式交给上层, 业务线程边接收边反序列化, 每一块读完即释放;
+     * 每个流按 CHUNKED_STREAM_WINDOW 做流量控制, 所以接收端的内存占用与消息体大小无关.
+     * 注意发送端仍然先把整个消息体序列化到内存中, 等待写出的消息体由 MAX_CHUNKED_PENDING_BYTES 限制.
+     */
+    public static final boolean CHUNKED_TRANSFER =
+            SystemPropertyUtil.getBoolean("firefly.io.chunked.transfer", false);
+    /** 分块传输时每一块的大小, 默认1M */
+    public static final int CHUNK_SIZE =
+            SystemPropertyUtil.getInt("firefly.io.chunk.size", 1024 * 1024);
+    /**
+     * 分块传输时每个流的接收窗口, 默认4M: 接收端缓存的尚未被业务线程读取的块最多为第一块加上这么多字节,
+     * 业务线程每读完半个窗口就向发送端补充一次credit.
+     */
+    public static final int CHUNKED_STREAM_WINDOW =
+            SystemPropertyUtil.getInt("firefly.io.chunked.stream.window", 1024 * 1024 * 4);
+    /** 业务线程等待下一块的超时时间(毫秒), 超时后放弃读取该流 */
+    public static final long CHUNKED_READ_TIMEOUT =
+            SystemPropertyUtil.getLong("firefly.io.chunked.read.timeout", 30 * 1000);
+    /** 分块传输的消息体最大限制, 默认64M */
+    public static final int MAX_CHUNKED_BODY_SIZE =
+            SystemPropertyUtil.getInt("firefly.io.decoder.max.chunked.body.size", 1024 * 1024 * 64);
+    /** 单个连接上同时进行中(未收到最后一块)的分块传输的最大数量 */
+    public static final int MAX_CHUNKED_STREAMS =
+            SystemPropertyUtil.getInt("firefly.io.decoder.max.chunked.streams", 16);
+    /**
+     * 单个连接上分块传输的消息体最多占用的内存, 默认128M.
+     * 发送端: 等待写出的分块消息体超过该值时, 新的分块消息直接写失败.
+     * 接收端: 已收到但业务线程还没有读取的块超过该值时关闭连接(对端没有遵守流量控制).
+     */
+    public static final int MAX_CHUNKED_PENDING_BYTES =
+            SystemPropertyUtil.getInt("firefly.io.chunked.max.pending.bytes", 1024 * 1024 * 128);
+
+    /**
+     * 是否使用紧凑信封编码请求/响应的外层包装(appName, 服务元数据, 方法名, traceId 等), 默认关闭, 需要协议v2.
+     * 开启后只有参数及返回值经过可插拔的 serializer, provider按请求的编码方式回复.
+     */
+    public static final boolean COMPACT_ENVELOPE =
+            SystemPropertyUtil.getBoolean("firefly.rpc.compact.envelope", false);
+
+    /**
+     * 紧凑信封编码下每个连接上 <appName, 服务, 方法> 字典的容量, 之后的调用只携带2个字节的id, 0表示不使用字典.
+     * consumer按此容量分配id, provider只记录(并确认)此容量以内的id.
+     */
+    public static final int ENVELOPE_DICTIONARY_CAPACITY = Math.min(
+            SystemPropertyUtil.getInt("firefly.rpc.envelope.dictionary.capacity", 4096), 0xffff);
+
+    /** provider注册了 unix domain socket 路径并且与consumer在同一台机器上时, consumer是否优先通过它连接(需要 native epoll) */
+    public static final boolean PREFER_DOMAIN_SOCKET =
+            SystemPropertyUtil.getBoolean("firefly.io.prefer.domain.socket", true);
+
+    /** 发布服务及创建代理时是否预热序列化元数据(比如protostuff的schema), 避免第一个请求在延迟敏感的路径上构建 */
+    public static final boolean SERIALIZER_WARM_UP =
+            SystemPropertyUtil.getBoolean("firefly.serializer.warm.up", true);
+    /** 是否按类型记录序列化结果大小的移动估计值, 据此预先分配输出缓冲区 */
+    public static final boolean SERIALIZER_ADAPTIVE_BUF =
+            SystemPropertyUtil.getBoolean("firefly.serializer.adaptive.buf", true);
+
+    /**
+     * consumer与provider在同一个JVM中时的默认调用方式(见 InJvmMode): none, copy, reference, 默认none.
+     * copy/reference 模式下直接调用本JVM中已发布的服务, 不经过序列化(copy模式除外)及网络传输.
+     */
+    public static final String IN_JVM_MODE =
+            SystemPropertyUtil.get("firefly.rpc.injvm.mode", "none");
+
     /** Load balancer 默认预热时间 **/
     public static final int DEFAULT_WARM_UP =
             SystemPropertyUtil.getInt("firefly.rpc.load-balancer.warm-up", 10 * 60 * 1000);
@@ -31,6 +31,14 @@ public class RegisterMeta {
         address.setPort(port);
     }
 
+    public String getSocketPath() {
+        return address.getSocketPath();
+    }
+
+    public void setSocketPath(String socketPath) {
+        address.setSocketPath(socketPath);
+    }
+
     public String getGroup() {
         return serviceMeta.getGroup();
     }
@@ -115,6 +123,8 @@ public class RegisterMeta {
         private String host;
         // 端口
         private int port;
+        // provider同时监听的 unix domain socket 路径(可以为null), 同一台机器上的consumer优先使用, hashCode() 与 equals() 不计算在内
+        private String socketPath;
 
         public Address() {}
 
@@ -139,6 +149,14 @@ public class RegisterMeta {
             this.port = port;
         }
 
+        public String getSocketPath() {
+            return socketPath;
+        }
+
+        public void setSocketPath(String socketPath) {
+            this.socketPath = socketPath;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
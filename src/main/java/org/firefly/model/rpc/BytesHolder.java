@@ -1,5 +1,12 @@
 package org.firefly.model.rpc;
 
+import io.netty.buffer.ByteBuf;
+import org.firefly.common.util.collection.ByteObjectHashMap;
+import org.firefly.common.util.collection.ByteObjectMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * 消息体bytes载体, 避免在IO线程中序列化/反序列化, 这一层不关注消息体的对象结构.
  *
@@ -15,6 +22,17 @@ public abstract class BytesHolder {
 
     private byte serializerCode;
     private byte[] bytes;
+    // 零拷贝模式下decoder直接交给上层的消息体(cumulation buffer 的 retained slice), 使用完必须调用 nullBytes() 释放
+    private ByteBuf inputBuf;
+    // 分块传输时decoder收到第一块就交给上层的消息体, 业务线程边接收边反序列化, 使用完必须调用 nullBytes() 关闭
+    private InputStream inputStream;
+    // 业务线程直接序列化进去的出站buffer, readerIndex之前预留了协议头的空间, 由encoder回填
+    private ByteBuf outputBuf;
+    // 协议v2的标志位及扩展区(TLV), 扩展区按需创建
+    private byte flags;
+    private ByteObjectMap<byte[]> extensions;
+    // 消息体大小超过该阈值时在业务线程中压缩(需要协议v2), <= 0 表示不压缩, 不在网络上传输
+    private int compressThreshold;
 
     public byte serializerCode() {
         return serializerCode;
@@ -29,11 +47,113 @@ public abstract class BytesHolder {
         this.bytes = bytes;
     }
 
+    public ByteBuf inputBuf() {
+        return inputBuf;
+    }
+
+    public void inputBuf(byte serializerCode, ByteBuf inputBuf) {
+        this.serializerCode = serializerCode;
+        this.inputBuf = inputBuf;
+    }
+
+    public InputStream inputStream() {
+        return inputStream;
+    }
+
+    public void inputStream(byte serializerCode, InputStream inputStream) {
+        this.serializerCode = serializerCode;
+        this.inputStream = inputStream;
+    }
+
+    public ByteBuf outputBuf() {
+        return outputBuf;
+    }
+
+    public void outputBuf(byte serializerCode, ByteBuf outputBuf) {
+        this.serializerCode = serializerCode;
+        this.outputBuf = outputBuf;
+    }
+
+    /**
+     * 取出 outputBuf 并解除与当前 holder 的关联, 调用方获得其所有权(负责释放).
+     */
+    public ByteBuf detachOutputBuf() {
+        ByteBuf buf = outputBuf;
+        outputBuf = null;
+        return buf;
+    }
+
+    public byte flags() {
+        return flags;
+    }
+
+    public void flags(byte flags) {
+        this.flags = flags;
+    }
+
+    public int compressThreshold() {
+        return compressThreshold;
+    }
+
+    public void compressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public boolean hasExtensions() {
+        return extensions != null && !extensions.isEmpty();
+    }
+
+    public ByteObjectMap<byte[]> extensions() {
+        return extensions;
+    }
+
+    public byte[] extension(byte type) {
+        return extensions == null ? null : extensions.get(type);
+    }
+
+    public void extension(byte type, byte[] value) {
+        if (extensions == null) {
+            extensions = new ByteObjectHashMap<>(4);
+        }
+        extensions.put(type, value);
+    }
+
     public void nullBytes() {
         bytes = null; // help gc
+
+        ByteBuf buf = inputBuf;
+        if (buf != null) {
+            inputBuf = null;
+            buf.release();
+        }
+
+        // 没有读完就关闭时, 对端不再发送剩下的块
+        InputStream in = inputStream;
+        if (in != null) {
+            inputStream = null;
+            try {
+                in.close();
+            } catch (IOException ignored) {}
+        }
+
+        // 未被encoder接管(比如写失败)的 outputBuf 在这里释放
+        buf = outputBuf;
+        if (buf != null) {
+            outputBuf = null;
+            buf.release();
+        }
     }
 
+    /**
+     * 分块传输以流的形式交给上层的消息体在读完之前大小未知, 返回0.
+     */
     public int size() {
+        if (inputBuf != null) {
+            return inputBuf.readableBytes();
+        }
+        if (outputBuf != null) {
+            return outputBuf.readableBytes();
+        }
         return bytes == null ? 0 : bytes.length;
     }
 }
@@ -1,5 +1,7 @@
 package org.firefly.model.rpc.consumer.cluster;
 
+import org.firefly.serialization.SerializerType;
+
 import java.io.Serializable;
 
 public class MethodSpecialConfig implements Serializable {
@@ -12,6 +14,10 @@ public class MethodSpecialConfig implements Serializable {
 
     private ClusterStrategyConfig strategy;
 
+    private int compressThreshold;
+
+    private SerializerType serializerType;
+
     public static MethodSpecialConfig of(String methodName) {
         return new MethodSpecialConfig(methodName);
     }
@@ -30,6 +36,16 @@ public class MethodSpecialConfig implements Serializable {
         return this;
     }
 
+    public MethodSpecialConfig compressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+        return this;
+    }
+
+    public MethodSpecialConfig serializerType(SerializerType serializerType) {
+        this.serializerType = serializerType;
+        return this;
+    }
+
     public String getMethodName() {
         return methodName;
     }
@@ -49,4 +65,20 @@ public class MethodSpecialConfig implements Serializable {
     public void setStrategy(ClusterStrategyConfig strategy) {
         this.strategy = strategy;
     }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public SerializerType getSerializerType() {
+        return serializerType;
+    }
+
+    public void setSerializerType(SerializerType serializerType) {
+        this.serializerType = serializerType;
+    }
 }
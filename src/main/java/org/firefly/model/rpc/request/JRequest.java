@@ -1,5 +1,7 @@
 package org.firefly.model.rpc.request;
 
+import io.netty.buffer.ByteBuf;
+
 /**
  * Consumer's request data.
  *
@@ -43,6 +45,10 @@ public class JRequest {
         requestBytes.bytes(serializerCode, bytes);
     }
 
+    public void outputBuf(byte serializerCode, ByteBuf outputBuf) {
+        requestBytes.outputBuf(serializerCode, outputBuf);
+    }
+
     public MessageWrapper message() {
         return message;
     }
@@ -0,0 +1,23 @@
+package org.firefly.model.rpc.type;
+
+/**
+ * consumer与provider在同一个JVM中时的调用方式.
+ */
+public enum InJvmMode {
+    NONE,       // 不短路, 仍然经过序列化及网络传输
+    COPY,       // 短路调用, 参数及返回值通过序列化/反序列化深拷贝, 与远程调用的语义一致
+    REFERENCE;  // 短路调用, 直接传递参数及返回值的引用, 调用双方共享同一个对象
+
+    public static InJvmMode parse(String name) {
+        for (InJvmMode s : values()) {
+            if (s.name().equalsIgnoreCase(name)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    public static InJvmMode getDefault() {
+        return NONE;
+    }
+}
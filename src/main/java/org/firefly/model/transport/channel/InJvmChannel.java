@@ -0,0 +1,197 @@
+package org.firefly.model.transport.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.local.LocalAddress;
+import org.firefly.common.util.Reflects;
+import org.firefly.common.util.SystemClock;
+import org.firefly.common.util.collection.ByteObjectMap;
+import org.firefly.common.util.collection.ConcurrentLongObjectHashMap;
+import org.firefly.model.rpc.BytesHolder;
+import org.firefly.model.rpc.request.JRequestBytes;
+import org.firefly.model.rpc.response.JResponseBytes;
+import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.model.transport.protocol.JProtocolHeader;
+import org.firefly.rpc.consumer.proxy.future.interfice.InvokeFuture;
+import org.firefly.rpc.consumer.proxy.future.listener.JFutureListener;
+import org.firefly.serialization.envelope.EnvelopeDictionary;
+import org.firefly.transport.api.processor.ConsumerProcessor;
+import org.firefly.transport.api.processor.ProviderProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+
+import static org.firefly.common.util.exception.StackTraceUtil.stackTrace;
+
+/**
+ * consumer与provider在同一个JVM中短路调用时使用的虚拟channel, 为hooks/tracing/future等需要
+ * {@link JChannel} 的地方提供一个身份.
+ *
+ * 对象形式的短路调用不经过它传输; 已经序列化的 {@link JRequestBytes}/{@link JResponseBytes} 写入时回环交给
+ * provider/consumer端的processor, 消息体的所有权与经过 encoder/decoder 时一样转移给接收方, 不拷贝.
+ */
+public final class InJvmChannel implements JChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(InJvmChannel.class);
+
+    private static final int IN_FLIGHT_STRIPES = Runtime.getRuntime().availableProcessors() << 2;
+
+    private static final SocketAddress IN_JVM_ADDRESS = new LocalAddress("firefly.injvm");
+
+    // 短路调用中进行中的调用, 虚拟channel不会断开, 只是保持与 NettyChannel 一致
+    private final ConcurrentLongObjectHashMap<InvokeFuture<?>> inFlightFutures =
+            new ConcurrentLongObjectHashMap<>(IN_FLIGHT_STRIPES, 16);
+
+    private final ProviderProcessor providerProcessor;
+    private final ConsumerProcessor consumerProcessor;
+
+    public InJvmChannel(ProviderProcessor providerProcessor, ConsumerProcessor consumerProcessor) {
+        this.providerProcessor = providerProcessor;
+        this.consumerProcessor = consumerProcessor;
+    }
+
+    @Override
+    public String id() {
+        return "injvm";
+    }
+
+    @Override
+    public byte protocolVersion() {
+        return JProtocolHeader.PROTOCOL_VERSION_2;
+    }
+
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+
+    @Override
+    public boolean inIoThread() {
+        return false;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return IN_JVM_ADDRESS;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return IN_JVM_ADDRESS;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    @Override
+    public boolean isMarkedReconnect() {
+        return false;
+    }
+
+    @Override
+    public boolean isAutoRead() {
+        return true;
+    }
+
+    @Override
+    public void setAutoRead(boolean autoRead) {}
+
+    @Override
+    public ByteBuf allocOutputBuf() {
+        // 回环写入不经过encoder, 不需要预留协议头的空间
+        return ByteBufAllocator.DEFAULT.heapBuffer();
+    }
+
+    @Override
+    public EnvelopeDictionary envelopeDictionary() {
+        return null;
+    }
+
+    @Override
+    public ConcurrentLongObjectHashMap<InvokeFuture<?>> inFlightFutures() {
+        return inFlightFutures;
+    }
+
+    @Override
+    public JChannel close() {
+        return this;
+    }
+
+    @Override
+    public JChannel close(JFutureListener<JChannel> listener) {
+        try {
+            listener.operationSuccess(this);
+        } catch (Exception ignored) {}
+        return this;
+    }
+
+    @Override
+    public JChannel write(Object msg) {
+        try {
+            loopback(msg);
+        } catch (Throwable t) {
+            logger.warn("Writes {} fail on {}, {}.", msg, this, stackTrace(t));
+        }
+        return this;
+    }
+
+    @Override
+    public JChannel write(Object msg, JFutureListener<JChannel> listener) {
+        try {
+            loopback(msg);
+        } catch (Throwable t) {
+            try {
+                listener.operationFailure(this, t);
+            } catch (Exception ignored) {}
+            return this;
+        }
+        try {
+            listener.operationSuccess(this);
+        } catch (Exception ignored) {}
+        return this;
+    }
+
+    private void loopback(Object msg) throws Exception {
+        if (msg instanceof JRequestBytes) {
+            JRequestBytes request = (JRequestBytes) msg;
+            JRequestBytes received = new JRequestBytes(request.invokeId());
+            transfer(request, received);
+            received.timestamp(SystemClock.millisClock().now());
+
+            providerProcessor.handleRequest(this, received);
+        } else if (msg instanceof JResponseBytes) {
+            JResponseBytes response = (JResponseBytes) msg;
+            JResponseBytes received = new JResponseBytes(response.id());
+            received.status(response.status());
+            transfer(response, received);
+
+            consumerProcessor.handleResponse(this, received);
+        } else {
+            throw new IllegalArgumentException(Reflects.simpleClassName(msg));
+        }
+    }
+
+    // 与 encoder 一样接管消息体, 发送方随后调用 nullBytes() 不会影响接收方
+    private static void transfer(BytesHolder src, BytesHolder dst) {
+        dst.flags(src.flags());
+        if (src.hasExtensions()) {
+            for (ByteObjectMap.PrimitiveEntry<byte[]> ext : src.extensions().entries()) {
+                dst.extension(ext.key(), ext.value());
+            }
+        }
+        ByteBuf buf = src.detachOutputBuf();
+        if (buf != null) {
+            dst.inputBuf(src.serializerCode(), buf);
+        } else {
+            dst.bytes(src.serializerCode(), src.bytes());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InJvmChannel";
+    }
+}
@@ -1,12 +1,21 @@
 package org.firefly.model.transport.channel;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import org.firefly.common.util.constant.JConstants;
+import org.firefly.common.util.collection.ConcurrentLongObjectHashMap;
 import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.model.transport.protocol.JProtocolHeader;
+import org.firefly.rpc.consumer.proxy.future.interfice.InvokeFuture;
 import org.firefly.rpc.consumer.proxy.future.listener.JFutureListener;
+import org.firefly.serialization.envelope.EnvelopeDictionary;
+import org.firefly.transport.netty.handler.codec.encoder.ProtocolEncoder;
 import org.firefly.transport.netty.handler.connector.ConnectionWatchdog;
 
 import java.net.SocketAddress;
@@ -35,7 +44,20 @@ public class NettyChannel implements JChannel {
         return nChannel;
     }
 
+    private static final int IN_FLIGHT_STRIPES = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+
     private final Channel channel;
+    // 该连接上进行中的调用, 连接断开时只需要处理这里的调用
+    private final ConcurrentLongObjectHashMap<InvokeFuture<?>> inFlightFutures =
+            new ConcurrentLongObjectHashMap<>(IN_FLIGHT_STRIPES, 16);
+    // 与对端协商后的协议版本, 只在IO线程中修改
+    private volatile byte protocolVersion = JProtocolHeader.PROTOCOL_VERSION_1;
+    // 紧凑信封编码的连接级id字典, 第一次使用时创建
+    private volatile EnvelopeDictionary envelopeDictionary;
+    // 等待写出的分块传输消息体占用的字节数, 只在IO线程中访问
+    private long pendingChunkedBytes;
+    // 等待写出的分块传输消息体, invoke id 为key, 收到对端的 CHUNK_CREDIT 后继续写出, 只在IO线程中访问
+    private final LongObjectMap<ProtocolEncoder.ChunkedBody> chunkedBodies = new LongObjectHashMap<>(4);
 
     private NettyChannel(Channel channel) {
         this.channel = channel;
@@ -45,6 +67,37 @@ public class NettyChannel implements JChannel {
         return channel;
     }
 
+    @Override
+    public byte protocolVersion() {
+        return protocolVersion;
+    }
+
+    public void protocolVersion(byte protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    /**
+     * 增加(delta > 0)或减少等待写出的分块传输消息体的字节数, 返回修改后的值, 只能在IO线程中调用.
+     */
+    public long addPendingChunkedBytes(long delta) {
+        return pendingChunkedBytes += delta;
+    }
+
+    public ProtocolEncoder.ChunkedBody chunkedBody(long id) {
+        return chunkedBodies.get(id);
+    }
+
+    /**
+     * 登记({@code body} != null)或注销等待写出的分块传输消息体, 只能在IO线程中调用.
+     */
+    public void chunkedBody(long id, ProtocolEncoder.ChunkedBody body) {
+        if (body == null) {
+            chunkedBodies.remove(id);
+        } else {
+            chunkedBodies.put(id, body);
+        }
+    }
+
     @Override
     public String id() {
         return channel.id().asShortText(); // 注意这里的id并不是全局唯一, 单节点中是唯一的
@@ -91,6 +144,35 @@ public class NettyChannel implements JChannel {
         channel.config().setAutoRead(autoRead);
     }
 
+    @Override
+    public ByteBuf allocOutputBuf() {
+        ByteBuf buf = channel.alloc().ioBuffer();
+        // 在 readerIndex 之前预留协议头的空间, 由 ProtocolEncoder 回填, readable 部分只有消息体
+        int reserved = JProtocolHeader.V2_HEAD_LENGTH;
+        buf.ensureWritable(reserved);
+        buf.writerIndex(reserved).readerIndex(reserved);
+        return buf;
+    }
+
+    @Override
+    public EnvelopeDictionary envelopeDictionary() {
+        EnvelopeDictionary dictionary = envelopeDictionary;
+        if (dictionary == null && JConstants.ENVELOPE_DICTIONARY_CAPACITY > 0) {
+            synchronized (this) {
+                dictionary = envelopeDictionary;
+                if (dictionary == null) {
+                    envelopeDictionary = dictionary = new EnvelopeDictionary(JConstants.ENVELOPE_DICTIONARY_CAPACITY);
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    @Override
+    public ConcurrentLongObjectHashMap<InvokeFuture<?>> inFlightFutures() {
+        return inFlightFutures;
+    }
+
     @Override
     public JChannel close() {
         channel.close();
@@ -16,7 +16,11 @@
 
 package org.firefly.model.transport.channel.interfice;
 
+import io.netty.buffer.ByteBuf;
+import org.firefly.common.util.collection.ConcurrentLongObjectHashMap;
+import org.firefly.rpc.consumer.proxy.future.interfice.InvokeFuture;
 import org.firefly.rpc.consumer.proxy.future.listener.JFutureListener;
+import org.firefly.serialization.envelope.EnvelopeDictionary;
 
 import java.net.SocketAddress;
 
@@ -52,6 +56,11 @@ public interface JChannel {
      */
     String id();
 
+    /**
+     * Returns the protocol version negotiated with the remote peer.
+     */
+    byte protocolVersion();
+
     /**
      * Return {@code true} if the {@link JChannel} is active and so connected.
      */
@@ -100,6 +109,24 @@ public interface JChannel {
      */
     void setAutoRead(boolean autoRead);
 
+    /**
+     * Allocates an outbound {@link ByteBuf} with the protocol header space
+     * reserved, so that the message body can be serialized into it directly.
+     */
+    ByteBuf allocOutputBuf();
+
+    /**
+     * Returns the id dictionary of the compact envelope encoding bound to this
+     * connection, or {@code null} if not supported.
+     */
+    EnvelopeDictionary envelopeDictionary();
+
+    /**
+     * Returns the in-flight invocations on this {@link JChannel} (invoke id -> future),
+     * so that they can be failed fast when this channel becomes inactive.
+     */
+    ConcurrentLongObjectHashMap<InvokeFuture<?>> inFlightFutures();
+
     /**
      * Requests to close this {@link JChannel}.
      */
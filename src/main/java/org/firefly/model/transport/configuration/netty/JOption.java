@@ -123,6 +123,22 @@ public final class JOption<T> extends AbstractConstant<JOption<T>> {
      */
     public static final JOption<Integer> SO_BACKLOG = valueOf("SO_BACKLOG");
 
+    /**
+     * 多个server socket绑定到同一个端口, 由内核把新连接分散到各个socket上(Linux 3.9+, 只在 native epoll 下生效).
+     *
+     * acceptor会在同一端口上绑定 nBosses 个server channel, 每个注册到一个独立的boss线程上,
+     * 避免大量连接同时建立(比如consumer集群重启)时accept成为单核瓶颈.
+     */
+    public static final JOption<Boolean> SO_REUSEPORT = valueOf("SO_REUSEPORT");
+
+    /**
+     * acceptor在TCP端口之外同时监听的 unix domain socket 路径(只在 native epoll 下生效), 默认不监听.
+     *
+     * 该路径随服务地址一起注册, 同一台机器上的consumer(使用 native epoll connector)会优先通过它连接,
+     * 绕过TCP loopback协议栈.
+     */
+    public static final JOption<String> DOMAIN_SOCKET_PATH = valueOf("DOMAIN_SOCKET_PATH");
+
     public static final JOption<Integer> IP_TOS = valueOf("IP_TOS");
 
     public static final JOption<Boolean> ALLOW_HALF_CLOSURE = valueOf("ALLOW_HALF_CLOSURE");
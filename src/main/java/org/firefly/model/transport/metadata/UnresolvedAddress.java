@@ -15,13 +15,20 @@ public class UnresolvedAddress {
 
     private final String host;
     private final int port;
+    // 对端同时监听的 unix domain socket 路径(可以为null), 不影响 equals()/hashCode()
+    private final String socketPath;
 
     public UnresolvedAddress(String host, int port) {
+        this(host, port, null);
+    }
+
+    public UnresolvedAddress(String host, int port, String socketPath) {
         checkNotNull(host, "host can't be null");
         checkArgument(port > 0 && port < 0xFFFF, "port out of range:" + port);
 
         this.host = host;
         this.port = port;
+        this.socketPath = socketPath;
     }
 
     public String getHost() {
@@ -32,6 +39,10 @@ public class UnresolvedAddress {
         return port;
     }
 
+    public String getSocketPath() {
+        return socketPath;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -36,6 +36,36 @@ package org.firefly.model.transport.protocol;
  * + 8 // 消息 id, long 类型, 未来jupiter可能将id限制在48位, 留出高地址的16位作为扩展字段
  * + 4 // 消息体 body 长度, int 类型
  *
+ * **************************************************************************************************
+ *                                         Protocol v2
+ *  ┌ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ┐
+ *       2   │    1    │     1      │   1    │   1   │     8     │      4      │     2      │
+ *  ├ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ┤
+ *           │         │            │        │       │           │             │            │
+ *  │  MAGIC   MsgCode   Serializer   Status   Flags   Invoke Id   Body Length   Ext Length   Ext(TLV)   Body │
+ *           │         │            │        │       │           │             │            │
+ *  └ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ─ ┘
+ *
+ * v2消息头20个字节定长, 之后是变长的扩展区(extLength个字节, 可以为0)及消息体
+ * = 2 // magic = (short) 0xbabf
+ * + 1 // 消息类型, 同v1
+ * + 1 // 序列化类型, 独占一个字节, 不再受4位的限制
+ * + 1 // 状态位
+ * + 1 // 标志位, 每一位表示一个特性(压缩等)
+ * + 8 // 消息 id, long 类型
+ * + 4 // 消息体 body 长度, int 类型
+ * + 2 // 扩展区长度, unsigned short 类型
+ * 扩展区由若干 TLV 组成: type(1) + length(2, unsigned short) + value(length)
+ *
+ * 分块传输: 大消息体被拆分成若干个 FLAG_CHUNK 帧(invoke id 相同, 每帧 bodyLength 为该块的长度),
+ * 最后一帧同时带有 FLAG_LAST_CHUNK, 扩展区只在第一帧中出现.
+ * 每个流单独做流量控制: 第一帧之后, 发送端只能发送接收端以 CHUNK_CREDIT 帧(invoke id 相同, 消息体为4个字节的
+ * credit)授予的字节数; credit < 0 表示接收端放弃读取, 发送端以一个空的最后一帧结束该流.
+ *
+ * v2是按连接协商的: consumer连接建立后发送一个 status 为协议版本号的心跳包, 支持v2的provider
+ * 回复一个同样的心跳包后双方开始使用v2编码, 老版本的provider会忽略这个心跳包, 双方继续使用v1.
+ * 两个版本的decoder都能同时识别 0xbabe/0xbabf.
+ *
  * jupiter
  * org.jupiter.transport
  *
@@ -52,6 +82,31 @@ public class JProtocolHeader {
      * */
     public static final short MAGIC = (short) 0xbabe;
 
+    /** v2协议头长度(不包括扩展区) */
+    public static final int V2_HEAD_LENGTH = 20;
+    /** Magic(v2) */
+    public static final short MAGIC_V2 = (short) 0xbabf;
+
+    /** Protocol Version: 借用心跳包的状态位来协商 =================================================================== */
+    public static final byte PROTOCOL_VERSION_1         = 0x01;
+    public static final byte PROTOCOL_VERSION_2         = 0x02;
+
+    /** 协商协议版本的心跳包使用的id */
+    public static final long NEGOTIATE_REQUEST_ID       = 1L;       // 请求协商
+    public static final long NEGOTIATE_ACK_ID           = 2L;       // 确认协商结果
+
+    /** Flags(v2): 每一位表示一个特性 ================================================================================ */
+    // 0x01 ~ 0x80 预留给 压缩/分块/单向调用/优先级 等特性
+    public static final byte FLAG_COMPRESSED            = 0x01;     // 消息体是压缩过的
+    public static final byte FLAG_CHUNK                 = 0x02;     // 消息体被拆分成多个帧(共享同一个id)传输, 当前帧是其中一块
+    public static final byte FLAG_LAST_CHUNK            = 0x04;     // 最后一块
+    public static final byte FLAG_ENVELOPE              = 0x08;     // 消息体使用紧凑信封编码(见 EnvelopeCodec), 只有参数/返回值经过serializer
+
+    /** Extension Type(v2): 扩展区TLV的类型 ========================================================================= */
+    // 0x01 ~ 0x7f 预留给框架使用
+    public static final byte EXT_COMPRESS_THRESHOLD     = 0x01;     // consumer期望的响应压缩阈值, int
+    public static final byte EXT_ENVELOPE_ID            = 0x02;     // provider已记录请求(KIND_DEFINE)所定义的信封字典id, int
+
     /** Message Code: 0x01 ~ 0x0f =================================================================================== */
     public static final byte REQUEST                    = 0x01;     // Request
     public static final byte RESPONSE                   = 0x02;     // Response
@@ -60,6 +115,7 @@ public class JProtocolHeader {
     public static final byte SUBSCRIBE_SERVICE          = 0x05;     // 订阅服务
     public static final byte OFFLINE_NOTICE             = 0x06;     // 通知下线
     public static final byte ACK                        = 0x07;     // Acknowledge
+    public static final byte CHUNK_CREDIT               = 0x08;     // 分块传输的流量控制, 只在v2中出现
     public static final byte HEARTBEAT                  = 0x0f;     // Heartbeat
 
     private byte messageCode;       // sign 低地址4位
@@ -77,6 +133,8 @@ public class JProtocolHeader {
     private byte status;            // 响应状态码
     private long id;                // request.invokeId, 用于映射 <id, request, response> 三元组
     private int bodyLength;         // 消息体长度
+    private byte flags;             // 标志位(v2)
+    private int extLength;          // 扩展区长度(v2)
 
     // 相当于“编码”：消息标志位, 低地址4位messageCode用来表示消息类型request/response/heartbeat等, 高地址4位serializerCode用来表示序列化类型，左高右低。
     public static byte toSign(byte serializerCode, byte messageCode) {
@@ -95,10 +153,18 @@ public class JProtocolHeader {
         return messageCode;
     }
 
+    public void messageCode(byte messageCode) {
+        this.messageCode = messageCode;
+    }
+
     public byte serializerCode() {
         return serializerCode;
     }
 
+    public void serializerCode(byte serializerCode) {
+        this.serializerCode = serializerCode;
+    }
+
     public byte status() {
         return status;
     }
@@ -123,6 +189,22 @@ public class JProtocolHeader {
         this.bodyLength = bodyLength;
     }
 
+    public byte flags() {
+        return flags;
+    }
+
+    public void flags(byte flags) {
+        this.flags = flags;
+    }
+
+    public int extLength() {
+        return extLength;
+    }
+
+    public void extLength(int extLength) {
+        this.extLength = extLength;
+    }
+
     @Override
     public String toString() {
         return "JProtocolHeader{" +
@@ -131,6 +213,8 @@ public class JProtocolHeader {
                 ", status=" + status +
                 ", id=" + id +
                 ", bodyLength=" + bodyLength +
+                ", flags=" + flags +
+                ", extLength=" + extLength +
                 '}';
     }
 }
@@ -4,6 +4,7 @@ import org.firefly.model.rpc.response.JResponse;
 import org.firefly.model.rpc.response.JResponseBytes;
 import org.firefly.model.transport.channel.interfice.JChannel;
 import org.firefly.rpc.consumer.processor.task.ConsumerMessageTask;
+import org.firefly.rpc.consumer.proxy.future.DefaultInvokeFuture;
 import org.firefly.transport.api.processor.ConsumerProcessor;
 
 import java.util.concurrent.Executor;
@@ -29,4 +30,21 @@ public class DefaultConsumerProcessor implements ConsumerProcessor {
             executor.execute(task);
         }
     }
+
+    @Override
+    public void handleInactive(final JChannel channel) throws Exception {
+        // 与响应走同一个executor, 断开之前已读到的响应有机会先于失败通知被处理
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                DefaultInvokeFuture.channelInactive(channel);
+            }
+        };
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
 }
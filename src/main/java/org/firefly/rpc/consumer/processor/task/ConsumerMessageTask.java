@@ -1,16 +1,25 @@
 package org.firefly.rpc.consumer.processor.task;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.firefly.common.util.Ints;
 import org.firefly.model.rpc.response.JResponse;
 import org.firefly.model.rpc.response.JResponseBytes;
 import org.firefly.model.rpc.response.ResultWrapper;
 import org.firefly.model.transport.channel.interfice.JChannel;
 import org.firefly.model.transport.configuration.Status;
+import org.firefly.model.transport.protocol.JProtocolHeader;
 import org.firefly.rpc.consumer.proxy.future.DefaultInvokeFuture;
 import org.firefly.rpc.exeption.FireflySerializationException;
 import org.firefly.serialization.Serializer;
 import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.compression.DeflateCompressor;
+import org.firefly.serialization.envelope.EnvelopeCodec;
+import org.firefly.serialization.envelope.EnvelopeDictionary;
+
+import java.io.InputStream;
+
 import static org.firefly.common.util.exception.StackTraceUtil.stackTrace;
 
 public class ConsumerMessageTask implements Runnable {
@@ -32,19 +41,49 @@ public class ConsumerMessageTask implements Runnable {
         final JResponseBytes _responseBytes = _response.responseBytes();
 
         byte s_code = _response.serializerCode();
-        byte[] bytes = _responseBytes.bytes();
-        _responseBytes.nullBytes();
 
         Serializer serializer = SerializerFactory.getSerializer(s_code);
+        // provider的异常响应不使用信封编码, 以响应自身的标志位为准
+        boolean envelope = (_responseBytes.flags() & JProtocolHeader.FLAG_ENVELOPE) != 0;
+        if (envelope) {
+            // provider已记录该id, 之后的请求只需要携带id
+            byte[] definedId = _responseBytes.extension(JProtocolHeader.EXT_ENVELOPE_ID);
+            EnvelopeDictionary dictionary;
+            if (definedId != null && (dictionary = channel.envelopeDictionary()) != null) {
+                dictionary.confirm(Ints.fromByteArray(definedId));
+            }
+        }
         ResultWrapper wrapper;
         try {
-            wrapper = serializer.readObject(bytes, ResultWrapper.class);
+            // 压缩过的消息体在业务线程中解压
+            DeflateCompressor.decompress(_responseBytes);
+
+            InputStream inputStream = _responseBytes.inputStream();
+            ByteBuf inputBuf = _responseBytes.inputBuf();
+            byte[] bytes = _responseBytes.bytes();
+            if (inputStream != null) {
+                // 分块传输, 边接收边反序列化, 每一块读完即释放
+                wrapper = envelope
+                        ? EnvelopeCodec.readResult(serializer, inputStream)
+                        : serializer.readObject(inputStream, ResultWrapper.class);
+            } else if (inputBuf != null) {
+                // 零拷贝模式, 直接从decoder交过来的 ByteBuf 中反序列化
+                wrapper = envelope
+                        ? EnvelopeCodec.readResult(serializer, inputBuf)
+                        : serializer.readObject(inputBuf, ResultWrapper.class);
+            } else {
+                wrapper = envelope
+                        ? EnvelopeCodec.readResult(serializer, bytes)
+                        : serializer.readObject(bytes, ResultWrapper.class);
+            }
         } catch (Throwable t) {
             logger.error("Deserialize object failed: {}, {}.", channel.remoteAddress(), stackTrace(t));
 
             _response.status(Status.DESERIALIZATION_FAIL);
             wrapper = new ResultWrapper();
             wrapper.setError(new FireflySerializationException(t));
+        } finally {
+            _responseBytes.nullBytes(); // 释放 inputBuf/inputStream
         }
         _response.result(wrapper);
 
@@ -3,10 +3,13 @@ package org.firefly.rpc.consumer.proxy;
 import org.firefly.common.util.Strings;
 import org.firefly.common.util.constant.JConstants;
 import org.firefly.common.util.internal.Lists;
+import org.firefly.common.util.internal.Maps;
 import org.firefly.common.util.proxy.ProxiesProducer;
 import org.firefly.model.rpc.consumer.cluster.ClusterStrategyConfig;
 import org.firefly.model.rpc.consumer.cluster.MethodSpecialConfig;
 import org.firefly.model.rpc.metadata.ServiceMetadata;
+import org.firefly.model.rpc.request.MessageWrapper;
+import org.firefly.model.rpc.response.ResultWrapper;
 import org.firefly.model.transport.channel.interfice.JChannelGroup;
 import org.firefly.model.transport.metadata.Directory;
 import org.firefly.model.transport.metadata.UnresolvedAddress;
@@ -15,7 +18,9 @@ import org.firefly.rpc.consumer.proxy.balance.LoadBalancerFactory;
 import org.firefly.model.rpc.type.LoadBalancerType;
 import org.firefly.rpc.consumer.proxy.dispatch.DefaultRoundDispatcher;
 import org.firefly.model.rpc.type.DispatchType;
+import org.firefly.model.rpc.type.InJvmMode;
 import org.firefly.rpc.consumer.proxy.dispatch.Dispatcher;
+import org.firefly.rpc.consumer.proxy.future.InvokeFutures;
 import org.firefly.rpc.consumer.proxy.hook.ConsumerHook;
 import org.firefly.model.rpc.type.InvokeType;
 import org.firefly.rpc.consumer.proxy.invoke.firestinvoke.bytebuddy.AsyncInvoker;
@@ -24,11 +29,16 @@ import org.firefly.rpc.consumer.proxy.invoke.firestinvoke.generic.AsyncGenericIn
 import org.firefly.rpc.consumer.proxy.invoke.firestinvoke.generic.SyncGenericInvoker;
 import org.firefly.rpc.consumer.proxy.invoke.secondinvoke.cluster.ClusterInvoker;
 import org.firefly.rpc.provider.annotation.ServiceProvider;
+import org.firefly.serialization.SerializerFactory;
 import org.firefly.serialization.SerializerType;
 import org.firefly.transport.api.connector.JConnector;
 import org.firefly.transport.api.connector.connection.JConnection;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.firefly.common.util.Preconditions.checkArgument;
 import static org.firefly.common.util.Preconditions.checkNotNull;
@@ -65,6 +75,12 @@ public class ProxyFactory<I> {
     private DispatchType dispatchType = DispatchType.getDefault();  //default：ROUND 单播
     // 调用超时时间设置
     private long timeoutMillis;
+    // 消息体压缩阈值, 超过该大小的请求/响应体被压缩(需要协议v2)
+    private int compressThreshold;
+    // consumer与provider在同一个JVM中时的调用方式
+    private InJvmMode inJvmMode;
+    // 同步等待结果时自旋时间的上限(纳秒), 0 为不自旋, 负数表示使用全局配置
+    private long spinWaitMaxNanos = -1;
     // 指定方法的单独配置, 方法参数类型不做区别对待
     private List<MethodSpecialConfig> methodSpecialConfigs;
     // 消费者端钩子函数
@@ -153,6 +169,25 @@ public class ProxyFactory<I> {
         return this;
     }
 
+    public ProxyFactory<I> compressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+        return this;
+    }
+
+    public ProxyFactory<I> inJvmMode(InJvmMode inJvmMode) {
+        this.inJvmMode = inJvmMode;
+        return this;
+    }
+
+    /**
+     * 同步调用等待结果时先自旋再park, 适合几十微秒内返回的调用; 实际自旋时间根据该代理近期的等待时间自适应,
+     * 不超过 {@code spinWaitMaxNanos}, 0 为不自旋.
+     */
+    public ProxyFactory<I> spinWaitMaxNanos(long spinWaitMaxNanos) {
+        this.spinWaitMaxNanos = spinWaitMaxNanos;
+        return this;
+    }
+
     public ProxyFactory<I> addMethodSpecialConfig(MethodSpecialConfig... methodSpecialConfigs) {
         Collections.addAll(this.methodSpecialConfigs, methodSpecialConfigs);
         return this;
@@ -211,6 +246,10 @@ public class ProxyFactory<I> {
                 Strings.isNotBlank(version) ? version : JConstants.DEFAULT_VERSION
         );
 
+        if (JConstants.SERIALIZER_WARM_UP) {
+            warmUpSerializer();
+        }
+
         // JNettyTcpConnector -> NettyConnector：DirectoryJChannelGroup
         JConnector<JConnection> connector = client.connector();
 
@@ -229,6 +268,9 @@ public class ProxyFactory<I> {
         Dispatcher dispatcher = dispatcher(metadata, serializerType)
                 .hooks(hooks)
                 .timeoutMillis(timeoutMillis)
+                .compressThreshold(compressThreshold)
+                .inJvmMode(inJvmMode)
+                .spinWaitMaxNanos(spinWaitMaxNanos)
                 .methodSpecialConfigs(methodSpecialConfigs);
 
         /**
@@ -287,4 +329,33 @@ public class ProxyFactory<I> {
     private static UnsupportedOperationException reject(String message) {
         return new UnsupportedOperationException(message);
     }
+
+    // 预热接口方法的参数及返回值类型, 以及请求/响应的外层包装类型, 只需预热当前使用的序列化方式
+    private void warmUpSerializer() {
+        Map<SerializerType, List<Type>> typesMapping = Maps.newHashMap();
+        for (Method method : interfaceClass.getMethods()) {
+            SerializerType methodSerializerType = serializerType;
+            for (MethodSpecialConfig config : methodSpecialConfigs) {
+                if (config.getSerializerType() != null && config.getMethodName().equals(method.getName())) {
+                    methodSerializerType = config.getSerializerType();
+                }
+            }
+
+            List<Type> types = typesMapping.get(methodSerializerType);
+            if (types == null) {
+                types = Lists.newArrayList();
+                types.add(MessageWrapper.class);
+                types.add(ResultWrapper.class);
+                typesMapping.put(methodSerializerType, types);
+            }
+            // 返回 CompletableFuture<T> 的方法, 序列化的是 T
+            types.add(InvokeFutures.isCompletionStage(method.getReturnType())
+                    ? InvokeFutures.valueType(method) : method.getGenericReturnType());
+            Collections.addAll(types, method.getGenericParameterTypes());
+        }
+        for (Map.Entry<SerializerType, List<Type>> entry : typesMapping.entrySet()) {
+            List<Type> types = entry.getValue();
+            SerializerFactory.getSerializer(entry.getKey().value()).warmUp(types.toArray(new Type[types.size()]));
+        }
+    }
 }
@@ -2,6 +2,7 @@ package org.firefly.rpc.consumer.proxy.dispatch;
 
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.firefly.common.util.Ints;
 import org.firefly.common.util.SystemClock;
 import org.firefly.common.util.constant.JConstants;
 import org.firefly.common.util.internal.Maps;
@@ -13,6 +14,9 @@ import org.firefly.model.rpc.request.MessageWrapper;
 import org.firefly.model.rpc.response.JResponse;
 import org.firefly.model.rpc.response.ResultWrapper;
 import org.firefly.model.rpc.type.DispatchType;
+import org.firefly.model.rpc.type.InJvmMode;
+import org.firefly.rpc.provider.processor.InJvmProviderProcessor;
+import org.firefly.rpc.provider.processor.task.InJvmMessageTask;
 import org.firefly.rpc.tracking.TraceId;
 import org.firefly.rpc.tracking.TracingRecorder;
 import org.firefly.rpc.tracking.TracingUtil;
@@ -20,8 +24,10 @@ import org.firefly.model.transport.channel.CopyOnWriteGroupList;
 import org.firefly.model.transport.channel.interfice.JChannel;
 import org.firefly.model.transport.channel.interfice.JChannelGroup;
 import org.firefly.model.transport.configuration.Status;
+import org.firefly.model.transport.protocol.JProtocolHeader;
 import org.firefly.rpc.consumer.proxy.balance.interfice.LoadBalancer;
 import org.firefly.rpc.consumer.proxy.future.DefaultInvokeFuture;
+import org.firefly.rpc.consumer.proxy.future.SpinWaitStrategy;
 import org.firefly.rpc.consumer.proxy.future.listener.JFutureListener;
 import org.firefly.rpc.consumer.clientserver.FClient;
 import org.firefly.rpc.consumer.proxy.hook.ConsumerHook;
@@ -46,6 +52,15 @@ abstract class AbstractDispatcher implements Dispatcher {
     private long timeoutMillis = JConstants.DEFAULT_TIMEOUT;    // 调用超时时间设置
     // 针对指定方法单独设置的超时时间, 方法名为key, 方法参数类型不做区别对待
     private Map<String, Long> methodSpecialTimeoutMapping = Maps.newHashMap();
+    private int compressThreshold = JConstants.DEFAULT_COMPRESS_THRESHOLD; // 消息体压缩阈值
+    // 针对指定方法单独设置的压缩阈值, 方法名为key
+    private Map<String, Integer> methodSpecialCompressThresholdMapping = Maps.newHashMap();
+    // 针对指定方法单独设置的序列化方式, 方法名为key, provider按请求的序列化方式回复
+    private Map<String, Serializer> methodSpecialSerializerMapping = Maps.newHashMap();
+    // consumer与provider在同一个JVM中时的短路调用处理器, InJvmMode.NONE 时为null
+    private InJvmProviderProcessor inJvmProcessor;
+    // 同步等待结果时的自旋策略, 同一个代理的所有调用共享自适应的统计, null 表示直接park
+    private SpinWaitStrategy spinWaitStrategy = SpinWaitStrategy.adaptive(JConstants.SPIN_WAIT_MAX_NANOS);
 
     public AbstractDispatcher(ServiceMetadata metadata, SerializerType serializerType) {
         this(null, metadata, serializerType);
@@ -55,6 +70,7 @@ abstract class AbstractDispatcher implements Dispatcher {
         this.loadBalancer = loadBalancer;
         this.metadata = metadata;
         this.serializerImpl = SerializerFactory.getSerializer(serializerType.value());
+        inJvmMode(InJvmMode.parse(JConstants.IN_JVM_MODE));
     }
 
     @Override
@@ -66,6 +82,14 @@ abstract class AbstractDispatcher implements Dispatcher {
         return serializerImpl;
     }
 
+    public Serializer serializer(String methodName) {
+        Serializer methodSerializer = methodSpecialSerializerMapping.get(methodName);
+        if (methodSerializer != null) {
+            return methodSerializer;
+        }
+        return serializerImpl;
+    }
+
     public ConsumerHook[] hooks() {
         return hooks;
     }
@@ -86,6 +110,43 @@ abstract class AbstractDispatcher implements Dispatcher {
         return this;
     }
 
+    public SpinWaitStrategy spinWaitStrategy() {
+        return spinWaitStrategy;
+    }
+
+    @Override
+    public Dispatcher spinWaitMaxNanos(long spinWaitMaxNanos) {
+        if (spinWaitMaxNanos >= 0) {
+            this.spinWaitStrategy = SpinWaitStrategy.adaptive(spinWaitMaxNanos);
+        }
+        return this;
+    }
+
+    @Override
+    public Dispatcher compressThreshold(int compressThreshold) {
+        if (compressThreshold > 0) {
+            this.compressThreshold = compressThreshold;
+        }
+        return this;
+    }
+
+    @Override
+    public Dispatcher inJvmMode(InJvmMode inJvmMode) {
+        if (inJvmMode != null) {
+            switch (inJvmMode) {
+                case COPY:
+                    inJvmProcessor = new InJvmProviderProcessor(true);
+                    break;
+                case REFERENCE:
+                    inJvmProcessor = new InJvmProviderProcessor(false);
+                    break;
+                default:
+                    inJvmProcessor = null;
+            }
+        }
+        return this;
+    }
+
     @Override
     public Dispatcher methodSpecialConfigs(List<MethodSpecialConfig> methodSpecialConfigs) {
         if (!methodSpecialConfigs.isEmpty()) {
@@ -94,6 +155,15 @@ abstract class AbstractDispatcher implements Dispatcher {
                 if (timeoutMillis > 0) {
                     methodSpecialTimeoutMapping.put(config.getMethodName(), timeoutMillis);
                 }
+                int compressThreshold = config.getCompressThreshold();
+                if (compressThreshold > 0) {
+                    methodSpecialCompressThresholdMapping.put(config.getMethodName(), compressThreshold);
+                }
+                SerializerType serializerType = config.getSerializerType();
+                if (serializerType != null) {
+                    methodSpecialSerializerMapping.put(
+                            config.getMethodName(), SerializerFactory.getSerializer(serializerType.value()));
+                }
             }
         }
         return this;
@@ -107,6 +177,61 @@ abstract class AbstractDispatcher implements Dispatcher {
         return timeoutMillis;
     }
 
+    public int getMethodSpecialCompressThreshold(String methodName) {
+        Integer methodCompressThreshold = methodSpecialCompressThresholdMapping.get(methodName);
+        if (methodCompressThreshold != null && methodCompressThreshold > 0) {
+            return methodCompressThreshold;
+        }
+        return compressThreshold;
+    }
+
+    // 设置请求体的压缩阈值, 并通过扩展区告知provider对响应体使用同样的阈值, 只在协议v2下生效
+    protected void setCompressThreshold(JChannel channel, JRequest request, String methodName) {
+        int threshold = getMethodSpecialCompressThreshold(methodName);
+        if (threshold > 0 && channel.protocolVersion() >= JProtocolHeader.PROTOCOL_VERSION_2) {
+            JRequestBytes requestBytes = request.requestBytes();
+            requestBytes.compressThreshold(threshold);
+            requestBytes.extension(JProtocolHeader.EXT_COMPRESS_THRESHOLD, Ints.toByteArray(threshold));
+        }
+    }
+
+    // 同一个JVM中是否发布了目标服务并且允许短路调用
+    protected boolean isInJvm() {
+        InJvmProviderProcessor processor = inJvmProcessor;
+        return processor != null && processor.lookupService(metadata) != null;
+    }
+
+    // 同一个JVM中短路调用, 不经过序列化及网络传输, hooks/tracing/metrics与远程调用一致
+    protected <T> DefaultInvokeFuture<T> invokeInJvm(MessageWrapper message, Class<T> returnType) {
+        final InJvmProviderProcessor processor = inJvmProcessor;
+        final JChannel channel = processor.channel();
+
+        doTracing(message, channel);
+
+        // 与远程调用一样使用该方法指定的序列化方式, provider端按请求的 serializerCode 拷贝响应
+        Serializer serializer = serializer(message.getMethodName());
+        JRequest request = new JRequest();
+        request.bytes(serializer.code(), null);
+        request.message(processor.copyOf(message, serializer));
+
+        long timeoutMillis = getMethodSpecialTimeoutMillis(message.getMethodName());
+        DefaultInvokeFuture<T> future = DefaultInvokeFuture
+                .with(request.invokeId(), channel, returnType, timeoutMillis, DispatchType.ROUND)
+                .hooks(hooks())
+                .spinWaitStrategy(spinWaitStrategy());
+        future.markSent();
+
+        // hook.before()
+        ConsumerHook[] hooks = future.hooks();
+        for (int i = 0; i < hooks.length; i++) {
+            hooks[i].before(request, channel);
+        }
+
+        new InJvmMessageTask(processor, request).run();
+
+        return future;
+    }
+
     protected JChannel select(FClient client) {
         // stack copy
         final ServiceMetadata _metadata = metadata;
@@ -170,19 +295,22 @@ abstract class AbstractDispatcher implements Dispatcher {
 
         final JRequestBytes requestBytes = request.requestBytes();
         final ConsumerHook[] hooks = future.hooks();
+        // 单播时消息体只属于这一次写, 无论成功失败都在这里释放(encoder已接管的 outputBuf 不会被重复释放);
+        // 广播时同一个 requestBytes 被写到多个channel, 不能在某一个channel写完时释放
+        final boolean releaseBytes = dispatchType == DispatchType.ROUND;
 
         channel.write(requestBytes, new JFutureListener<JChannel>() {
 
             @SuppressWarnings("all")
             @Override
             public void operationSuccess(JChannel channel) throws Exception {
-                // 标记已发送
-                future.markSent();
-
-                if (dispatchType == DispatchType.ROUND) {
+                if (releaseBytes) {
                     requestBytes.nullBytes();
                 }
 
+                // 标记已发送
+                future.markSent();
+
                 // hook.before()
                 for (int i = 0; i < hooks.length; i++) {
                     hooks[i].before(request, channel);
@@ -191,8 +319,8 @@ abstract class AbstractDispatcher implements Dispatcher {
 
             @Override
             public void operationFailure(JChannel channel, Throwable cause) throws Exception {
-                if (dispatchType == DispatchType.ROUND) {
-                    requestBytes.nullBytes();
+                if (releaseBytes) {
+                    requestBytes.nullBytes(); // 释放未被encoder接管的 outputBuf
                 }
 
                 if (logger.isWarnEnabled()) {
@@ -1,16 +1,22 @@
 package org.firefly.rpc.consumer.proxy.dispatch;
 
+import io.netty.buffer.ByteBuf;
+import org.firefly.common.util.constant.JConstants;
 import org.firefly.model.rpc.metadata.ServiceMetadata;
 import org.firefly.model.rpc.request.JRequest;
 import org.firefly.model.rpc.request.MessageWrapper;
 import org.firefly.model.rpc.type.DispatchType;
 import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.model.transport.protocol.JProtocolHeader;
 import org.firefly.rpc.consumer.clientserver.FClient;
 import org.firefly.rpc.consumer.proxy.balance.interfice.LoadBalancer;
 import org.firefly.rpc.consumer.proxy.future.DefaultInvokeFuture;
 import org.firefly.rpc.consumer.proxy.future.interfice.InvokeFuture;
 import org.firefly.serialization.Serializer;
 import org.firefly.serialization.SerializerType;
+import org.firefly.serialization.compression.DeflateCompressor;
+import org.firefly.serialization.envelope.EnvelopeCodec;
+import org.firefly.serialization.envelope.EnvelopeDictionary;
 
 /**
  * 单播方式派发消息.
@@ -26,8 +32,8 @@ public class DefaultRoundDispatcher extends AbstractDispatcher {
     @Override
     public <T> InvokeFuture<T> dispatch(FClient client, String methodName, Object[] args, Class<T> returnType) {
         // stack copy
-        // SerializerType 默认为：PROTO_STUFF ((byte) 0x01) ---> ProtoStuffSerializer
-        final Serializer _serializer = serializer();
+        // SerializerType 默认为：PROTO_STUFF ((byte) 0x01) ---> ProtoStuffSerializer, 可以通过 MethodSpecialConfig 按方法指定
+        final Serializer _serializer = serializer(methodName);
 
         MessageWrapper message = new MessageWrapper(metadata());
         message.setAppName(client.appName()); // 默认：UNKNOWN
@@ -35,23 +41,63 @@ public class DefaultRoundDispatcher extends AbstractDispatcher {
         // 不需要方法参数类型, 服务端会根据args具体类型按照JLS规则动态dispatch
         message.setArgs(args);
 
+        // provider就在当前JVM中, 短路调用
+        if (isInJvm()) {
+            return invokeInJvm(message, returnType);
+        }
+
         // 通过软负载均衡选择一个channel
         JChannel channel = select(client);
 
         doTracing(message, channel);
 
         byte s_code = _serializer.code();  // ProtoStuffSerializer.code() = (byte) 0x01
-        // 在业务线程中序列化, 减轻IO线程负担
-        byte[] bytes = _serializer.writeObject(message);
 
         JRequest request = new JRequest();
         request.message(message);
-        request.bytes(s_code, bytes);
+        // 协议v2下可以使用紧凑信封编码, 只有参数经过serializer
+        boolean envelope = JConstants.COMPACT_ENVELOPE && channel.protocolVersion() >= JProtocolHeader.PROTOCOL_VERSION_2;
+        // 连接上的id字典, provider确认过的服务及方法只携带id
+        EnvelopeDictionary dictionary = envelope ? channel.envelopeDictionary() : null;
+        // 在业务线程中序列化, 减轻IO线程负担
+        if (JConstants.SERIALIZE_TO_OUTPUT_BUF) {
+            // 直接序列化到出站 ByteBuf 中, encoder只需回填协议头
+            ByteBuf buf = channel.allocOutputBuf();
+            try {
+                if (envelope) {
+                    EnvelopeCodec.writeMessage(_serializer, message, dictionary, buf);
+                } else {
+                    _serializer.writeObject(buf, message);
+                }
+            } catch (Throwable t) {
+                buf.release();
+                throw t;
+            }
+            request.outputBuf(s_code, buf);
+        } else {
+            byte[] bytes = envelope ? EnvelopeCodec.writeMessage(_serializer, message, dictionary) : _serializer.writeObject(message);
+            request.bytes(s_code, bytes);
+        }
+        if (envelope) {
+            request.requestBytes().flags(JProtocolHeader.FLAG_ENVELOPE);
+        }
+
+        DefaultInvokeFuture<T> future;
+        try {
+            setCompressThreshold(channel, request, methodName);
+            // 与序列化一样在业务线程中压缩, encoder只负责组帧; 压缩之后的消息体再按需分块
+            DeflateCompressor.compress(request.requestBytes(), channel);
 
-        long timeoutMillis = getMethodSpecialTimeoutMillis(methodName);
-        DefaultInvokeFuture<T> future = DefaultInvokeFuture
-                .with(request.invokeId(), channel, returnType, timeoutMillis, DispatchType.ROUND)
-                .hooks(hooks());
+            long timeoutMillis = getMethodSpecialTimeoutMillis(methodName);
+            future = DefaultInvokeFuture
+                    .with(request.invokeId(), channel, returnType, timeoutMillis, DispatchType.ROUND)
+                    .hooks(hooks())
+                    .spinWaitStrategy(spinWaitStrategy());
+        } catch (Throwable t) {
+            // 还没有交给channel, 由这里释放已经序列化的 outputBuf
+            request.requestBytes().nullBytes();
+            throw t;
+        }
 
         return write(channel, request, future, DispatchType.ROUND);
     }
@@ -2,6 +2,7 @@ package org.firefly.rpc.consumer.proxy.dispatch;
 
 import org.firefly.model.rpc.consumer.cluster.MethodSpecialConfig;
 import org.firefly.model.rpc.metadata.ServiceMetadata;
+import org.firefly.model.rpc.type.InJvmMode;
 import org.firefly.rpc.consumer.clientserver.FClient;
 import org.firefly.rpc.consumer.proxy.future.interfice.InvokeFuture;
 import org.firefly.rpc.consumer.proxy.hook.ConsumerHook;
@@ -18,5 +19,11 @@ public interface Dispatcher {
 
     Dispatcher timeoutMillis(long timeoutMillis);
 
+    Dispatcher compressThreshold(int compressThreshold);
+
+    Dispatcher inJvmMode(InJvmMode inJvmMode);
+
+    Dispatcher spinWaitMaxNanos(long spinWaitMaxNanos);
+
     Dispatcher methodSpecialConfigs(List<MethodSpecialConfig> methodSpecialConfigs);
 }
@@ -1,5 +1,6 @@
 package org.firefly.rpc.consumer.proxy.future;
 
+import org.firefly.common.util.ThreadHints;
 import org.firefly.common.util.exception.Signal;
 import org.firefly.common.util.internal.unsafe.JUnsafe;
 
@@ -50,7 +51,8 @@ public abstract class AbstractFuture<V> {
     protected V get() throws Throwable {
         int s = state;
         if (s <= COMPLETING) {
-            s = awaitDone(false, 0L);
+            SpinWaitStrategy strategy = spinWaitStrategy();
+            s = strategy == null ? awaitDone(false, 0L) : spinThenAwaitDone(strategy, false, 0L);
         }
         return report(s);
     }
@@ -60,8 +62,12 @@ public abstract class AbstractFuture<V> {
             throw new NullPointerException("unit");
         }
         int s = state;
-        if (s <= COMPLETING && (s = awaitDone(true, unit.toNanos(timeout))) <= COMPLETING) {
-            throw TIMEOUT;
+        if (s <= COMPLETING) {
+            SpinWaitStrategy strategy = spinWaitStrategy();
+            long nanos = unit.toNanos(timeout);
+            if ((s = strategy == null ? awaitDone(true, nanos) : spinThenAwaitDone(strategy, true, nanos)) <= COMPLETING) {
+                throw TIMEOUT;
+            }
         }
         return report(s);
     }
@@ -86,6 +92,13 @@ public abstract class AbstractFuture<V> {
 
     protected abstract void done(int state, Object x);
 
+    /**
+     * 等待结果时的自旋策略, {@code null} 表示直接park.
+     */
+    protected SpinWaitStrategy spinWaitStrategy() {
+        return null;
+    }
+
     /**
      * 返回正常执行结果或者异常
      *
@@ -128,6 +141,35 @@ public abstract class AbstractFuture<V> {
         done(state, x);
     }
 
+    /**
+     * 先自旋, 再yield, 仍未完成时park等待, 并把本次的等待时间反馈给 {@code strategy}
+     */
+    private int spinThenAwaitDone(SpinWaitStrategy strategy, boolean timed, long nanos) {
+        final long startTime = System.nanoTime();
+        long spinNanos = strategy.spinNanos();
+        if (timed && spinNanos > nanos) {
+            spinNanos = nanos;
+        }
+
+        int s = state;
+        if (spinNanos > 0L) {
+            while (s <= COMPLETING && System.nanoTime() - startTime < spinNanos) {
+                ThreadHints.onSpinWait();
+                s = state;
+            }
+            for (int i = strategy.yields(); s <= COMPLETING && i > 0; i--) {
+                Thread.yield();
+                s = state;
+            }
+        }
+        if (s <= COMPLETING) {
+            s = awaitDone(timed, timed ? nanos - (System.nanoTime() - startTime) : 0L);
+        }
+
+        strategy.record(System.nanoTime() - startTime);
+        return s;
+    }
+
     /**
      * 等待任务完成或者超时
      */
@@ -3,12 +3,16 @@ package org.firefly.rpc.consumer.proxy.future;
 import org.firefly.rpc.consumer.proxy.future.interfice.InvokeFuture;
 import org.firefly.rpc.consumer.proxy.future.listener.DefaultListeners;
 import org.firefly.rpc.consumer.proxy.future.listener.JListener;
+
+import java.util.concurrent.CompletableFuture;
+
 import static org.firefly.common.util.Preconditions.checkNotNull;
 
 @SuppressWarnings("unchecked")
 public abstract class AbstractInvokeFuture<V> extends AbstractFuture<V> implements InvokeFuture<V> {
 
     private Object listeners;
+    private CompletableFuture<V> completableFuture;
 
     @Override
     protected void done(int state, Object x) {
@@ -77,6 +81,33 @@ public abstract class AbstractInvokeFuture<V> extends AbstractFuture<V> implemen
         return this;
     }
 
+    @Override
+    public CompletableFuture<V> toCompletableFuture() {
+        final CompletableFuture<V> f;
+        synchronized (this) {
+            if (completableFuture != null) {
+                return completableFuture;
+            }
+            f = completableFuture = new CompletableFuture<>();
+        }
+
+        // 由完成本future的线程直接完成, 不经过额外的executor
+        addListener(new JListener<V>() {
+
+            @Override
+            public void complete(V result) {
+                f.complete(result);
+            }
+
+            @Override
+            public void failure(Throwable cause) {
+                f.completeExceptionally(cause);
+            }
+        });
+
+        return f;
+    }
+
     protected void notifyListeners(int state, Object x) {
         Object listeners;
         synchronized (this) {
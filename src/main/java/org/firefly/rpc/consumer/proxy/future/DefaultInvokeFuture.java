@@ -1,15 +1,20 @@
 package org.firefly.rpc.consumer.proxy.future;
 
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.firefly.common.concurrent.thread.NamedThreadFactory;
 import org.firefly.common.util.exception.Signal;
 import org.firefly.common.util.constant.JConstants;
-import org.firefly.common.util.internal.Maps;
+import org.firefly.common.util.collection.ConcurrentLongObjectHashMap;
 import org.firefly.model.rpc.response.JResponse;
 import org.firefly.model.rpc.response.ResultWrapper;
 import org.firefly.model.transport.channel.interfice.JChannel;
 import org.firefly.model.transport.configuration.Status;
 import org.firefly.model.rpc.type.DispatchType;
+import org.firefly.rpc.consumer.proxy.future.interfice.InvokeFuture;
 import org.firefly.rpc.consumer.proxy.future.listener.JListener;
 import org.firefly.rpc.consumer.proxy.hook.ConsumerHook;
 import org.firefly.rpc.exeption.FireflyBizException;
@@ -18,7 +23,7 @@ import org.firefly.rpc.exeption.FireflySerializationException;
 import org.firefly.rpc.exeption.FireflyTimeoutException;
 
 import java.net.SocketAddress;
-import java.util.concurrent.ConcurrentMap;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static org.firefly.common.util.exception.StackTraceUtil.stackTrace;
@@ -32,18 +37,31 @@ public class DefaultInvokeFuture<V> extends AbstractInvokeFuture<V> {
 
     private static final long DEFAULT_TIMEOUT_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(JConstants.DEFAULT_TIMEOUT);
 
-    private static final ConcurrentMap<Long, DefaultInvokeFuture<?>> roundFutures = Maps.newConcurrentMap();
-    private static final ConcurrentMap<String, DefaultInvokeFuture<?>> broadcastFutures = Maps.newConcurrentMap();
+    // 以invokeId为key, 注册及完成一个调用都不需要装箱或分配结点
+    private static final ConcurrentLongObjectHashMap<DefaultInvokeFuture<?>> roundFutures = new ConcurrentLongObjectHashMap<>();
+    // 广播场景下同一个invokeId对应多个channel上的future, 以 nextBroadcast 串成链表, 表中保存表头,
+    // (channel, invokeId) 确定链表中的一个future
+    private static final ConcurrentLongObjectHashMap<DefaultInvokeFuture<?>> broadcastFutures = new ConcurrentLongObjectHashMap<>();
+
+    // 超时检测: 注册及取消都是O(1), 与进行中的调用数量无关, 超时最多延迟一个刻度触发
+    private static final HashedWheelTimer timer = new HashedWheelTimer(
+            new NamedThreadFactory("invoke.timeout.timer", true),
+            JConstants.TIMEOUT_TICK_DURATION, TimeUnit.MILLISECONDS, JConstants.TIMEOUT_TICKS_PER_WHEEL);
 
     private final long invokeId; // request.invokeId, 广播的场景可以重复
     private final JChannel channel;
     private final Class<V> returnType;
     private final long timeout;
-    private final long startTime = System.nanoTime();
 
     private volatile boolean sent = false;
+    // 收到响应时取消, 避免时间轮在超时之前一直引用已完成的future
+    private volatile Timeout timeoutHandle;
+    // 广播场景下同一个invokeId的下一个future, 由 broadcastFutures 的分段锁保护
+    private DefaultInvokeFuture<?> nextBroadcast;
 
     private ConsumerHook[] hooks = ConsumerHook.EMPTY_HOOKS;
+    // 同步等待结果时的自旋策略, null 表示直接park
+    private SpinWaitStrategy spinWaitStrategy;
 
     public static <T> DefaultInvokeFuture<T> with(
             long invokeId, JChannel channel, Class<T> returnType, long timeoutMillis, DispatchType dispatchType) {
@@ -64,11 +82,20 @@ public class DefaultInvokeFuture<V> extends AbstractInvokeFuture<V> {
                 roundFutures.put(invokeId, this);
                 break;
             case BROADCAST:
-                broadcastFutures.put(subInvokeId(channel, invokeId), this);
+                synchronized (broadcastFutures.stripeLock(invokeId)) {
+                    nextBroadcast = broadcastFutures.get(invokeId);
+                    broadcastFutures.put(invokeId, this);
+                }
                 break;
             default:
                 throw new IllegalArgumentException("unsupported " + dispatchType);
         }
+
+        // 同时记入channel的索引, 连接断开时只需要处理该channel上的调用
+        channel.inFlightFutures().put(invokeId, this);
+
+        // 放入futures之后再注册超时任务, 保证超时任务一定能找到并移除它
+        timeoutHandle = timer.newTimeout(new TimeoutTask(this), timeout, TimeUnit.NANOSECONDS);
     }
 
     @Override
@@ -119,6 +146,16 @@ public class DefaultInvokeFuture<V> extends AbstractInvokeFuture<V> {
         return this;
     }
 
+    public DefaultInvokeFuture<V> spinWaitStrategy(SpinWaitStrategy spinWaitStrategy) {
+        this.spinWaitStrategy = spinWaitStrategy;
+        return this;
+    }
+
+    @Override
+    protected SpinWaitStrategy spinWaitStrategy() {
+        return spinWaitStrategy;
+    }
+
     private void doReceived(JResponse response) {
         byte status = response.status();
 
@@ -169,63 +206,88 @@ public class DefaultInvokeFuture<V> extends AbstractInvokeFuture<V> {
         DefaultInvokeFuture<?> future = roundFutures.remove(invokeId);
         if (future == null) {
             // 广播场景下做出了一点让步, 多查询了一次roundFutures
-            future = broadcastFutures.remove(subInvokeId(channel, invokeId));
+            future = removeBroadcast(channel, invokeId);
         }
         if (future == null) {
             logger.warn("A timeout response [{}] finally returned on {}.", response, channel);
             return;
         }
+        future.channel.inFlightFutures().remove(invokeId, future);
+
+        Timeout timeoutHandle = future.timeoutHandle;
+        if (timeoutHandle != null) {
+            timeoutHandle.cancel();
+        }
 
         future.doReceived(response);
     }
 
-    private static String subInvokeId(JChannel channel, long invokeId) {
-        return channel.id() + invokeId;
-    }
+    /**
+     * 连接断开时调用, 该 {@code channel} 上所有进行中的调用立即以 {@link FireflyRemoteException} 失败, 不必等到超时.
+     *
+     * 只处理 {@link JChannel#inFlightFutures()} 中的调用, 不扫描其他channel上的; 与正常响应或超时并发时,
+     * 先从 roundFutures/broadcastFutures 中移除future的一方生效.
+     */
+    public static void channelInactive(JChannel channel) {
+        List<InvokeFuture<?>> inFlight = channel.inFlightFutures().values();
+
+        if (inFlight.isEmpty()) {
+            return;
+        }
 
-    // timeout scanner
-    @SuppressWarnings("all")
-    private static class TimeoutScanner implements Runnable {
+        logger.warn("{} in-flight invocations failed because of the inactive channel {}.", inFlight.size(), channel);
 
-        public void run() {
-            for (;;) {
-                try {
-                    // round
-                    for (DefaultInvokeFuture<?> future : roundFutures.values()) {
-                        process(future);
-                    }
+        for (InvokeFuture<?> f : inFlight) {
+            ResultWrapper result = new ResultWrapper();
+            result.setError(new FireflyRemoteException("channel inactive", channel.remoteAddress()));
+
+            JResponse response = new JResponse(((DefaultInvokeFuture<?>) f).invokeId);
+            response.status(Status.CLIENT_ERROR);
+            response.result(result);
+
+            DefaultInvokeFuture.received(channel, response);
+        }
+    }
 
-                    // broadcast
-                    for (DefaultInvokeFuture<?> future : broadcastFutures.values()) {
-                        process(future);
+    private static DefaultInvokeFuture<?> removeBroadcast(JChannel channel, long invokeId) {
+        synchronized (broadcastFutures.stripeLock(invokeId)) {
+            DefaultInvokeFuture<?> prev = null;
+            for (DefaultInvokeFuture<?> f = broadcastFutures.get(invokeId); f != null; prev = f, f = f.nextBroadcast) {
+                if (f.channel == channel) {
+                    if (prev != null) {
+                        prev.nextBroadcast = f.nextBroadcast;
+                    } else if (f.nextBroadcast != null) {
+                        broadcastFutures.put(invokeId, f.nextBroadcast);
+                    } else {
+                        broadcastFutures.remove(invokeId);
                     }
-                } catch (Throwable t) {
-                    logger.error("An exception was caught while scanning the timeout futures {}.", stackTrace(t));
+                    f.nextBroadcast = null;
+                    return f;
                 }
-
-                try {
-                    Thread.sleep(30);
-                } catch (InterruptedException ignored) {}
             }
         }
+        return null;
+    }
 
-        private void process(DefaultInvokeFuture<?> future) {
-            if (future == null || future.isDone()) {
+    // 超时检测, 由时间轮线程执行
+    private static class TimeoutTask implements TimerTask {
+
+        private final DefaultInvokeFuture<?> future;
+
+        TimeoutTask(DefaultInvokeFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void run(Timeout timeout) throws Exception {
+            if (future.isDone()) {
                 return;
             }
 
-            if (System.nanoTime() - future.startTime > future.timeout) {
-                JResponse response = new JResponse(future.invokeId);
-                response.status(future.sent ? Status.SERVER_TIMEOUT : Status.CLIENT_TIMEOUT);
+            JResponse response = new JResponse(future.invokeId);
+            response.status(future.sent ? Status.SERVER_TIMEOUT : Status.CLIENT_TIMEOUT);
 
-                DefaultInvokeFuture.received(future.channel, response);
-            }
+            DefaultInvokeFuture.received(future.channel, response);
         }
     }
-
-    static {
-        Thread t = new Thread(new TimeoutScanner(), "timeout.scanner");
-        t.setDaemon(true);
-        t.start();
-    }
 }
@@ -0,0 +1,50 @@
+package org.firefly.rpc.consumer.proxy.future;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 接口方法直接返回 {@link CompletableFuture}/{@link CompletionStage} 时的辅助方法.
+ */
+public final class InvokeFutures {
+
+    /**
+     * 方法返回值是否为 {@link CompletableFuture} 或 {@link CompletionStage}, 此时直接返回调用的future.
+     */
+    public static boolean isCompletionStage(Class<?> returnType) {
+        return returnType == CompletableFuture.class || returnType == CompletionStage.class;
+    }
+
+    /**
+     * {@code CompletableFuture<T>} 的 {@code T}, 无法确定时为 {@link Object}.
+     */
+    public static Type valueType(Method method) {
+        Type type = method.getGenericReturnType();
+        if (type instanceof ParameterizedType) {
+            return ((ParameterizedType) type).getActualTypeArguments()[0];
+        }
+        return Object.class;
+    }
+
+    /**
+     * {@link #valueType(Method)} 的原始类型.
+     */
+    public static Class<?> valueClass(Method method) {
+        Type type = valueType(method);
+        if (type instanceof ParameterizedType) {
+            type = ((ParameterizedType) type).getRawType();
+        }
+        return type instanceof Class ? (Class<?>) type : Object.class;
+    }
+
+    public static <V> CompletableFuture<V> failedFuture(Throwable cause) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    private InvokeFutures() {}
+}
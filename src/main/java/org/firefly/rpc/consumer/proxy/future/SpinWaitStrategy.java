@@ -0,0 +1,77 @@
+package org.firefly.rpc.consumer.proxy.future;
+
+/**
+ * 同步等待调用结果时的 "自旋 -> yield -> park" 策略.
+ *
+ * 对于几十微秒就能返回的调用, park/unpark 及其带来的线程切换往往比调用本身还慢, 先自旋一小段时间可以避免;
+ * 自旋时间由近期等待时间的指数移动平均(EWMA)决定: 平均等待时间的2倍, 不超过 {@code maxSpinNanos},
+ * 平均等待时间超过 {@code maxSpinNanos} 时不再自旋, 直接park.
+ *
+ * 单核机器上自旋只会推迟完成调用的线程, 所以不自旋.
+ *
+ * 一个代理共享一个实例, 统计的更新存在竞争但不加锁, 丢失个别样本不影响结果.
+ */
+public final class SpinWaitStrategy {
+
+    private static final boolean MULTI_PROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+    // 自旋结束之后, park之前的 Thread.yield() 次数
+    private static final int MAX_YIELDS = 4;
+    // EWMA的权重为 1/2^EWMA_SHIFT
+    private static final int EWMA_SHIFT = 3;
+
+    private final long maxSpinNanos;
+    // 近期等待时间的指数移动平均
+    private volatile long avgWaitNanos;
+
+    /**
+     * @param maxSpinNanos 自旋时间的上限, {@code <= 0} 时返回 {@code null}, 即不自旋
+     */
+    public static SpinWaitStrategy adaptive(long maxSpinNanos) {
+        return maxSpinNanos > 0 ? new SpinWaitStrategy(maxSpinNanos) : null;
+    }
+
+    private SpinWaitStrategy(long maxSpinNanos) {
+        this.maxSpinNanos = maxSpinNanos;
+        // 没有样本时先按上限自旋
+        this.avgWaitNanos = maxSpinNanos >> 1;
+    }
+
+    public long maxSpinNanos() {
+        return maxSpinNanos;
+    }
+
+    /**
+     * 本次等待的自旋时间, 0 表示直接park.
+     */
+    public long spinNanos() {
+        if (!MULTI_PROCESSOR) {
+            return 0L;
+        }
+        long avg = avgWaitNanos;
+        return avg > maxSpinNanos ? 0L : Math.min(avg << 1, maxSpinNanos);
+    }
+
+    /**
+     * 自旋结束之后, park之前的 yield 次数.
+     */
+    public int yields() {
+        return MAX_YIELDS;
+    }
+
+    /**
+     * 记录一次等待的时间(包括自旋/yield/park), park的等待同样计入, 调用变快之后可以恢复自旋.
+     */
+    public void record(long waitNanos) {
+        long avg = avgWaitNanos;
+        avgWaitNanos = avg + ((waitNanos - avg) >> EWMA_SHIFT);
+    }
+
+    @Override
+    public String toString() {
+        return "SpinWaitStrategy{" +
+                "maxSpinNanos=" + maxSpinNanos +
+                ", avgWaitNanos=" + avgWaitNanos +
+                '}';
+    }
+}
@@ -1,5 +1,7 @@
 package org.firefly.rpc.consumer.proxy.future.interfice;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface InvokeFuture<V> extends ListenableFuture<V> {
 
     Class<V> returnType();
@@ -8,4 +10,13 @@ public interface InvokeFuture<V> extends ListenableFuture<V> {
      * Waits for this future to be completed and get the result.
      */
     V getResult() throws Throwable;
+
+    /**
+     * Returns a {@link CompletableFuture} that is completed with the same result as this future,
+     * the same instance is returned on each call.
+     *
+     * Dependent stages without an explicit executor run on the thread that completes this future
+     * (may be an IO thread), use the *Async variants to run them elsewhere.
+     */
+    CompletableFuture<V> toCompletableFuture();
 }
@@ -4,11 +4,15 @@ import org.firefly.common.util.internal.Maps;
 import org.firefly.model.rpc.consumer.cluster.ClusterStrategyConfig;
 import org.firefly.model.rpc.consumer.cluster.MethodSpecialConfig;
 import org.firefly.rpc.consumer.clientserver.FClient;
+import org.firefly.rpc.consumer.proxy.future.InvokeFutures;
 import org.firefly.rpc.consumer.proxy.invoke.secondinvoke.cluster.ClusterInvoker;
 import org.firefly.rpc.consumer.proxy.invoke.secondinvoke.cluster.FailFastClusterInvoker;
 import org.firefly.rpc.consumer.proxy.dispatch.Dispatcher;
+
+import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class ClusterStrategyBridging {
 
@@ -38,6 +42,22 @@ public abstract class ClusterStrategyBridging {
         return invoker != null ? invoker : defaultClusterInvoker;
     }
 
+    /**
+     * 接口方法返回 {@link CompletableFuture}/{@link java.util.concurrent.CompletionStage} 时调用,
+     * 直接返回调用的future, 不经过 {@link org.firefly.rpc.consumer.proxy.future.InvokeFutureContext};
+     * 发起调用时的异常同样以失败的future返回.
+     */
+    protected CompletableFuture<?> invokeCompletable(Method method, Object[] args) {
+        String methodName = method.getName();
+        try {
+            return getClusterInvoker(methodName)
+                    .invoke(methodName, args, InvokeFutures.valueClass(method))
+                    .toCompletableFuture();
+        } catch (Throwable t) {
+            return InvokeFutures.failedFuture(t);
+        }
+    }
+
     private ClusterInvoker createClusterInvoker(FClient client, Dispatcher dispatcher, ClusterStrategyConfig strategy) {
         ClusterInvoker.Strategy s = strategy.getStrategy();
         switch (s) {
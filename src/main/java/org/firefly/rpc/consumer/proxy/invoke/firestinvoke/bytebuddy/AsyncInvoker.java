@@ -3,6 +3,7 @@ package org.firefly.rpc.consumer.proxy.invoke.firestinvoke.bytebuddy;
 import org.firefly.common.util.Reflects;
 import org.firefly.rpc.consumer.clientserver.FClient;
 import org.firefly.rpc.consumer.proxy.future.InvokeFutureContext;
+import org.firefly.rpc.consumer.proxy.future.InvokeFutures;
 import org.firefly.rpc.consumer.proxy.invoke.firestinvoke.ClusterStrategyBridging;
 import org.firefly.model.rpc.consumer.cluster.ClusterStrategyConfig;
 import org.firefly.model.rpc.consumer.cluster.MethodSpecialConfig;
@@ -33,8 +34,12 @@ public class AsyncInvoker extends ClusterStrategyBridging {
 
     @RuntimeType
     public Object invoke(@Origin Method method, @AllArguments @RuntimeType Object[] args) throws Throwable {
-        String methodName = method.getName();
         Class<?> returnType = method.getReturnType();
+        if (InvokeFutures.isCompletionStage(returnType)) {
+            return invokeCompletable(method, args);
+        }
+
+        String methodName = method.getName();
         ClusterInvoker invoker = getClusterInvoker(methodName);
         InvokeFuture<?> future = invoker.invoke(methodName, args, returnType);
         InvokeFutureContext.set(future);
@@ -1,6 +1,7 @@
 package org.firefly.rpc.consumer.proxy.invoke.firestinvoke.bytebuddy;
 
 import org.firefly.rpc.consumer.clientserver.FClient;
+import org.firefly.rpc.consumer.proxy.future.InvokeFutures;
 import org.firefly.rpc.consumer.proxy.invoke.firestinvoke.ClusterStrategyBridging;
 import org.firefly.model.rpc.consumer.cluster.ClusterStrategyConfig;
 import org.firefly.model.rpc.consumer.cluster.MethodSpecialConfig;
@@ -30,6 +31,10 @@ public class SyncInvoker extends ClusterStrategyBridging {
 
     @RuntimeType
     public Object invoke(@Origin Method method, @AllArguments @RuntimeType Object[] args) throws Throwable {
+        if (InvokeFutures.isCompletionStage(method.getReturnType())) {
+            return invokeCompletable(method, args);
+        }
+
         String methodName = method.getName();
         ClusterInvoker invoker = getClusterInvoker(methodName);
         InvokeFuture<?> future = invoker.invoke(methodName, args, method.getReturnType());
@@ -110,5 +110,24 @@ public class Metrics {
         return metricRegistry.histogram(MetricRegistry.name(clazz, names));
     }
 
+    /**
+     * Return the {@link Gauge} registered under this name; or register {@code gauge}
+     * if none is registered.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Gauge<T> gauge(String name, Gauge<T> gauge) {
+        checkNotNull(name, "name");
+        try {
+            return metricRegistry.register(name, gauge);
+        } catch (IllegalArgumentException e) {
+            // already registered
+            Gauge<T> existing = metricRegistry.getGauges().get(name);
+            if (existing == null) {
+                throw e;
+            }
+            return existing;
+        }
+    }
+
     private Metrics() {}
 }
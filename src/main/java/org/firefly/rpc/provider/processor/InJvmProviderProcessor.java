@@ -0,0 +1,128 @@
+package org.firefly.rpc.provider.processor;
+
+import org.firefly.common.util.exception.ExceptionUtil;
+import org.firefly.model.rpc.metadata.ServiceWrapper;
+import org.firefly.model.rpc.request.JRequest;
+import org.firefly.model.rpc.request.JRequestBytes;
+import org.firefly.model.rpc.request.MessageWrapper;
+import org.firefly.model.rpc.response.JResponse;
+import org.firefly.model.rpc.response.ResultWrapper;
+import org.firefly.model.transport.channel.InJvmChannel;
+import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.model.transport.configuration.Status;
+import org.firefly.model.transport.metadata.Directory;
+import org.firefly.rpc.consumer.processor.DefaultConsumerProcessor;
+import org.firefly.rpc.consumer.proxy.future.DefaultInvokeFuture;
+import org.firefly.rpc.provider.processor.task.InJvmMessageTask;
+import org.firefly.rpc.provider.server.servicecontainer.InJvmProviders;
+import org.firefly.rpc.tracking.TraceId;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.firefly.common.util.exception.StackTraceUtil.stackTrace;
+
+/**
+ * consumer与provider在同一个JVM中时的短路调用处理器, 请求不经过transport层, 结果直接交给consumer端的
+ * {@link DefaultInvokeFuture}.
+ *
+ * copy模式下参数及返回值都通过序列化/反序列化深拷贝, 与远程调用的语义一致, 使用该方法的序列化方式
+ * (记录在请求的 serializerCode 中), 否则(reference模式)调用双方共享同一个对象.
+ */
+public class InJvmProviderProcessor extends AbstractProviderProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(InJvmProviderProcessor.class);
+
+    private final boolean copy;
+    // 序列化之后的请求/响应经过它回环, 响应直接在provider的线程中交给consumer
+    private final InJvmChannel channel;
+
+    public InJvmProviderProcessor(boolean copy) {
+        this.copy = copy;
+        this.channel = new InJvmChannel(this, new DefaultConsumerProcessor(null));
+    }
+
+    public InJvmChannel channel() {
+        return channel;
+    }
+
+    public boolean isCopy() {
+        return copy;
+    }
+
+    @Override
+    public void handleRequest(JChannel channel, JRequestBytes request) throws Exception {
+        // 经过 InJvmChannel 回环写入的已序列化请求, 与远程调用一样反序列化后处理, 响应序列化后写回
+        new InJvmMessageTask(this, new JRequest(request)).run();
+    }
+
+    @Override
+    public ServiceWrapper lookupService(Directory directory) {
+        return InJvmProviders.lookupService(directory.directory());
+    }
+
+    @Override
+    public void handleException(JChannel channel, JRequest request, Status status, Throwable cause) {
+        logger.error("An exception was caught while processing request: {}, {}.",
+                channel.remoteAddress(), stackTrace(cause));
+
+        doHandleException(channel, request, status, cause);
+    }
+
+    @Override
+    public void handleRejected(JChannel channel, JRequest request, Status status, Throwable cause) {
+        if (logger.isWarnEnabled()) {
+            logger.warn("Service rejected: {}, {}.", channel.remoteAddress(), stackTrace(cause));
+        }
+
+        doHandleException(channel, request, status, cause);
+    }
+
+    public void handleResult(JChannel channel, JRequest request, ResultWrapper result) {
+        received(channel, request, Status.OK, result);
+    }
+
+    /**
+     * 交给provider的请求消息, 不能与consumer共享 {@link TraceId}, provider会修改它的node.
+     *
+     * copy模式下使用调用方法指定的 serializer 深拷贝.
+     */
+    public MessageWrapper copyOf(MessageWrapper message, Serializer serializer) {
+        if (copy) {
+            return serializer.readObject(serializer.writeObject(message), MessageWrapper.class);
+        }
+
+        MessageWrapper copy = new MessageWrapper(message.getMetadata());
+        copy.setAppName(message.getAppName());
+        copy.setMethodName(message.getMethodName());
+        copy.setArgs(message.getArgs());
+        TraceId traceId = message.getTraceId();
+        if (traceId != null) {
+            copy.setTraceId(TraceId.newInstance(traceId.getId(), traceId.getNode()));
+        }
+        return copy;
+    }
+
+    private void doHandleException(JChannel channel, JRequest request, Status status, Throwable cause) {
+        ResultWrapper result = new ResultWrapper();
+        // 截断cause, 与远程调用保持一致
+        result.setError(ExceptionUtil.cutCause(cause));
+
+        received(channel, request, status, result);
+    }
+
+    private void received(JChannel channel, JRequest request, Status status, ResultWrapper result) {
+        if (copy) {
+            // 与请求使用同一种序列化方式
+            Serializer serializer = SerializerFactory.getSerializer(request.serializerCode());
+            result = serializer.readObject(serializer.writeObject(result), ResultWrapper.class);
+        }
+
+        JResponse response = new JResponse(request.invokeId());
+        response.status(status);
+        response.result(result);
+
+        DefaultInvokeFuture.received(channel, response);
+    }
+}
@@ -0,0 +1,59 @@
+package org.firefly.rpc.provider.processor.task;
+
+import org.firefly.common.util.SystemClock;
+import org.firefly.model.rpc.request.JRequest;
+import org.firefly.model.rpc.response.ResultWrapper;
+import org.firefly.rpc.provider.processor.InJvmProviderProcessor;
+import org.firefly.rpc.tracking.TraceId;
+import org.firefly.rpc.tracking.TracingUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一个JVM中短路调用的provider端任务, 除了不经过序列化及网络传输外, 与 {@link ProviderMessageTask}
+ * 的处理流程(服务查找, 私有线程池, metrics, tracing)完全一致.
+ *
+ * 没有指定provider私有线程池时直接在consumer的调用线程中执行.
+ */
+public class InJvmMessageTask extends ProviderMessageTask {
+
+    private final InJvmProviderProcessor processor;
+    private final JRequest request;
+    // 经过 InJvmChannel 回环写入的请求还没有反序列化, 响应同样序列化后写回
+    private final boolean serialized;
+
+    public InJvmMessageTask(InJvmProviderProcessor processor, JRequest request) {
+        super(processor, processor.channel(), request);
+        this.processor = processor;
+        this.request = request;
+        this.serialized = request.message() == null;
+    }
+
+    @Override
+    public void run() {
+        // provider端绑定的traceId不能遗留给consumer线程的后续调用
+        TraceId current = TracingUtil.getCurrent();
+        try {
+            super.run();
+        } finally {
+            if (TracingUtil.isTracingNeeded()) {
+                TracingUtil.setCurrent(current == TraceId.NULL_TRACE_ID ? null : current);
+            }
+        }
+    }
+
+    @Override
+    protected void handleResult(ResultWrapper result) throws Throwable {
+        if (serialized) {
+            super.handleResult(result);
+            return;
+        }
+
+        processor.handleResult(processor.channel(), request, result);
+
+        if (METRIC_NEEDED) {
+            MetricsHolder.processingTimer.update(
+                    SystemClock.millisClock().now() - request.timestamp(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
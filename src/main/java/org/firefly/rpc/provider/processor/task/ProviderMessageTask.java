@@ -3,10 +3,12 @@ package org.firefly.rpc.provider.processor.task;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
+import io.netty.buffer.ByteBuf;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import org.firefly.common.concurrent.thread.executorfactory.rejected.RejectedRunnable;
 import org.firefly.common.util.*;
+import org.firefly.common.util.constant.JConstants;
 import org.firefly.common.util.internal.unsafe.UnsafeIntegerFieldUpdater;
 import org.firefly.common.util.internal.unsafe.UnsafeUpdater;
 import org.firefly.model.rpc.metadata.ServiceMetadata;
@@ -22,6 +24,7 @@ import org.firefly.rpc.tracking.TracingUtil;
 import org.firefly.model.transport.channel.interfice.JChannel;
 import org.firefly.rpc.consumer.proxy.future.listener.JFutureListener;
 import org.firefly.model.transport.configuration.Status;
+import org.firefly.model.transport.protocol.JProtocolHeader;
 import org.firefly.rpc.exeption.FireflyBadRequestException;
 import org.firefly.rpc.exeption.FireflyRemoteException;
 import org.firefly.rpc.exeption.FireflyServerBusyException;
@@ -30,15 +33,23 @@ import org.firefly.rpc.metric.Metrics;
 import org.firefly.rpc.provider.processor.AbstractProviderProcessor;
 import org.firefly.serialization.Serializer;
 import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.compression.DeflateCompressor;
+import org.firefly.serialization.envelope.EnvelopeCodec;
+import org.firefly.serialization.envelope.EnvelopeDictionary;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 public class ProviderMessageTask implements RejectedRunnable {
 
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(ProviderMessageTask.class);
 
-    private static final boolean METRIC_NEEDED = SystemPropertyUtil.getBoolean("firefly.metric.needed", true);
+    static final boolean METRIC_NEEDED = SystemPropertyUtil.getBoolean("firefly.metric.needed", true);
 
     private static final UnsafeIntegerFieldUpdater<TraceId> traceNodeUpdater =
             UnsafeUpdater.newIntegerFieldUpdater(TraceId.class, "node");
@@ -46,6 +57,8 @@ public class ProviderMessageTask implements RejectedRunnable {
     private final AbstractProviderProcessor processor;
     private final JChannel channel;
     private final JRequest request;
+    // 请求(KIND_DEFINE)定义并已记录到连接字典中的id, 在响应中回复给consumer确认
+    private int envelopeDefinedId = -1;
 
     public ProviderMessageTask(AbstractProviderProcessor processor, JChannel channel, JRequest request) {
         this.processor = processor;
@@ -59,26 +72,63 @@ public class ProviderMessageTask implements RejectedRunnable {
         final AbstractProviderProcessor _processor = processor;
         final JRequest _request = request;
 
-        MessageWrapper msg;
-        try {
+        MessageWrapper msg = _request.message();
+        if (msg == null) {
             JRequestBytes _requestBytes = _request.requestBytes();
+            try {
+                byte s_code = _requestBytes.serializerCode();
 
-            byte s_code = _requestBytes.serializerCode();
-            byte[] bytes = _requestBytes.bytes();
-            _requestBytes.nullBytes();
+                if (METRIC_NEEDED) {
+                    MetricsHolder.requestSizeHistogram.update(_requestBytes.size());
+                }
 
-            if (METRIC_NEEDED) {
-                MetricsHolder.requestSizeHistogram.update(bytes.length);
+                // 压缩过的消息体在业务线程中解压
+                DeflateCompressor.decompress(_requestBytes);
+                ByteBuf inputBuf = _requestBytes.inputBuf();
+
+                Serializer serializer = SerializerFactory.getSerializer(s_code);
+                boolean envelope = (_requestBytes.flags() & JProtocolHeader.FLAG_ENVELOPE) != 0;
+                EnvelopeDictionary dictionary = envelope ? channel.envelopeDictionary() : null;
+                int definedId = -1;
+                // 在业务线程中反序列化, 减轻IO线程负担
+                InputStream inputStream = _requestBytes.inputStream();
+                if (inputStream != null) {
+                    // 分块传输, 边接收边反序列化, 每一块读完即释放
+                    if (envelope) {
+                        PushbackInputStream in = EnvelopeCodec.pushbackStream(inputStream);
+                        definedId = EnvelopeCodec.definedId(in);
+                        msg = EnvelopeCodec.readMessage(serializer, in, dictionary);
+                    } else {
+                        msg = serializer.readObject(inputStream, MessageWrapper.class);
+                    }
+                } else if (inputBuf != null) {
+                    // 零拷贝模式, 直接从decoder交过来的 ByteBuf 中反序列化
+                    if (envelope) {
+                        definedId = EnvelopeCodec.definedId(inputBuf);
+                        msg = EnvelopeCodec.readMessage(serializer, inputBuf, dictionary);
+                    } else {
+                        msg = serializer.readObject(inputBuf, MessageWrapper.class);
+                    }
+                } else {
+                    byte[] bytes = _requestBytes.bytes();
+                    if (envelope) {
+                        definedId = EnvelopeCodec.definedId(bytes);
+                        msg = EnvelopeCodec.readMessage(serializer, bytes, dictionary);
+                    } else {
+                        msg = serializer.readObject(bytes, MessageWrapper.class);
+                    }
+                }
+                if (definedId >= 0 && dictionary != null && dictionary.get(definedId) != null) {
+                    envelopeDefinedId = definedId;
+                }
+                _request.message(msg);
+            } catch (Throwable t) {
+                _requestBytes.nullBytes();
+                rejected(Status.BAD_REQUEST, new FireflyBadRequestException(t.getMessage()));
+                return;
             }
-
-            Serializer serializer = SerializerFactory.getSerializer(s_code);
-            // 在业务线程中反序列化, 减轻IO线程负担
-            msg = serializer.readObject(bytes, MessageWrapper.class);
-            _request.message(msg);
-        } catch (Throwable t) {
-            rejected(Status.BAD_REQUEST, new FireflyBadRequestException(t.getMessage()));
-            return;
-        }
+            _requestBytes.nullBytes(); // 释放 inputBuf/inputStream
+        } // else: 同一个JVM中短路调用, 没有经过序列化
 
         // 查找服务
         final ServiceWrapper service = _processor.lookupService(msg.getMetadata());
@@ -105,6 +155,9 @@ public class ProviderMessageTask implements RejectedRunnable {
 
     @Override
     public void rejected() {
+        // 任务未被执行, 需要释放decoder交过来的 inputBuf
+        request.requestBytes().nullBytes();
+
         rejected(Status.SERVER_BUSY, new FireflyServerBusyException(String.valueOf(request)));
     }
 
@@ -181,31 +234,104 @@ public class ProviderMessageTask implements RejectedRunnable {
                 }
             }
 
+            if (invokeResult instanceof CompletionStage) {
+                // 服务方法返回 CompletionStage, 完成之后再写回响应, 不阻塞当前线程
+                handleCompletionStage(exceptionTypes, (CompletionStage<?>) invokeResult);
+                return;
+            }
+
             ResultWrapper result = new ResultWrapper();
             result.setResult(invokeResult);
-            byte s_code = _request.serializerCode();
-            Serializer serializer = SerializerFactory.getSerializer(s_code);
-            byte[] bytes = serializer.writeObject(result);
 
-            if (METRIC_NEEDED) {
-                MetricsHolder.responseSizeHistogram.update(bytes.length);
+            handleResult(result);
+        } catch (Throwable t) {
+            processor.handleException(channel, _request, Status.SERVER_ERROR, t);
+        }
+    }
+
+    private void handleCompletionStage(final Class<?>[] exceptionTypes, CompletionStage<?> stage) {
+        stage.whenComplete(new BiConsumer<Object, Throwable>() {
+
+            @Override
+            public void accept(Object value, Throwable cause) {
+                if (cause != null) {
+                    if (cause instanceof CompletionException && cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    handleException(exceptionTypes, cause);
+                    return;
+                }
+
+                try {
+                    ResultWrapper result = new ResultWrapper();
+                    result.setResult(value);
+
+                    handleResult(result);
+                } catch (Throwable t) {
+                    processor.handleException(channel, request, Status.SERVER_ERROR, t);
+                }
             }
+        });
+    }
 
-            JResponseBytes response = new JResponseBytes(_request.invokeId());
-            response.status(Status.OK.value());
+    // 序列化调用结果并写回consumer
+    protected void handleResult(ResultWrapper result) throws Throwable {
+        // stack copy
+        final JRequest _request = request;
+
+        byte s_code = _request.serializerCode();
+        Serializer serializer = SerializerFactory.getSerializer(s_code);
+
+        JResponseBytes response = new JResponseBytes(_request.invokeId());
+        response.status(Status.OK.value());
+        // 按请求的编码方式回复
+        boolean envelope = (_request.requestBytes().flags() & JProtocolHeader.FLAG_ENVELOPE) != 0;
+        if (envelope) {
+            response.flags(JProtocolHeader.FLAG_ENVELOPE);
+            if (envelopeDefinedId >= 0) {
+                response.extension(JProtocolHeader.EXT_ENVELOPE_ID, Ints.toByteArray(envelopeDefinedId));
+            }
+        }
+        // consumer期望的响应体压缩阈值
+        byte[] compressThreshold = _request.requestBytes().extension(JProtocolHeader.EXT_COMPRESS_THRESHOLD);
+        if (compressThreshold != null) {
+            response.compressThreshold(Ints.fromByteArray(compressThreshold));
+        }
+        if (JConstants.SERIALIZE_TO_OUTPUT_BUF) {
+            // 直接序列化到出站 ByteBuf 中, encoder只需回填协议头
+            ByteBuf buf = channel.allocOutputBuf();
+            try {
+                if (envelope) {
+                    EnvelopeCodec.writeResult(serializer, result, buf);
+                } else {
+                    serializer.writeObject(buf, result);
+                }
+            } catch (Throwable t) {
+                buf.release();
+                throw t;
+            }
+            response.outputBuf(s_code, buf);
+        } else {
+            byte[] bytes = envelope ? EnvelopeCodec.writeResult(serializer, result) : serializer.writeObject(result);
             response.bytes(s_code, bytes);
+        }
+        // 与序列化一样在业务线程中压缩, encoder只负责组帧
+        DeflateCompressor.compress(response, channel);
 
-            handleWriteResponse(response);
-        } catch (Throwable t) {
-            processor.handleException(channel, _request, Status.SERVER_ERROR, t);
+        if (METRIC_NEEDED) {
+            MetricsHolder.responseSizeHistogram.update(response.size());
         }
+
+        handleWriteResponse(response);
     }
 
-    private void handleWriteResponse(JResponseBytes response) {
+    private void handleWriteResponse(final JResponseBytes response) {
         channel.write(response, new JFutureListener<JChannel>() {
 
             @Override
             public void operationSuccess(JChannel channel) throws Exception {
+                response.nullBytes();
+
                 if (METRIC_NEEDED) {
                     MetricsHolder.processingTimer.update(
                             SystemClock.millisClock().now() - request.timestamp(), TimeUnit.MILLISECONDS);
@@ -214,6 +340,8 @@ public class ProviderMessageTask implements RejectedRunnable {
 
             @Override
             public void operationFailure(JChannel channel, Throwable cause) throws Exception {
+                response.nullBytes(); // 释放未被encoder接管的 outputBuf
+
                 logger.error(
                         "Service response[traceId: {}] sent failed, elapsed: {} millis, channel: {}, cause: {}.",
                         request.message().getTraceId(), SystemClock.millisClock().now() - request.timestamp(), channel, cause
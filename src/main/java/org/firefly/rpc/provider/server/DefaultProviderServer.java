@@ -5,18 +5,27 @@ import io.netty.util.internal.logging.InternalLoggerFactory;
 import org.firefly.common.concurrent.thread.NamedThreadFactory;
 import org.firefly.common.util.ClassUtil;
 import org.firefly.common.util.constant.JConstants;
+import org.firefly.common.util.internal.Lists;
 import org.firefly.common.util.spi.JServiceLoader;
 import org.firefly.model.registry.metadata.RegisterMeta;
 import org.firefly.model.rpc.metadata.ServiceMetadata;
 import org.firefly.model.rpc.metadata.ServiceWrapper;
+import org.firefly.model.rpc.request.MessageWrapper;
+import org.firefly.model.rpc.response.ResultWrapper;
 import org.firefly.model.transport.metadata.Directory;
 import org.firefly.registry.api.RegistryService;
 import org.firefly.rpc.provider.processor.DefaultProviderProcessor;
 import org.firefly.rpc.provider.server.servicecontainer.DefaultServiceProviderContainer;
+import org.firefly.rpc.provider.server.servicecontainer.InJvmProviders;
 import org.firefly.rpc.provider.server.servicecontainer.ServiceProviderContainer;
 import org.firefly.rpc.provider.server.servicewrapperfactory.DefaultServiceWrapperProducer;
 import org.firefly.rpc.provider.server.servicewrapperfactory.ServiceWrapperProducer;
+import org.firefly.serialization.SerializerFactory;
 import org.firefly.transport.api.acceptor.JAcceptor;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -103,10 +112,15 @@ public class DefaultProviderServer implements JServer {
 
     @Override
     public void publish(ServiceWrapper serviceWrapper) {
+        if (JConstants.SERIALIZER_WARM_UP) {
+            warmUpSerializers(serviceWrapper);
+        }
+
         ServiceMetadata metadata = serviceWrapper.getMetadata();
 
         RegisterMeta meta = new RegisterMeta();
         meta.setPort(acceptor.boundPort());
+        meta.setSocketPath(acceptor.domainSocketPath());
         meta.setGroup(metadata.getGroup());
         meta.setServiceProviderName(metadata.getServiceProviderName());
         meta.setVersion(metadata.getVersion());
@@ -115,6 +129,9 @@ public class DefaultProviderServer implements JServer {
         meta.setConnCount(1);
 
         registryService.register(meta);
+
+        // 同一个JVM中的consumer可以短路调用
+        InJvmProviders.registerService(serviceWrapper);
     }
 
     @Override
@@ -172,6 +189,8 @@ public class DefaultProviderServer implements JServer {
         meta.setConnCount(JConstants.SUGGESTED_CONNECTION_COUNT);
 
         registryService.unregister(meta);
+
+        InJvmProviders.removeService(serviceWrapper);
     }
 
     @Override
@@ -193,10 +212,27 @@ public class DefaultProviderServer implements JServer {
 
     @Override
     public void shutdownGracefully() {
+        for (ServiceWrapper wrapper : providerContainer.getAllServices()) {
+            InJvmProviders.removeService(wrapper);
+        }
         registryService.shutdownGracefully();
         acceptor.shutdownGracefully();
     }
 
+    // 预热服务方法的参数及返回值类型, 以及请求/响应的外层包装类型, consumer可能使用任意一种序列化方式, 所以预热所有的
+    private static void warmUpSerializers(ServiceWrapper serviceWrapper) {
+        List<Type> types = Lists.newArrayList();
+        types.add(MessageWrapper.class);
+        types.add(ResultWrapper.class);
+        for (Method method : serviceWrapper.getServiceProvider().getClass().getMethods()) {
+            if (serviceWrapper.getMethodExtension(method.getName()) != null) {
+                types.add(method.getGenericReturnType());
+                Collections.addAll(types, method.getGenericParameterTypes());
+            }
+        }
+        SerializerFactory.warmUp(types.toArray(new Type[types.size()]));
+    }
+
     public void setAcceptor(JAcceptor acceptor) {
         withAcceptor(acceptor);
     }
@@ -0,0 +1,32 @@
+package org.firefly.rpc.provider.server.servicecontainer;
+
+import org.firefly.model.rpc.metadata.ServiceWrapper;
+
+/**
+ * 当前JVM中所有已发布的provider, 与 {@link DefaultServiceProviderContainer} 不同, 它是JVM全局的,
+ * 同一个JVM中的consumer通过它发现可以短路调用(不经过序列化及网络传输)的服务.
+ *
+ * Key为ServiceMetadata.directory()
+ */
+public final class InJvmProviders {
+
+    private static final ServiceProviderContainer providerContainer = new DefaultServiceProviderContainer();
+
+    public static void registerService(ServiceWrapper serviceWrapper) {
+        providerContainer.registerService(serviceWrapper.getMetadata().directory(), serviceWrapper);
+    }
+
+    public static ServiceWrapper lookupService(String directory) {
+        return providerContainer.lookupService(directory);
+    }
+
+    public static void removeService(ServiceWrapper serviceWrapper) {
+        String directory = serviceWrapper.getMetadata().directory();
+        // 只移除自己发布的, 同一个服务可能被同一个JVM中的多个server发布
+        if (providerContainer.lookupService(directory) == serviceWrapper) {
+            providerContainer.removeService(directory);
+        }
+    }
+
+    private InJvmProviders() {}
+}
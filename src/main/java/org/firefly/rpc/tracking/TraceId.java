@@ -18,6 +18,12 @@ public class TraceId implements Serializable {
         return new TraceId(id);
     }
 
+    public static TraceId newInstance(String id, int node) {
+        TraceId traceId = new TraceId(id);
+        traceId.node = node;
+        return traceId;
+    }
+
     private TraceId(String id) {
         this.id = id;
         node = 0;
@@ -0,0 +1,150 @@
+package org.firefly.serialization;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.firefly.common.util.SystemPropertyUtil;
+import org.firefly.common.util.constant.JConstants;
+import org.firefly.common.util.internal.Maps;
+import org.firefly.rpc.metric.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按类型记录序列化结果大小的移动估计值, 用于预先分配输出缓冲区, 避免大对象在序列化过程中多次扩容/拷贝.
+ *
+ * 估计方式与 Netty 的 {@code AdaptiveRecvByteBufAllocator} 相同: 在一张大小表中上下移动下标,
+ * 实际大小超过估计值时一次上调 {@link #INDEX_INCREMENT} 格, 连续两次明显小于估计值时下调 {@link #INDEX_DECREMENT} 格.
+ *
+ * 每个类型的估计值以 gauge 的形式导出: serializer.[name].buf.size.[className]
+ */
+public final class BufSizeEstimator {
+
+    private static final boolean METRIC_NEEDED = SystemPropertyUtil.getBoolean("firefly.metric.needed", true);
+
+    private static final int INDEX_INCREMENT = 4;
+    private static final int INDEX_DECREMENT = 1;
+
+    private static final int[] SIZE_TABLE;
+
+    static {
+        List<Integer> sizeTable = new ArrayList<>();
+        for (int i = 16; i < 512; i += 16) {
+            sizeTable.add(i);
+        }
+        for (int i = 512; i > 0 && i <= (1 << 30); i <<= 1) {
+            sizeTable.add(i);
+        }
+
+        SIZE_TABLE = new int[sizeTable.size()];
+        for (int i = 0; i < SIZE_TABLE.length; i++) {
+            SIZE_TABLE[i] = sizeTable.get(i);
+        }
+    }
+
+    // 未开启时所有类型共用, 估计值固定为 DEFAULT_BUF_SIZE
+    private static final Estimate FIXED = new Estimate(getSizeTableIndex(Serializer.DEFAULT_BUF_SIZE)) {
+
+        @Override
+        public void record(int actualSize) {}
+    };
+
+    private final String name;
+    private final ConcurrentMap<Class<?>, Estimate> estimates = Maps.newConcurrentMap();
+
+    public BufSizeEstimator(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 返回 {@code clazz} 的估计值, 第一次出现的类型从 {@link Serializer#DEFAULT_BUF_SIZE} 开始估计.
+     */
+    public Estimate estimate(Class<?> clazz) {
+        if (!JConstants.SERIALIZER_ADAPTIVE_BUF) {
+            return FIXED;
+        }
+
+        Estimate estimate = estimates.get(clazz);
+        if (estimate == null) {
+            Estimate newEstimate = new Estimate(getSizeTableIndex(Serializer.DEFAULT_BUF_SIZE));
+            estimate = estimates.putIfAbsent(clazz, newEstimate);
+            if (estimate == null) {
+                estimate = newEstimate;
+                if (METRIC_NEEDED) {
+                    final Estimate e = estimate;
+                    Metrics.gauge(MetricRegistry.name("serializer", name, "buf.size", clazz.getName()), new Gauge<Integer>() {
+
+                        @Override
+                        public Integer getValue() {
+                            return e.guess();
+                        }
+                    });
+                }
+            }
+        }
+        return estimate;
+    }
+
+    private static int getSizeTableIndex(final int size) {
+        for (int low = 0, high = SIZE_TABLE.length - 1; ; ) {
+            if (high < low) {
+                return low;
+            }
+            if (high == low) {
+                return high;
+            }
+
+            int mid = low + high >>> 1;
+            int a = SIZE_TABLE[mid];
+            int b = SIZE_TABLE[mid + 1];
+            if (size > b) {
+                low = mid + 1;
+            } else if (size < a) {
+                high = mid - 1;
+            } else if (size == a) {
+                return mid;
+            } else {
+                return mid + 1;
+            }
+        }
+    }
+
+    /**
+     * 单个类型的估计值, 多线程并发更新时允许丢失个别记录, 不影响估计的趋势.
+     */
+    public static class Estimate {
+
+        private volatile int index;
+        private boolean decreaseNow;
+
+        Estimate(int index) {
+            this.index = index;
+        }
+
+        /**
+         * 下一次序列化该类型时预先分配的缓冲区大小.
+         */
+        public int guess() {
+            return SIZE_TABLE[index];
+        }
+
+        /**
+         * 记录一次序列化结果的实际大小.
+         */
+        public void record(int actualSize) {
+            int _index = index;
+            if (actualSize <= SIZE_TABLE[Math.max(0, _index - INDEX_DECREMENT)]) {
+                if (decreaseNow) {
+                    index = Math.max(_index - INDEX_DECREMENT, 0);
+                    decreaseNow = false;
+                } else {
+                    decreaseNow = true;
+                }
+            } else if (actualSize > SIZE_TABLE[_index]) {
+                index = Math.min(_index + INDEX_INCREMENT, SIZE_TABLE.length - 1);
+                decreaseNow = false;
+            }
+        }
+    }
+}
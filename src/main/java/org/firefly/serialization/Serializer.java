@@ -1,5 +1,14 @@
 package org.firefly.serialization;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.firefly.common.util.exception.ExceptionUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
 /**
  * This interface provides an abstract view for one or more serializer impl.
  * SerializerImpl是基于SPI加载的, 会加载所有(jupiter-serialization-XXX), 并可以同时可以支持所有引入的SerializerImpl.
@@ -18,11 +27,80 @@ public abstract class Serializer {
 
     public abstract byte code();
 
+    /**
+     * 预先构建 {@code types} (包括泛型参数及字段类型) 的序列化元数据, 避免第一次序列化时在延迟敏感的路径上构建.
+     *
+     * 默认什么也不做, 需要元数据的子类可以覆盖.
+     */
+    public void warmUp(Type... types) {}
+
     public abstract <T> byte[] writeObject(T obj);
 
+    /**
+     * 直接将 {@code obj} 序列化到 {@code out} 中 (从 writerIndex 开始写), 省去中间 byte[] 的分配及拷贝.
+     *
+     * 默认实现退化为先序列化成 byte[] 再写入, 子类可以覆盖.
+     */
+    public <T> void writeObject(ByteBuf out, T obj) {
+        out.writeBytes(writeObject(obj));
+    }
+
     public abstract <T> T readObject(byte[] bytes, int offset, int length, Class<T> clazz);
 
     public <T> T readObject(byte[] bytes, Class<T> clazz) {
         return readObject(bytes, 0, bytes.length, clazz);
     }
+
+    /**
+     * 直接从 {@link ByteBuf} 中反序列化 [readerIndex, writerIndex) 区间的数据, 调用方负责 {@code buf} 的释放.
+     *
+     * 默认实现: heap buffer 直接使用其 backing array, 否则退化为拷贝一次到 byte[], 子类可以覆盖以避免拷贝.
+     */
+    public <T> T readObject(ByteBuf buf, Class<T> clazz) {
+        int length = buf.readableBytes();
+        if (buf.hasArray()) {
+            return readObject(buf.array(), buf.arrayOffset() + buf.readerIndex(), length, clazz);
+        }
+
+        byte[] bytes = new byte[length];
+        buf.getBytes(buf.readerIndex(), bytes);
+        return readObject(bytes, 0, length, clazz);
+    }
+
+    /**
+     * 从 {@link ByteBuffer} 中反序列化 [position, limit) 区间的数据, 不改变 {@code buffer} 的 position.
+     *
+     * 默认实现: heap buffer 直接使用其 backing array, 否则退化为拷贝一次到 byte[], 子类可以覆盖以避免拷贝.
+     */
+    public <T> T readObject(ByteBuffer buffer, Class<T> clazz) {
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            return readObject(buffer.array(), buffer.arrayOffset() + buffer.position(), length, clazz);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.duplicate().get(bytes);
+        return readObject(bytes, 0, length, clazz);
+    }
+
+    /**
+     * 从 {@link InputStream} 中反序列化一个对象, 调用方负责 {@code in} 的关闭.
+     * 分块传输的消息体以流的形式交给上层, 逐段读取时每一块读完即被释放, 不需要先重组出整个消息体.
+     *
+     * 默认实现退化为先把整个流读到一个(池化的) heap buffer 中, 子类可以覆盖以逐段读取.
+     */
+    public <T> T readObject(InputStream in, Class<T> clazz) {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            do {
+                buf.ensureWritable(DEFAULT_BUF_SIZE);
+            } while (buf.writeBytes(in, buf.writableBytes()) >= 0);
+            return readObject(buf, clazz);
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            buf.release();
+        }
+        return null; // never get here
+    }
 }
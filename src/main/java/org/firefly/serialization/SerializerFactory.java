@@ -6,6 +6,8 @@ import org.firefly.common.util.spi.JServiceLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Type;
+
 /**
  * Holds all serializers.
  */
@@ -23,6 +25,15 @@ public final class SerializerFactory {
         logger.info("Supported serializers: {}.", serializers);
     }
 
+    /**
+     * 预热所有的 serializer, 见 {@link Serializer#warmUp(Type...)}.
+     */
+    public static void warmUp(Type... types) {
+        for (Serializer s : serializers.values()) {
+            s.warmUp(types);
+        }
+    }
+
     public static Serializer getSerializer(byte code) {
         Serializer serializer = serializers.get(code);
 
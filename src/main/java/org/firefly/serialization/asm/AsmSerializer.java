@@ -0,0 +1,414 @@
+package org.firefly.serialization.asm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.firefly.common.util.internal.InternalThreadLocal;
+import org.firefly.common.util.internal.Maps;
+import org.firefly.serialization.BufSizeEstimator;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerType;
+import org.firefly.serialization.protostuff.ProtoStuffSerializer;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.firefly.common.util.exception.StackTraceUtil.stackTrace;
+
+/**
+ * 基于ASM生成的编解码器({@link ObjectCodec})的序列化/反序列化实现, 面向字段简单, 调用频繁的小DTO.
+ *
+ * 根对象:
+ * ┌────────┬─────────────────────────────────────────────────────┐
+ *   format   FORMAT_CODEC: 4 bytes fingerprint + ObjectCodec 消息体
+ *            FORMAT_FALLBACK: protostuff 消息体(ValueHolder包装)
+ * └────────┴─────────────────────────────────────────────────────┘
+ *
+ * 声明类型无法静态确定的字段(Object, 接口, 集合, 数组等)以 1 byte 类型标记 + 值的方式写入, 可以生成编解码器的
+ * 类型携带类名及 fingerprint, 其余的(集合, 异常等)交给protostuff.
+ *
+ * 与protostuff runtime schema相比, 不写字段编号及wire type, 基本类型不装箱, 字段为null时只占 bitmap 中的1位;
+ * 代价是两端的字段布局必须完全一致(通过 fingerprint 校验), 不支持字段的增删, 也不支持对象间的共享/循环引用.
+ */
+public class AsmSerializer extends Serializer {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(AsmSerializer.class);
+
+    private static final byte FORMAT_FALLBACK   = 0x00;
+    private static final byte FORMAT_CODEC      = 0x01;
+
+    // 动态类型的值的类型标记
+    private static final byte TAG_NULL          = 0x00;
+    private static final byte TAG_STRING        = 0x01;
+    private static final byte TAG_INT           = 0x02;
+    private static final byte TAG_LONG          = 0x03;
+    private static final byte TAG_BOOLEAN       = 0x04;
+    private static final byte TAG_DOUBLE        = 0x05;
+    private static final byte TAG_FLOAT         = 0x06;
+    private static final byte TAG_SHORT         = 0x07;
+    private static final byte TAG_BYTE          = 0x08;
+    private static final byte TAG_CHAR          = 0x09;
+    private static final byte TAG_BYTES         = 0x0a;
+    private static final byte TAG_OBJECTS       = 0x0b; // Object[]
+    private static final byte TAG_ENUM          = 0x0c;
+    private static final byte TAG_CODEC         = 0x0d;
+    private static final byte TAG_FALLBACK      = 0x0e;
+
+    private static final Object[] EMPTY_OBJECTS = new Object[0];
+
+    // value: ObjectCodec 或者 UNSUPPORTED
+    private static final ConcurrentMap<Class<?>, Object> codecCache = Maps.newConcurrentMap();
+    // 按 (ClassLoader, 类名) 缓存, 同名类在不同的线程上下文ClassLoader中可能是不同的类; 都是弱引用, 不阻止ClassLoader卸载
+    private static final WeakHashMap<ClassLoader, ConcurrentMap<String, WeakReference<Class<?>>>> classCaches =
+            new WeakHashMap<>();
+    private static final Object UNSUPPORTED = new Object();
+
+    private static final ProtoStuffSerializer fallback = new ProtoStuffSerializer();
+
+    // 按类型估计序列化结果的大小, 预先分配输出缓冲区; fallback 的部分由protostuff自己估计
+    private static final BufSizeEstimator sizeEstimator = new BufSizeEstimator("asm");
+
+    // 复用的堆内 ByteBuf, 用于 writeObject(obj) 输出 byte[] 的场景
+    private static final InternalThreadLocal<ByteBuf> bufThreadLocal = new InternalThreadLocal<ByteBuf>() {
+
+        @Override
+        protected ByteBuf initialValue() {
+            return Unpooled.buffer(DEFAULT_BUF_SIZE);
+        }
+    };
+
+    private static final InternalThreadLocal<ClassCacheHolder> classCacheThreadLocal =
+            new InternalThreadLocal<ClassCacheHolder>() {
+
+        @Override
+        protected ClassCacheHolder initialValue() {
+            return new ClassCacheHolder();
+        }
+    };
+
+    @Override
+    public byte code() {
+        return SerializerType.ASM.value();
+    }
+
+    @Override
+    public <T> byte[] writeObject(T obj) {
+        ByteBuf buf = bufThreadLocal.get();
+        try {
+            writeObject(buf, obj);
+            return ByteBufUtil.getBytes(buf);
+        } finally {
+            if (buf.capacity() > MAX_CACHED_BUF_SIZE) {
+                // 不缓存过大的buffer
+                bufThreadLocal.set(Unpooled.buffer(DEFAULT_BUF_SIZE));
+            } else {
+                buf.clear(); // for reuse
+            }
+        }
+    }
+
+    @Override
+    public <T> void writeObject(ByteBuf out, T obj) {
+        ObjectCodec codec = codec(obj.getClass());
+        if (codec == null) {
+            out.writeByte(FORMAT_FALLBACK);
+            fallback.writeObject(out, new ValueHolder(obj));
+        } else {
+            BufSizeEstimator.Estimate estimate = sizeEstimator.estimate(obj.getClass());
+            // 一次扩容到估计的大小, 避免 out 在写入过程中多次扩容
+            out.ensureWritable(estimate.guess());
+            int startIndex = out.writerIndex();
+
+            out.writeByte(FORMAT_CODEC);
+            out.writeInt(codec.fingerprint());
+            codec.write(out, obj);
+            estimate.record(out.writerIndex() - startIndex);
+        }
+    }
+
+    @Override
+    public <T> T readObject(byte[] bytes, int offset, int length, Class<T> clazz) {
+        return readObject(Unpooled.wrappedBuffer(bytes, offset, length), clazz);
+    }
+
+    @Override
+    public <T> T readObject(ByteBuf buf, Class<T> clazz) {
+        byte format = buf.readByte();
+        switch (format) {
+            case FORMAT_CODEC: {
+                ObjectCodec codec = codec(clazz);
+                if (codec == null) {
+                    throw new IllegalStateException("no codec for " + clazz.getName());
+                }
+                checkFingerprint(codec, buf.readInt());
+                return clazz.cast(codec.read(buf));
+            }
+            case FORMAT_FALLBACK:
+                return clazz.cast(fallback.readObject(buf, ValueHolder.class).value);
+            default:
+                throw new IllegalArgumentException("unknown format: " + format);
+        }
+    }
+
+    @Override
+    public <T> T readObject(ByteBuffer buffer, Class<T> clazz) {
+        // 包装成 ByteBuf(不拷贝, 不改变 buffer 的 position), 编解码器直接读取
+        return readObject(Unpooled.wrappedBuffer(buffer), clazz);
+    }
+
+    @Override
+    public void warmUp(Type... types) {
+        Set<Class<?>> visited = new HashSet<>();
+        for (Type type : types) {
+            try {
+                warmUp(type, visited);
+            } catch (Throwable t) {
+                // 预热失败不影响正常使用, 第一次序列化时会再次尝试生成
+                logger.warn("Warm up codec for {} failed: {}.", type, stackTrace(t));
+            }
+        }
+    }
+
+    private static void warmUp(Type type, Set<Class<?>> visited) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            warmUp(parameterizedType.getRawType(), visited);
+            for (Type arg : parameterizedType.getActualTypeArguments()) {
+                warmUp(arg, visited);
+            }
+        } else if (type instanceof GenericArrayType) {
+            warmUp(((GenericArrayType) type).getGenericComponentType(), visited);
+        } else if (type instanceof Class) {
+            Class<?> clazz = (Class<?>) type;
+            while (clazz.isArray()) {
+                clazz = clazz.getComponentType();
+            }
+            if (!visited.add(clazz) || codec(clazz) == null) {
+                return;
+            }
+
+            // 嵌套字段的编解码器是在第一次读写到它时才生成的, 一并预热
+            for (Class<?> cls = clazz; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+                for (Field field : cls.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        warmUp(field.getGenericType(), visited);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 返回 {@code type} 的编解码器, 不支持的类型返回 {@code null}.
+     */
+    static ObjectCodec codec(Class<?> type) {
+        Object codec = codecCache.get(type);
+        if (codec == null) {
+            // avoid duplicate class definition
+            synchronized (type) {
+                codec = codecCache.get(type);
+                if (codec == null) {
+                    codec = ObjectCodec.isCodecSupported(type) ? ObjectCodec.create(type) : UNSUPPORTED;
+                    codecCache.put(type, codec);
+                }
+            }
+        }
+        return codec == UNSUPPORTED ? null : (ObjectCodec) codec;
+    }
+
+    static void writeDynamic(ByteBuf out, Object value) {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.writeByte(TAG_STRING);
+            ObjectCodec.writeString(out, (String) value);
+        } else if (type == Integer.class) {
+            out.writeByte(TAG_INT).writeInt((Integer) value);
+        } else if (type == Long.class) {
+            out.writeByte(TAG_LONG).writeLong((Long) value);
+        } else if (type == Boolean.class) {
+            out.writeByte(TAG_BOOLEAN).writeBoolean((Boolean) value);
+        } else if (type == Double.class) {
+            out.writeByte(TAG_DOUBLE).writeDouble((Double) value);
+        } else if (type == Float.class) {
+            out.writeByte(TAG_FLOAT).writeFloat((Float) value);
+        } else if (type == Short.class) {
+            out.writeByte(TAG_SHORT).writeShort((Short) value);
+        } else if (type == Byte.class) {
+            out.writeByte(TAG_BYTE).writeByte((Byte) value);
+        } else if (type == Character.class) {
+            out.writeByte(TAG_CHAR).writeChar((Character) value);
+        } else if (type == byte[].class) {
+            out.writeByte(TAG_BYTES);
+            ObjectCodec.writeBytes(out, (byte[]) value);
+        } else if (type == Object[].class) {
+            Object[] array = (Object[]) value;
+            out.writeByte(TAG_OBJECTS).writeInt(array.length);
+            for (Object element : array) {
+                writeDynamic(out, element);
+            }
+        } else if (value instanceof Enum) {
+            out.writeByte(TAG_ENUM);
+            ObjectCodec.writeString(out, ((Enum<?>) value).getDeclaringClass().getName());
+            ObjectCodec.writeString(out, ((Enum<?>) value).name());
+        } else {
+            ObjectCodec codec = codec(type);
+            if (codec != null) {
+                out.writeByte(TAG_CODEC);
+                ObjectCodec.writeString(out, type.getName());
+                out.writeInt(codec.fingerprint());
+                codec.write(out, value);
+            } else {
+                // 集合, 异常等交给protostuff, 由它的 Object 字段处理多态
+                out.writeByte(TAG_FALLBACK);
+                int lengthIndex = out.writerIndex();
+                out.writeInt(0);
+                fallback.writeObject(out, new ValueHolder(value));
+                out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object readDynamic(ByteBuf in) {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return ObjectCodec.readString(in);
+            case TAG_INT:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_SHORT:
+                return in.readShort();
+            case TAG_BYTE:
+                return in.readByte();
+            case TAG_CHAR:
+                return in.readChar();
+            case TAG_BYTES:
+                return ObjectCodec.readBytes(in);
+            case TAG_OBJECTS: {
+                int length = in.readInt();
+                if (length == 0) {
+                    return EMPTY_OBJECTS;
+                }
+                Object[] array = new Object[length];
+                for (int i = 0; i < length; i++) {
+                    array[i] = readDynamic(in);
+                }
+                return array;
+            }
+            case TAG_ENUM: {
+                Class<Enum> type = (Class<Enum>) loadClass(ObjectCodec.readString(in));
+                return Enum.valueOf(type, ObjectCodec.readString(in));
+            }
+            case TAG_CODEC: {
+                Class<?> type = loadClass(ObjectCodec.readString(in));
+                ObjectCodec codec = codec(type);
+                if (codec == null) {
+                    throw new IllegalStateException("no codec for " + type.getName());
+                }
+                checkFingerprint(codec, in.readInt());
+                return codec.read(in);
+            }
+            case TAG_FALLBACK: {
+                int length = in.readInt();
+                ByteBuf slice = in.readSlice(length);
+                return fallback.readObject(slice, ValueHolder.class).value;
+            }
+            default:
+                throw new IllegalArgumentException("unknown value tag: " + tag);
+        }
+    }
+
+    private static void checkFingerprint(ObjectCodec codec, int remote) {
+        if (codec.fingerprint() != remote) {
+            throw new IllegalStateException("fingerprint mismatch for " + codec.type().getName()
+                    + ", local: " + Integer.toHexString(codec.fingerprint()) + ", remote: " + Integer.toHexString(remote)
+                    + ", the field layout of this class differs between the peers");
+        }
+    }
+
+    private static Class<?> loadClass(String name) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = AsmSerializer.class.getClassLoader();
+        }
+
+        ClassCacheHolder holder = classCacheThreadLocal.get();
+        ConcurrentMap<String, WeakReference<Class<?>>> cache = holder.cache;
+        if (holder.loader == null || holder.loader.get() != loader) {
+            cache = holder.cache = classCache(loader);
+            holder.loader = new WeakReference<>(loader);
+        }
+
+        WeakReference<Class<?>> ref = cache.get(name);
+        Class<?> type = ref == null ? null : ref.get();
+        if (type == null) {
+            try {
+                type = Class.forName(name, false, loader);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("class not found: " + name, e);
+            }
+            cache.put(name, new WeakReference<Class<?>>(type));
+        }
+        return type;
+    }
+
+    private static ConcurrentMap<String, WeakReference<Class<?>>> classCache(ClassLoader loader) {
+        synchronized (classCaches) {
+            ConcurrentMap<String, WeakReference<Class<?>>> cache = classCaches.get(loader);
+            if (cache == null) {
+                cache = Maps.newConcurrentMap();
+                classCaches.put(loader, cache);
+            }
+            return cache;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "asm:(code=" + code() + ")";
+    }
+
+    /**
+     * 当前线程上一次使用的ClassLoader及其缓存, 同一个线程中通常不变, 避免每次都查找 classCaches.
+     */
+    static final class ClassCacheHolder {
+
+        WeakReference<ClassLoader> loader;
+        ConcurrentMap<String, WeakReference<Class<?>>> cache;
+    }
+
+    /**
+     * 无法生成编解码器的值交给protostuff时的外层包装, protostuff 的根对象需要是一个具体的类型.
+     */
+    static final class ValueHolder {
+
+        Object value;
+
+        ValueHolder(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,659 @@
+package org.firefly.serialization.asm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
+import org.firefly.common.util.internal.unsafe.JUnsafe;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * 用ASM为每个DTO类型生成的编解码器, 字段按固定顺序直接读写, 不写字段编号及类型信息.
+ *
+ * 消息体:
+ * ┌──────────────────────┬──────────────────────────────────────────┐
+ *   nullable bitmap        字段值(按字段顺序, 为null的字段不占空间)
+ * └──────────────────────┴──────────────────────────────────────────┘
+ *
+ * 字段顺序: 父类字段在前, 同一个类中按字段名排序, 忽略 static 及 transient 字段;
+ * 基本类型字段通过 Unsafe 直接读写(不装箱), 不在 bitmap 中;
+ * 其余字段在 bitmap 中占1位(最多64个, 超出的字段以自描述的方式写入, 自己携带null标记).
+ *
+ * 子类 write()/read() 以下面的方式生成:
+ *
+ *  public void write(ByteBuf out, Object obj) {
+ *      long bits = 0;
+ *      if (UNSAFE.getObject(obj, offset_1) != null) bits |= 1L << 0;
+ *      ...
+ *      writeBitmap(out, bits, bitmapBytes);
+ *      out.writeInt(UNSAFE.getInt(obj, offset_0));
+ *      Object v = UNSAFE.getObject(obj, offset_1);
+ *      if (v != null) writeString(out, (String) v);
+ *      ...
+ *  }
+ *
+ * 生成的类只引用本类, netty 及JDK的public类型, 不直接引用DTO类型, 因此不需要与DTO在同一个 ClassLoader 中.
+ */
+public abstract class ObjectCodec {
+
+    protected static final Unsafe UNSAFE = JUnsafe.getUnsafe();
+
+    // 非基本类型字段的编码方式
+    static final int KIND_PRIMITIVE     = 0;
+    static final int KIND_STRING        = 1;
+    static final int KIND_BOXED         = 2;
+    static final int KIND_BYTES         = 3;
+    static final int KIND_ENUM          = 4;
+    static final int KIND_NESTED        = 5;    // 声明类型本身可以生成编解码器, 运行时类型一致时直接调用它的编解码器
+    static final int KIND_DYNAMIC       = 6;    // 其他类型, 携带类型信息写入
+
+    private static final int MAX_BITMAP_FIELDS = 64;
+
+    private static final String CODEC_INTERNAL_NAME = Type.getInternalName(ObjectCodec.class);
+    private static final String BYTE_BUF_INTERNAL_NAME = Type.getInternalName(ByteBuf.class);
+    private static final String UNSAFE_INTERNAL_NAME = Type.getInternalName(Unsafe.class);
+    private static final String BYTE_BUF_DESC = Type.getDescriptor(ByteBuf.class);
+    private static final String UNSAFE_DESC = Type.getDescriptor(Unsafe.class);
+
+    private static final AtomicInteger classIdGenerator = new AtomicInteger();
+
+    private Class<?> type;
+    private int fingerprint;
+    // 下标为字段的序号, 只有 KIND_ENUM/KIND_NESTED 字段有值
+    private Class<?>[] fieldTypes;
+    private volatile ObjectCodec[] nestedCodecs;
+
+    /**
+     * 将 {@code obj} 的字段写入 {@code out}, 不包括类型及 fingerprint.
+     */
+    public abstract void write(ByteBuf out, Object obj);
+
+    /**
+     * 从 {@code in} 中读出一个新的实例, 不调用构造方法.
+     */
+    public abstract Object read(ByteBuf in);
+
+    public Class<?> type() {
+        return type;
+    }
+
+    /**
+     * 字段布局(字段顺序, 名称及类型, 嵌套类型的布局)的指纹, 两端不一致时拒绝反序列化.
+     */
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    protected final Object newInstance() {
+        try {
+            return UNSAFE.allocateInstance(type);
+        } catch (InstantiationException e) {
+            throw new IllegalStateException("unable to instantiate " + type.getName(), e);
+        }
+    }
+
+    protected final void writeNested(ByteBuf out, Object value, int index) {
+        if (value.getClass() == fieldTypes[index]) {
+            out.writeByte(1);
+            nestedCodec(index).write(out, value);
+        } else {
+            // 运行时类型是声明类型的子类
+            out.writeByte(0);
+            AsmSerializer.writeDynamic(out, value);
+        }
+    }
+
+    protected final Object readNested(ByteBuf in, int index) {
+        if (in.readByte() == 1) {
+            return nestedCodec(index).read(in);
+        }
+        return AsmSerializer.readDynamic(in);
+    }
+
+    protected final void writeDynamic(ByteBuf out, Object value) {
+        AsmSerializer.writeDynamic(out, value);
+    }
+
+    protected final Object readDynamic(ByteBuf in) {
+        return AsmSerializer.readDynamic(in);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final Object readEnum(ByteBuf in, int index) {
+        return Enum.valueOf((Class<Enum>) fieldTypes[index], readString(in));
+    }
+
+    protected static void writeEnum(ByteBuf out, Enum<?> value) {
+        writeString(out, value.name());
+    }
+
+    protected static void writeBitmap(ByteBuf out, long bits, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            out.writeByte((int) (bits >>> (i << 3)));
+        }
+    }
+
+    protected static long readBitmap(ByteBuf in, int bytes) {
+        long bits = 0;
+        for (int i = 0; i < bytes; i++) {
+            bits |= (in.readByte() & 0xffL) << (i << 3);
+        }
+        return bits;
+    }
+
+    protected static void writeString(ByteBuf out, String s) {
+        // 先占位再回填长度, UTF-8编码直接写进 out, 不需要中间的 byte[]
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        int length = ByteBufUtil.writeUtf8(out, s);
+        out.setInt(lengthIndex, length);
+    }
+
+    protected static String readString(ByteBuf in) {
+        int length = in.readInt();
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.readerIndex(), length, CharsetUtil.UTF_8);
+        } else {
+            s = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        }
+        in.skipBytes(length);
+        return s;
+    }
+
+    protected static void writeBytes(ByteBuf out, byte[] bytes) {
+        out.writeInt(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    protected static byte[] readBytes(ByteBuf in) {
+        byte[] bytes = new byte[in.readInt()];
+        in.readBytes(bytes);
+        return bytes;
+    }
+
+    private ObjectCodec nestedCodec(int index) {
+        ObjectCodec[] codecs = nestedCodecs;
+        ObjectCodec codec = codecs[index];
+        if (codec == null) {
+            // 延迟到第一次用到时才创建, 类型之间的循环引用不会导致无限递归
+            codec = AsmSerializer.codec(fieldTypes[index]);
+            codecs[index] = codec;
+            nestedCodecs = codecs; // volatile write, 发布 codec
+        }
+        return codec;
+    }
+
+    /**
+     * 是否可以为 {@code clazz} 生成编解码器: 具体的类, 并且继承链上除了 Object 都不是JDK内置的类型
+     * (集合, 异常等JDK类型的内部字段不适合逐个字段读写, 交给 fallback 处理).
+     */
+    static boolean isCodecSupported(Class<?> clazz) {
+        if (clazz.isPrimitive() || clazz.isArray() || clazz.isInterface() || clazz.isEnum()
+                || Modifier.isAbstract(clazz.getModifiers()) || UNSAFE == null) {
+            return false;
+        }
+        for (Class<?> cls = clazz; cls != Object.class; cls = cls.getSuperclass()) {
+            if (isJdkType(cls)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static ObjectCodec create(Class<?> type) {
+        List<Field> fields = serializableFields(type);
+        int n = fields.size();
+        int[] kinds = new int[n];
+        long[] offsets = new long[n];
+        int[] bits = new int[n]; // bitmap中的位置, -1 表示不在bitmap中
+        Class<?>[] fieldTypes = new Class[n];
+        int bitmapFields = 0;
+        for (int i = 0; i < n; i++) {
+            Field f = fields.get(i);
+            kinds[i] = kindOf(f.getType());
+            offsets[i] = UNSAFE.objectFieldOffset(f);
+            if (kinds[i] == KIND_ENUM || kinds[i] == KIND_NESTED) {
+                fieldTypes[i] = f.getType();
+            }
+            if (kinds[i] == KIND_PRIMITIVE) {
+                bits[i] = -1;
+            } else if (bitmapFields < MAX_BITMAP_FIELDS) {
+                bits[i] = bitmapFields++;
+            } else {
+                // 超出bitmap容量, 以自描述的方式写入(自己携带null标记)
+                kinds[i] = KIND_DYNAMIC;
+                bits[i] = -1;
+            }
+        }
+        int bitmapBytes = (bitmapFields + 7) >>> 3;
+
+        String codecClassName = ObjectCodec.class.getName() + "$" + type.getSimpleName() + "$" + classIdGenerator.getAndIncrement();
+        String codecInternalName = codecClassName.replace('.', '/');
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        MethodVisitor mv;
+        // 1.5 的class文件不需要 StackMapTable
+        cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER + ACC_FINAL, codecInternalName, null, CODEC_INTERNAL_NAME, null);
+
+        // 无参构造方法
+        {
+            mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, CODEC_INTERNAL_NAME, "<init>", "()V", false);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        // public void write(ByteBuf out, Object obj);
+        // local: 0 this, 1 out, 2 obj, 3-4 bits, 5 value
+        {
+            mv = cw.visitMethod(ACC_PUBLIC, "write", "(" + BYTE_BUF_DESC + "Ljava/lang/Object;)V", null, null);
+            mv.visitCode();
+
+            // 第一遍: 计算 nullable bitmap
+            mv.visitInsn(LCONST_0);
+            mv.visitVarInsn(LSTORE, 3);
+            for (int i = 0; i < n; i++) {
+                if (bits[i] < 0) {
+                    continue;
+                }
+                Label isNull = new Label();
+                visitGetObject(mv, offsets[i]);
+                mv.visitJumpInsn(IFNULL, isNull);
+                mv.visitVarInsn(LLOAD, 3);
+                mv.visitLdcInsn(1L << bits[i]);
+                mv.visitInsn(LOR);
+                mv.visitVarInsn(LSTORE, 3);
+                mv.visitLabel(isNull);
+            }
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitVarInsn(LLOAD, 3);
+            visitPushInt(mv, bitmapBytes);
+            mv.visitMethodInsn(INVOKESTATIC, CODEC_INTERNAL_NAME, "writeBitmap", "(" + BYTE_BUF_DESC + "JI)V", false);
+
+            // 第二遍: 按字段顺序写入
+            for (int i = 0; i < n; i++) {
+                Class<?> fieldType = fields.get(i).getType();
+                if (kinds[i] == KIND_PRIMITIVE) {
+                    Type t = Type.getType(fieldType);
+                    mv.visitVarInsn(ALOAD, 1);
+                    mv.visitFieldInsn(GETSTATIC, CODEC_INTERNAL_NAME, "UNSAFE", UNSAFE_DESC);
+                    mv.visitVarInsn(ALOAD, 2);
+                    mv.visitLdcInsn(offsets[i]);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, UNSAFE_INTERNAL_NAME,
+                            "get" + unsafeSuffix(t), "(Ljava/lang/Object;J)" + t.getDescriptor(), false);
+                    visitByteBufWrite(mv, t);
+                    continue;
+                }
+
+                if (kinds[i] == KIND_DYNAMIC && bits[i] < 0) {
+                    // 自描述, null也要写入
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitVarInsn(ALOAD, 1);
+                    visitGetObject(mv, offsets[i]);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_INTERNAL_NAME,
+                            "writeDynamic", "(" + BYTE_BUF_DESC + "Ljava/lang/Object;)V", false);
+                    continue;
+                }
+
+                Label isNull = new Label();
+                visitGetObject(mv, offsets[i]);
+                mv.visitVarInsn(ASTORE, 5);
+                mv.visitVarInsn(ALOAD, 5);
+                mv.visitJumpInsn(IFNULL, isNull);
+                switch (kinds[i]) {
+                    case KIND_STRING:
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitVarInsn(ALOAD, 5);
+                        mv.visitTypeInsn(CHECKCAST, "java/lang/String");
+                        mv.visitMethodInsn(INVOKESTATIC, CODEC_INTERNAL_NAME,
+                                "writeString", "(" + BYTE_BUF_DESC + "Ljava/lang/String;)V", false);
+                        break;
+                    case KIND_BOXED: {
+                        Type t = Type.getType(unbox(fieldType));
+                        String boxInternalName = Type.getInternalName(fieldType);
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitVarInsn(ALOAD, 5);
+                        mv.visitTypeInsn(CHECKCAST, boxInternalName);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, boxInternalName,
+                                t.getClassName() + "Value", "()" + t.getDescriptor(), false);
+                        visitByteBufWrite(mv, t);
+                        break;
+                    }
+                    case KIND_BYTES:
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitVarInsn(ALOAD, 5);
+                        mv.visitTypeInsn(CHECKCAST, "[B");
+                        mv.visitMethodInsn(INVOKESTATIC, CODEC_INTERNAL_NAME,
+                                "writeBytes", "(" + BYTE_BUF_DESC + "[B)V", false);
+                        break;
+                    case KIND_ENUM:
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitVarInsn(ALOAD, 5);
+                        mv.visitTypeInsn(CHECKCAST, "java/lang/Enum");
+                        mv.visitMethodInsn(INVOKESTATIC, CODEC_INTERNAL_NAME,
+                                "writeEnum", "(" + BYTE_BUF_DESC + "Ljava/lang/Enum;)V", false);
+                        break;
+                    case KIND_NESTED:
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitVarInsn(ALOAD, 5);
+                        visitPushInt(mv, i);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_INTERNAL_NAME,
+                                "writeNested", "(" + BYTE_BUF_DESC + "Ljava/lang/Object;I)V", false);
+                        break;
+                    default: // KIND_DYNAMIC
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitVarInsn(ALOAD, 5);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_INTERNAL_NAME,
+                                "writeDynamic", "(" + BYTE_BUF_DESC + "Ljava/lang/Object;)V", false);
+                        break;
+                }
+                mv.visitLabel(isNull);
+            }
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        // public Object read(ByteBuf in);
+        // local: 0 this, 1 in, 2 obj, 3-4 bits
+        {
+            mv = cw.visitMethod(ACC_PUBLIC, "read", "(" + BYTE_BUF_DESC + ")Ljava/lang/Object;", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_INTERNAL_NAME, "newInstance", "()Ljava/lang/Object;", false);
+            mv.visitVarInsn(ASTORE, 2);
+            mv.visitVarInsn(ALOAD, 1);
+            visitPushInt(mv, bitmapBytes);
+            mv.visitMethodInsn(INVOKESTATIC, CODEC_INTERNAL_NAME, "readBitmap", "(" + BYTE_BUF_DESC + "I)J", false);
+            mv.visitVarInsn(LSTORE, 3);
+
+            for (int i = 0; i < n; i++) {
+                Class<?> fieldType = fields.get(i).getType();
+                if (kinds[i] == KIND_PRIMITIVE) {
+                    Type t = Type.getType(fieldType);
+                    mv.visitFieldInsn(GETSTATIC, CODEC_INTERNAL_NAME, "UNSAFE", UNSAFE_DESC);
+                    mv.visitVarInsn(ALOAD, 2);
+                    mv.visitLdcInsn(offsets[i]);
+                    mv.visitVarInsn(ALOAD, 1);
+                    visitByteBufRead(mv, t);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, UNSAFE_INTERNAL_NAME,
+                            "put" + unsafeSuffix(t), "(Ljava/lang/Object;J" + t.getDescriptor() + ")V", false);
+                    continue;
+                }
+
+                Label isNull = new Label();
+                if (bits[i] >= 0) {
+                    mv.visitVarInsn(LLOAD, 3);
+                    mv.visitLdcInsn(1L << bits[i]);
+                    mv.visitInsn(LAND);
+                    mv.visitInsn(LCONST_0);
+                    mv.visitInsn(LCMP);
+                    mv.visitJumpInsn(IFEQ, isNull);
+                }
+                mv.visitFieldInsn(GETSTATIC, CODEC_INTERNAL_NAME, "UNSAFE", UNSAFE_DESC);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitLdcInsn(offsets[i]);
+                switch (kinds[i]) {
+                    case KIND_STRING:
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitMethodInsn(INVOKESTATIC, CODEC_INTERNAL_NAME,
+                                "readString", "(" + BYTE_BUF_DESC + ")Ljava/lang/String;", false);
+                        break;
+                    case KIND_BOXED: {
+                        Type t = Type.getType(unbox(fieldType));
+                        mv.visitVarInsn(ALOAD, 1);
+                        visitByteBufRead(mv, t);
+                        mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(fieldType),
+                                "valueOf", "(" + t.getDescriptor() + ")" + Type.getDescriptor(fieldType), false);
+                        break;
+                    }
+                    case KIND_BYTES:
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitMethodInsn(INVOKESTATIC, CODEC_INTERNAL_NAME,
+                                "readBytes", "(" + BYTE_BUF_DESC + ")[B", false);
+                        break;
+                    case KIND_ENUM:
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitVarInsn(ALOAD, 1);
+                        visitPushInt(mv, i);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_INTERNAL_NAME,
+                                "readEnum", "(" + BYTE_BUF_DESC + "I)Ljava/lang/Object;", false);
+                        break;
+                    case KIND_NESTED:
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitVarInsn(ALOAD, 1);
+                        visitPushInt(mv, i);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_INTERNAL_NAME,
+                                "readNested", "(" + BYTE_BUF_DESC + "I)Ljava/lang/Object;", false);
+                        break;
+                    default: // KIND_DYNAMIC
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitVarInsn(ALOAD, 1);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, CODEC_INTERNAL_NAME,
+                                "readDynamic", "(" + BYTE_BUF_DESC + ")Ljava/lang/Object;", false);
+                        break;
+                }
+                mv.visitMethodInsn(INVOKEVIRTUAL, UNSAFE_INTERNAL_NAME,
+                        "putObject", "(Ljava/lang/Object;JLjava/lang/Object;)V", false);
+                mv.visitLabel(isNull);
+            }
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        byte[] bytes = cw.toByteArray();
+
+        Class<?> codecClass = CodecClassLoader.INSTANCE.defineClass(codecClassName, bytes);
+        try {
+            ObjectCodec codec = (ObjectCodec) codecClass.newInstance();
+            codec.type = type;
+            codec.fingerprint = fingerprint(type);
+            codec.fieldTypes = fieldTypes;
+            codec.nestedCodecs = new ObjectCodec[n];
+            return codec;
+        } catch (Throwable t) {
+            throw new RuntimeException("Error constructing object codec class: " + codecClass, t);
+        }
+    }
+
+    /**
+     * 字段布局的签名(递归包含 KIND_NESTED 字段类型的布局)的hash, 类型之间循环引用时只记录类名.
+     */
+    static int fingerprint(Class<?> type) {
+        StringBuilder buf = new StringBuilder(256);
+        appendSignature(type, buf, new HashSet<Class<?>>());
+        // FNV-1a
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < buf.length(); i++) {
+            hash ^= buf.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    private static void appendSignature(Class<?> type, StringBuilder buf, Set<Class<?>> visiting) {
+        buf.append(type.getName());
+        if (!visiting.add(type)) {
+            return;
+        }
+        buf.append('{');
+        for (Field f : serializableFields(type)) {
+            Class<?> fieldType = f.getType();
+            buf.append(f.getName()).append(':');
+            if (kindOf(fieldType) == KIND_NESTED) {
+                appendSignature(fieldType, buf, visiting);
+            } else {
+                buf.append(fieldType.getName());
+            }
+            buf.append(';');
+        }
+        buf.append('}');
+        visiting.remove(type);
+    }
+
+    private static List<Field> serializableFields(Class<?> type) {
+        LinkedList<Class<?>> hierarchy = new LinkedList<>();
+        for (Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            hierarchy.addFirst(cls);
+        }
+
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> cls : hierarchy) {
+            List<Field> declared = new ArrayList<>();
+            for (Field f : cls.getDeclaredFields()) {
+                int modifiers = f.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                    declared.add(f);
+                }
+            }
+            // getDeclaredFields() 不保证顺序, 按名称排序使两端的顺序一致
+            Collections.sort(declared, new Comparator<Field>() {
+
+                @Override
+                public int compare(Field o1, Field o2) {
+                    return o1.getName().compareTo(o2.getName());
+                }
+            });
+            fields.addAll(declared);
+        }
+        return fields;
+    }
+
+    private static int kindOf(Class<?> fieldType) {
+        if (fieldType.isPrimitive()) {
+            return KIND_PRIMITIVE;
+        }
+        if (fieldType == String.class) {
+            return KIND_STRING;
+        }
+        if (unbox(fieldType) != null) {
+            return KIND_BOXED;
+        }
+        if (fieldType == byte[].class) {
+            return KIND_BYTES;
+        }
+        if (fieldType.isEnum()) {
+            return KIND_ENUM;
+        }
+        if (isCodecSupported(fieldType)) {
+            return KIND_NESTED;
+        }
+        return KIND_DYNAMIC;
+    }
+
+    private static Class<?> unbox(Class<?> type) {
+        if (type == Integer.class) return int.class;
+        if (type == Long.class) return long.class;
+        if (type == Boolean.class) return boolean.class;
+        if (type == Double.class) return double.class;
+        if (type == Float.class) return float.class;
+        if (type == Short.class) return short.class;
+        if (type == Byte.class) return byte.class;
+        if (type == Character.class) return char.class;
+        return null;
+    }
+
+    private static boolean isJdkType(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+                || name.startsWith("com.sun.") || name.startsWith("jdk.");
+    }
+
+    // 把 UNSAFE.getObject(obj, offset) 的结果压栈
+    private static void visitGetObject(MethodVisitor mv, long offset) {
+        mv.visitFieldInsn(GETSTATIC, CODEC_INTERNAL_NAME, "UNSAFE", UNSAFE_DESC);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitLdcInsn(offset);
+        mv.visitMethodInsn(INVOKEVIRTUAL, UNSAFE_INTERNAL_NAME, "getObject", "(Ljava/lang/Object;J)Ljava/lang/Object;", false);
+    }
+
+    // 栈: ByteBuf, value -> 空
+    private static void visitByteBufWrite(MethodVisitor mv, Type t) {
+        String name;
+        String desc;
+        switch (t.getSort()) {
+            case Type.BOOLEAN:  name = "writeBoolean";  desc = "Z"; break;
+            case Type.BYTE:     name = "writeByte";     desc = "I"; break;
+            case Type.CHAR:     name = "writeChar";     desc = "I"; break;
+            case Type.SHORT:    name = "writeShort";    desc = "I"; break;
+            case Type.INT:      name = "writeInt";      desc = "I"; break;
+            case Type.FLOAT:    name = "writeFloat";    desc = "F"; break;
+            case Type.LONG:     name = "writeLong";     desc = "J"; break;
+            case Type.DOUBLE:   name = "writeDouble";   desc = "D"; break;
+            default:
+                throw new IllegalArgumentException("not a primitive type: " + t);
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF_INTERNAL_NAME, name, "(" + desc + ")" + BYTE_BUF_DESC, false);
+        mv.visitInsn(POP);
+    }
+
+    // 栈: ByteBuf -> value
+    private static void visitByteBufRead(MethodVisitor mv, Type t) {
+        String name;
+        switch (t.getSort()) {
+            case Type.BOOLEAN:  name = "readBoolean";   break;
+            case Type.BYTE:     name = "readByte";      break;
+            case Type.CHAR:     name = "readChar";      break;
+            case Type.SHORT:    name = "readShort";     break;
+            case Type.INT:      name = "readInt";       break;
+            case Type.FLOAT:    name = "readFloat";     break;
+            case Type.LONG:     name = "readLong";      break;
+            case Type.DOUBLE:   name = "readDouble";    break;
+            default:
+                throw new IllegalArgumentException("not a primitive type: " + t);
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF_INTERNAL_NAME, name, "()" + t.getDescriptor(), false);
+    }
+
+    private static String unsafeSuffix(Type t) {
+        String name = t.getClassName(); // int, long, ...
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static void visitPushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * 生成的编解码器只依赖本类及 netty/JDK 的类型, 统一定义在这个 ClassLoader 中.
+     */
+    static final class CodecClassLoader extends ClassLoader {
+
+        static final CodecClassLoader INSTANCE = new CodecClassLoader(ObjectCodec.class.getClassLoader());
+
+        CodecClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> defineClass(String name, byte[] bytes) throws ClassFormatError {
+            return defineClass(name, bytes, 0, bytes.length, getClass().getProtectionDomain());
+        }
+    }
+}
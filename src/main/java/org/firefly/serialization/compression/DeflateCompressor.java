@@ -0,0 +1,353 @@
+package org.firefly.serialization.compression;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.firefly.common.util.SystemPropertyUtil;
+import org.firefly.common.util.constant.JConstants;
+import org.firefly.common.util.exception.Signal;
+import org.firefly.common.util.internal.InternalThreadLocal;
+import org.firefly.model.rpc.BytesHolder;
+import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.model.transport.protocol.JProtocolHeader;
+import org.firefly.rpc.metric.Metrics;
+import org.firefly.transport.api.exception.IoSignals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 消息体压缩/解压缩, 基于JDK的 {@link Deflater}/{@link Inflater}, 使用最快的压缩级别.
+ *
+ * 压缩后的消息体格式: 4个字节原始长度 + deflate数据.
+ * 压缩在序列化之后, 解压在反序列化之前, 都在业务线程中进行, 不占用IO线程, encoder/decoder只负责收发帧.
+ *
+ * {@link Deflater}/{@link Inflater} 及临时缓冲区都是线程私有的; 没有 backing array 的 ByteBuf (direct/composite)
+ * 以 SCRATCH_SIZE 为单位分段拷贝进出, 不会为整个消息体再分配一个 byte[].
+ */
+public final class DeflateCompressor {
+
+    private static final boolean METRIC_NEEDED = SystemPropertyUtil.getBoolean("firefly.metric.needed", true);
+
+    private static final int SCRATCH_SIZE = 8192;
+
+    // 解压后的最大长度, 防止压缩炸弹
+    private static final int MAX_DECOMPRESSED_SIZE = JConstants.CHUNKED_TRANSFER
+            ? Math.max(JConstants.MAX_BODY_SIZE, JConstants.MAX_CHUNKED_BODY_SIZE)
+            : JConstants.MAX_BODY_SIZE;
+
+    private static final InternalThreadLocal<Deflater> deflaterThreadLocal = new InternalThreadLocal<Deflater>() {
+
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private static final InternalThreadLocal<Inflater> inflaterThreadLocal = new InternalThreadLocal<Inflater>() {
+
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    // 源 ByteBuf 没有 backing array 时, 分段拷贝输入使用的临时缓冲区
+    private static final InternalThreadLocal<byte[]> inputScratchThreadLocal = new InternalThreadLocal<byte[]>() {
+
+        @Override
+        protected byte[] initialValue() {
+            return new byte[SCRATCH_SIZE];
+        }
+    };
+
+    // 目标 ByteBuf 没有 backing array 时, 分段拷贝输出使用的临时缓冲区
+    private static final InternalThreadLocal<byte[]> outputScratchThreadLocal = new InternalThreadLocal<byte[]>() {
+
+        @Override
+        protected byte[] initialValue() {
+            return new byte[SCRATCH_SIZE];
+        }
+    };
+
+    /**
+     * 序列化之后在业务线程中调用: 消息体达到 {@code msg} 的压缩阈值并且 {@code channel} 已协商为v2时,
+     * 把消息体压缩到 {@code channel} 分配的出站buffer中(预留了协议头空间), 并设置 FLAG_COMPRESSED.
+     */
+    public static void compress(BytesHolder msg, JChannel channel) {
+        int threshold = msg.compressThreshold();
+        if (threshold <= 0
+                || msg.size() < threshold
+                || (msg.flags() & JProtocolHeader.FLAG_COMPRESSED) != 0
+                || channel.protocolVersion() < JProtocolHeader.PROTOCOL_VERSION_2) {
+            return;
+        }
+
+        byte s_code = msg.serializerCode();
+        ByteBuf body = msg.detachOutputBuf();
+        if (body == null) {
+            body = Unpooled.wrappedBuffer(msg.bytes());
+        }
+        ByteBuf compressed = channel.allocOutputBuf();
+        try {
+            compress(body, compressed);
+        } catch (Throwable t) {
+            compressed.release();
+            throw t;
+        } finally {
+            body.release();
+        }
+
+        msg.nullBytes();
+        msg.outputBuf(s_code, compressed);
+        msg.flags((byte) (msg.flags() | JProtocolHeader.FLAG_COMPRESSED));
+    }
+
+    /**
+     * 反序列化之前在业务线程中调用: 消息体带有 FLAG_COMPRESSED 时解压到池化的 heap buffer 中,
+     * 替换 {@code msg} 原来的消息体(原来的 inputBuf 被释放), 反序列化之后由 {@link BytesHolder#nullBytes()} 释放.
+     *
+     * 分块传输以流的形式交给上层的消息体不会被整个解压, 而是包装成边读边解压的流.
+     */
+    public static void decompress(BytesHolder msg) throws Signal {
+        if ((msg.flags() & JProtocolHeader.FLAG_COMPRESSED) == 0) {
+            return;
+        }
+
+        byte s_code = msg.serializerCode();
+        InputStream in = msg.inputStream();
+        if (in != null) {
+            msg.inputStream(s_code, new BodyInflaterInputStream(in, MAX_DECOMPRESSED_SIZE));
+            msg.flags((byte) (msg.flags() & ~JProtocolHeader.FLAG_COMPRESSED));
+            return;
+        }
+
+        ByteBuf src = msg.inputBuf();
+        if (src == null) {
+            src = Unpooled.wrappedBuffer(msg.bytes());
+        }
+        ByteBuf dst = decompress(src, src.readableBytes(), ByteBufAllocator.DEFAULT, MAX_DECOMPRESSED_SIZE);
+
+        msg.nullBytes();
+        msg.inputBuf(s_code, dst);
+        msg.flags((byte) (msg.flags() & ~JProtocolHeader.FLAG_COMPRESSED));
+    }
+
+    /**
+     * 压缩 {@code src} 中的所有可读字节并写入 {@code dst}.
+     */
+    public static void compress(ByteBuf src, ByteBuf dst) {
+        long start = System.nanoTime();
+        int length = src.readableBytes();
+        int dstStart = dst.writerIndex();
+
+        Deflater deflater = deflaterThreadLocal.get();
+        try {
+            dst.writeInt(length);
+            if (src.hasArray()) {
+                deflater.setInput(src.array(), src.arrayOffset() + src.readerIndex(), length);
+                deflater.finish();
+            } else {
+                byte[] scratch = inputScratchThreadLocal.get();
+                int index = src.readerIndex();
+                int end = index + length;
+                while (index < end) {
+                    int n = Math.min(scratch.length, end - index);
+                    src.getBytes(index, scratch, 0, n);
+                    index += n;
+                    deflater.setInput(scratch, 0, n);
+                    // 这一段输入被 Deflater 全部消费之后才能复用 scratch
+                    while (!deflater.needsInput()) {
+                        deflate(deflater, dst);
+                    }
+                }
+                deflater.finish();
+            }
+            while (!deflater.finished()) {
+                deflate(deflater, dst);
+            }
+            src.skipBytes(length);
+        } finally {
+            deflater.reset(); // for reuse
+        }
+
+        if (METRIC_NEEDED) {
+            MetricsHolder.compressionTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (length > 0) {
+                // 压缩后大小占原始大小的百分比
+                MetricsHolder.compressionRatioHistogram.update((dst.writerIndex() - dstStart) * 100L / length);
+            }
+        }
+    }
+
+    /**
+     * 从 {@code src} 中读取 {@code length} 个字节的压缩数据, 解压到 {@code allocator} 分配的(池化的)
+     * buffer中返回, 调用方负责释放.
+     */
+    public static ByteBuf decompress(ByteBuf src, int length, ByteBufAllocator allocator, int maxLength) throws Signal {
+        long start = System.nanoTime();
+
+        if (length < 4) {
+            throw IoSignals.ILLEGAL_COMPRESSED_BODY;
+        }
+        int originalLength = src.readInt();
+        int compressedLength = length - 4;
+        if (originalLength < 0) {
+            throw IoSignals.ILLEGAL_COMPRESSED_BODY;
+        }
+        if (originalLength > maxLength) {
+            throw IoSignals.BODY_TOO_LARGE;
+        }
+
+        // Inflater 只能输出到 byte[], 使用(池化的) heap buffer 避免再拷贝一次
+        ByteBuf dst = allocator.heapBuffer(originalLength, originalLength);
+        Inflater inflater = inflaterThreadLocal.get();
+        try {
+            byte[] out = dst.array();
+            int outOffset = dst.arrayOffset();
+            int written = 0;
+            if (src.hasArray()) {
+                inflater.setInput(src.array(), src.arrayOffset() + src.readerIndex(), compressedLength);
+                written = inflate(inflater, out, outOffset, written, originalLength);
+            } else {
+                byte[] scratch = inputScratchThreadLocal.get();
+                int index = src.readerIndex();
+                int end = index + compressedLength;
+                while (index < end && written < originalLength) {
+                    int n = Math.min(scratch.length, end - index);
+                    src.getBytes(index, scratch, 0, n);
+                    index += n;
+                    inflater.setInput(scratch, 0, n);
+                    written = inflate(inflater, out, outOffset, written, originalLength);
+                }
+            }
+            if (written != originalLength) {
+                throw IoSignals.ILLEGAL_COMPRESSED_BODY;
+            }
+            src.skipBytes(compressedLength);
+            dst.writerIndex(written);
+        } catch (DataFormatException e) {
+            dst.release();
+            throw IoSignals.ILLEGAL_COMPRESSED_BODY;
+        } catch (Signal s) {
+            dst.release();
+            throw s;
+        } finally {
+            inflater.reset(); // for reuse
+        }
+
+        if (METRIC_NEEDED) {
+            MetricsHolder.decompressionTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        return dst;
+    }
+
+    private static void deflate(Deflater deflater, ByteBuf dst) {
+        if (dst.hasArray()) {
+            dst.ensureWritable(SCRATCH_SIZE);
+            int n = deflater.deflate(dst.array(), dst.arrayOffset() + dst.writerIndex(), dst.writableBytes());
+            dst.writerIndex(dst.writerIndex() + n);
+        } else {
+            byte[] scratch = outputScratchThreadLocal.get();
+            int n = deflater.deflate(scratch);
+            dst.writeBytes(scratch, 0, n);
+        }
+    }
+
+    // 消费完当前输入(或输出已满/流结束)为止, 返回累计写出的字节数
+    private static int inflate(Inflater inflater, byte[] out, int outOffset, int written, int originalLength)
+            throws DataFormatException {
+
+        while (written < originalLength) {
+            int n = inflater.inflate(out, outOffset + written, originalLength - written);
+            if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                break;
+            }
+            written += n;
+        }
+        return written;
+    }
+
+    /**
+     * 边读边解压: 先读出4个字节的原始长度, 解压出的数据不能超过原始长度及 {@code maxLength}.
+     * 关闭时同时关闭被包装的流.
+     */
+    static final class BodyInflaterInputStream extends InflaterInputStream {
+
+        private final int maxLength;
+        // 还没有读出的解压后的字节数, -1 表示还没有读取原始长度
+        private int remaining = -1;
+
+        BodyInflaterInputStream(InputStream in, int maxLength) {
+            super(in, new Inflater(), SCRATCH_SIZE);
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining < 0) {
+                remaining = readOriginalLength();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return -1;
+            }
+
+            int n = super.read(b, off, Math.min(len, remaining));
+            if (n < 0) {
+                throw new IOException(IoSignals.ILLEGAL_COMPRESSED_BODY); // 解压出的数据比原始长度少
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+
+        private int readOriginalLength() throws IOException {
+            int length = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException(IoSignals.ILLEGAL_COMPRESSED_BODY);
+                }
+                length = (length << 8) | b;
+            }
+            if (length < 0) {
+                throw new IOException(IoSignals.ILLEGAL_COMPRESSED_BODY);
+            }
+            if (length > maxLength) {
+                throw new IOException(IoSignals.BODY_TOO_LARGE);
+            }
+            return length;
+        }
+    }
+
+    // - Metrics -------------------------------------------------------------------------------------------------------
+    static class MetricsHolder {
+        // 压缩耗时统计
+        static final Timer compressionTimer                 = Metrics.timer("compression");
+        // 解压缩耗时统计
+        static final Timer decompressionTimer               = Metrics.timer("decompression");
+        // 压缩率统计(压缩后大小占原始大小的百分比)
+        static final Histogram compressionRatioHistogram    = Metrics.histogram("compression.ratio");
+    }
+
+    private DeflateCompressor() {}
+}
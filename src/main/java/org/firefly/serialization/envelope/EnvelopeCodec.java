@@ -0,0 +1,403 @@
+package org.firefly.serialization.envelope;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.firefly.model.rpc.metadata.ServiceMetadata;
+import org.firefly.model.rpc.request.MessageWrapper;
+import org.firefly.model.rpc.response.ResultWrapper;
+import org.firefly.rpc.tracking.TraceId;
+import org.firefly.serialization.Serializer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.Serializable;
+
+/**
+ * 框架固定类型 {@link MessageWrapper}/{@link ResultWrapper} 的手写紧凑编码(见 JProtocolHeader.FLAG_ENVELOPE),
+ * 信封字段直接按顺序读写, 只有用户的参数及返回值才交给可插拔的 {@link Serializer}.
+ *
+ * 请求:
+ * ┌──────┬──────────────────────────────────────────────────────────────┬─────────┬───────────────────────┐
+ *   kind   service(按kind不同)                                              traceId   args(serializer, 可选)
+ * └──────┴──────────────────────────────────────────────────────────────┴─────────┴───────────────────────┘
+ *
+ * kind = KIND_STRINGS: appName + group + providerName + version + methodName;
+ * kind = KIND_DEFINE:  2 bytes id + 同 KIND_STRINGS, provider把id记录到连接的 {@link EnvelopeDictionary} 中;
+ * kind = KIND_ID:      2 bytes id, provider按id从连接的 {@link EnvelopeDictionary} 中取出服务及方法.
+ *
+ * 字符串 = 2 bytes 无符号长度(0xffff 表示null) + UTF-8 bytes;
+ * traceId = 1 byte(0: 无, 1: 有) + id字符串 + 4 bytes node;
+ * args 为空时不写, 否则占据剩余的所有字节.
+ *
+ * 响应:
+ * ┌──────┬─────────────────────────────────┐
+ *   kind   ResultWrapper(serializer, 可选)
+ * └──────┴─────────────────────────────────┘
+ *
+ * kind = KIND_NULL_RESULT 时(比如void方法)没有后续字节, 不需要调用 serializer.
+ */
+public final class EnvelopeCodec {
+
+    /** 请求kind: 信封字段以字符串形式携带 */
+    public static final byte KIND_STRINGS       = 0x00;
+    /** 请求kind: 字符串形式携带, 同时定义连接上的id */
+    public static final byte KIND_DEFINE        = 0x01;
+    /** 请求kind: 只携带已被provider确认的id */
+    public static final byte KIND_ID            = 0x02;
+
+    /** 响应kind */
+    public static final byte KIND_NULL_RESULT   = 0x00;
+    public static final byte KIND_RESULT        = 0x01;
+
+    /** 字典id占2个字节 */
+    public static final int MAX_DICTIONARY_CAPACITY = 0xffff;
+
+    private static final int NULL_STRING = 0xffff;
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    public static void writeMessage(Serializer serializer, MessageWrapper message, ByteBuf out) {
+        writeMessage(serializer, message, null, out);
+    }
+
+    /**
+     * {@code dictionary} 为当前连接的字典, 为 {@code null} 或已满时使用字符串形式.
+     */
+    public static void writeMessage(
+            Serializer serializer, MessageWrapper message, EnvelopeDictionary dictionary, ByteBuf out) {
+
+        ServiceMetadata metadata = message.getMetadata();
+        EnvelopeDictionary.Entry entry = dictionary == null
+                ? null
+                : dictionary.entry(message.getAppName(), metadata, message.getMethodName());
+        if (entry == null) {
+            out.writeByte(KIND_STRINGS);
+            writeService(out, message);
+        } else if (entry.isConfirmed()) {
+            out.writeByte(KIND_ID);
+            out.writeShort(entry.id());
+        } else {
+            out.writeByte(KIND_DEFINE);
+            out.writeShort(entry.id());
+            writeService(out, message);
+        }
+        TraceId traceId = message.getTraceId();
+        if (traceId == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            writeString(out, traceId.getId());
+            out.writeInt(traceId.getNode());
+        }
+
+        Object[] args = message.getArgs();
+        if (args != null && args.length > 0) {
+            serializer.writeObject(out, new Args(args));
+        }
+    }
+
+    public static byte[] writeMessage(Serializer serializer, MessageWrapper message) {
+        return writeMessage(serializer, message, (EnvelopeDictionary) null);
+    }
+
+    public static byte[] writeMessage(Serializer serializer, MessageWrapper message, EnvelopeDictionary dictionary) {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            writeMessage(serializer, message, dictionary, buf);
+            return ByteBufUtil.getBytes(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    public static MessageWrapper readMessage(Serializer serializer, ByteBuf in) {
+        return readMessage(serializer, in, null);
+    }
+
+    /**
+     * 从 [readerIndex, writerIndex) 区间解码, 会移动 {@code in} 的 readerIndex, 调用方负责 {@code in} 的释放.
+     *
+     * {@code dictionary} 为当前连接的字典, 为 {@code null} 时忽略 KIND_DEFINE 中的id, 并且不能解码 KIND_ID.
+     */
+    public static MessageWrapper readMessage(Serializer serializer, ByteBuf in, EnvelopeDictionary dictionary) {
+        byte kind = in.readByte();
+        MessageWrapper message;
+        switch (kind) {
+            case KIND_STRINGS:
+                message = readService(in);
+                break;
+            case KIND_DEFINE: {
+                int id = in.readUnsignedShort();
+                message = define(dictionary, id, readService(in));
+                break;
+            }
+            case KIND_ID:
+                message = lookup(dictionary, in.readUnsignedShort());
+                break;
+            default:
+                throw new IllegalArgumentException("unknown message envelope kind: " + kind);
+        }
+        if (in.readByte() != 0) {
+            String id = readString(in);
+            message.setTraceId(TraceId.newInstance(id, in.readInt()));
+        }
+
+        if (in.isReadable()) {
+            message.setArgs(serializer.readObject(in, Args.class).args);
+        } else {
+            message.setArgs(EMPTY_ARGS);
+        }
+        return message;
+    }
+
+    /**
+     * 从分块传输的流中解码, 参数由 {@code serializer} 直接从流中读取, 调用方负责 {@code in} 的关闭.
+     * {@code in} 由 {@link #pushbackStream(InputStream)} 创建.
+     */
+    public static MessageWrapper readMessage(Serializer serializer, PushbackInputStream in, EnvelopeDictionary dictionary)
+            throws IOException {
+
+        // DataInputStream 没有缓冲, 信封字段之后的数据仍然留在 in 中
+        DataInputStream data = new DataInputStream(in);
+        byte kind = data.readByte();
+        MessageWrapper message;
+        switch (kind) {
+            case KIND_STRINGS:
+                message = readService(data);
+                break;
+            case KIND_DEFINE: {
+                int id = data.readUnsignedShort();
+                message = define(dictionary, id, readService(data));
+                break;
+            }
+            case KIND_ID:
+                message = lookup(dictionary, data.readUnsignedShort());
+                break;
+            default:
+                throw new IllegalArgumentException("unknown message envelope kind: " + kind);
+        }
+        if (data.readByte() != 0) {
+            String id = readString(data);
+            message.setTraceId(TraceId.newInstance(id, data.readInt()));
+        }
+
+        int b = in.read();
+        if (b >= 0) {
+            in.unread(b);
+            message.setArgs(serializer.readObject(in, Args.class).args);
+        } else {
+            message.setArgs(EMPTY_ARGS);
+        }
+        return message;
+    }
+
+    public static MessageWrapper readMessage(Serializer serializer, byte[] bytes) {
+        return readMessage(serializer, bytes, null);
+    }
+
+    public static MessageWrapper readMessage(Serializer serializer, byte[] bytes, EnvelopeDictionary dictionary) {
+        return readMessage(serializer, Unpooled.wrappedBuffer(bytes), dictionary);
+    }
+
+    /**
+     * 不移动 readerIndex, 返回 KIND_DEFINE 请求所定义的id, 其他kind返回 -1.
+     */
+    public static int definedId(ByteBuf in) {
+        int index = in.readerIndex();
+        return in.getByte(index) == KIND_DEFINE ? in.getUnsignedShort(index + 1) : -1;
+    }
+
+    public static int definedId(byte[] bytes) {
+        return bytes[0] == KIND_DEFINE ? ((bytes[1] & 0xff) << 8) | (bytes[2] & 0xff) : -1;
+    }
+
+    /**
+     * 读取后回退, 不改变流的位置.
+     */
+    public static int definedId(PushbackInputStream in) throws IOException {
+        byte[] head = new byte[3];
+        int n = 0;
+        for (int r; n < head.length && (r = in.read(head, n, head.length - n)) > 0; ) {
+            n += r;
+        }
+        in.unread(head, 0, n);
+        return n == head.length ? definedId(head) : -1;
+    }
+
+    /**
+     * 包装分块传输的流, 使其可以被 {@link #definedId(PushbackInputStream)} 及
+     * {@link #readMessage(Serializer, PushbackInputStream, EnvelopeDictionary)} 读取.
+     */
+    public static PushbackInputStream pushbackStream(InputStream in) {
+        return new PushbackInputStream(in, 3);
+    }
+
+    public static void writeResult(Serializer serializer, ResultWrapper result, ByteBuf out) {
+        if (result.getResult() == null) {
+            out.writeByte(KIND_NULL_RESULT);
+        } else {
+            out.writeByte(KIND_RESULT);
+            serializer.writeObject(out, result);
+        }
+    }
+
+    public static byte[] writeResult(Serializer serializer, ResultWrapper result) {
+        if (result.getResult() == null) {
+            return new byte[] { KIND_NULL_RESULT };
+        }
+
+        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            writeResult(serializer, result, buf);
+            return ByteBufUtil.getBytes(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 从 [readerIndex, writerIndex) 区间解码, 会移动 {@code in} 的 readerIndex, 调用方负责 {@code in} 的释放.
+     */
+    public static ResultWrapper readResult(Serializer serializer, ByteBuf in) {
+        byte kind = in.readByte();
+        switch (kind) {
+            case KIND_NULL_RESULT:
+                return new ResultWrapper();
+            case KIND_RESULT:
+                return serializer.readObject(in, ResultWrapper.class);
+            default:
+                throw new IllegalArgumentException("unknown result envelope kind: " + kind);
+        }
+    }
+
+    public static ResultWrapper readResult(Serializer serializer, byte[] bytes) {
+        return readResult(serializer, Unpooled.wrappedBuffer(bytes));
+    }
+
+    /**
+     * 从分块传输的流中解码, 调用方负责 {@code in} 的关闭.
+     */
+    public static ResultWrapper readResult(Serializer serializer, InputStream in) throws IOException {
+        int kind = in.read();
+        switch (kind) {
+            case KIND_NULL_RESULT:
+                return new ResultWrapper();
+            case KIND_RESULT:
+                return serializer.readObject(in, ResultWrapper.class);
+            default:
+                throw new IllegalArgumentException("unknown result envelope kind: " + kind);
+        }
+    }
+
+    private static void writeService(ByteBuf out, MessageWrapper message) {
+        writeString(out, message.getAppName());
+        ServiceMetadata metadata = message.getMetadata();
+        writeString(out, metadata.getGroup());
+        writeString(out, metadata.getServiceProviderName());
+        writeString(out, metadata.getVersion());
+        writeString(out, message.getMethodName());
+    }
+
+    private static MessageWrapper readService(ByteBuf in) {
+        String appName = readString(in);
+        String group = readString(in);
+        String providerName = readString(in);
+        String version = readString(in);
+        MessageWrapper message = new MessageWrapper(new ServiceMetadata(group, providerName, version));
+        message.setAppName(appName);
+        message.setMethodName(readString(in));
+        return message;
+    }
+
+    private static MessageWrapper readService(DataInputStream in) throws IOException {
+        String appName = readString(in);
+        String group = readString(in);
+        String providerName = readString(in);
+        String version = readString(in);
+        MessageWrapper message = new MessageWrapper(new ServiceMetadata(group, providerName, version));
+        message.setAppName(appName);
+        message.setMethodName(readString(in));
+        return message;
+    }
+
+    // KIND_DEFINE: 把id记录到连接的字典中, 之后同一个id的请求共享字典中的元数据
+    private static MessageWrapper define(EnvelopeDictionary dictionary, int id, MessageWrapper message) {
+        if (dictionary != null
+                && dictionary.define(id, message.getAppName(), message.getMetadata(), message.getMethodName())) {
+            return newMessage(dictionary.get(id));
+        }
+        return message;
+    }
+
+    private static MessageWrapper lookup(EnvelopeDictionary dictionary, int id) {
+        EnvelopeDictionary.Entry entry = dictionary == null ? null : dictionary.get(id);
+        if (entry == null) {
+            throw new IllegalArgumentException("undefined envelope id: " + id);
+        }
+        return newMessage(entry);
+    }
+
+    private static MessageWrapper newMessage(EnvelopeDictionary.Entry entry) {
+        MessageWrapper message = new MessageWrapper(entry.metadata());
+        message.setAppName(entry.appName());
+        message.setMethodName(entry.methodName());
+        return message;
+    }
+
+    private static void writeString(ByteBuf out, String s) {
+        if (s == null) {
+            out.writeShort(NULL_STRING);
+            return;
+        }
+
+        // 先占位再回填长度, UTF-8编码直接写进 out, 不需要中间的 byte[]
+        int lengthIndex = out.writerIndex();
+        out.writeShort(0);
+        int length = ByteBufUtil.writeUtf8(out, s);
+        if (length >= NULL_STRING) {
+            throw new IllegalArgumentException("string too long for envelope: " + length);
+        }
+        out.setShort(lengthIndex, length);
+    }
+
+    private static String readString(ByteBuf in) {
+        int length = in.readUnsignedShort();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        String s = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return s;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, CharsetUtil.UTF_8);
+    }
+
+    /**
+     * 参数数组的外层包装, 可插拔的 serializer 需要一个具体类型作为根对象.
+     */
+    static final class Args implements Serializable {
+
+        private static final long serialVersionUID = -4513627419375212834L;
+
+        Object[] args;
+
+        Args(Object[] args) {
+            this.args = args;
+        }
+    }
+
+    private EnvelopeCodec() {}
+}
@@ -0,0 +1,193 @@
+package org.firefly.serialization.envelope;
+
+import org.firefly.common.util.internal.Maps;
+import org.firefly.model.rpc.metadata.ServiceMetadata;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 单个连接上 <appName, 服务目录, 方法名> 到 id 的字典, 连接两端各持有一份, 随连接一起销毁.
+ *
+ * consumer为首次调用的组合分配id, 以 {@link EnvelopeCodec#KIND_DEFINE} 把id与字符串一起发给provider;
+ * provider记录后在响应扩展区(JProtocolHeader.EXT_ENVELOPE_ID)中回复该id, consumer收到后标记为已确认,
+ * 之后的请求只携带id({@link EnvelopeCodec#KIND_ID}), provider直接按下标查数组.
+ *
+ * 确认之前consumer会一直发送 KIND_DEFINE(同一个id, 同样的字符串), provider重复定义是幂等的,
+ * 所以不需要关心请求在provider线程池中的执行顺序.
+ */
+public final class EnvelopeDictionary {
+
+    private final int capacity;
+
+    // consumer: 查找(或分配)组合对应的id
+    private final ConcurrentMap<Key, Entry> ids = Maps.newConcurrentMap();
+    // 两端: id -> entry, 下标即id, 写时复制
+    private volatile Entry[] entries = new Entry[0];
+
+    public EnvelopeDictionary(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * consumer端, 返回组合对应的 entry, 第一次出现时分配新的id; 字典已满时返回 {@code null}, 调用方退回字符串编码.
+     */
+    public Entry entry(String appName, ServiceMetadata metadata, String methodName) {
+        Key key = new Key(appName, metadata.directory(), methodName);
+        Entry entry = ids.get(key);
+        if (entry != null) {
+            return entry;
+        }
+
+        synchronized (this) {
+            entry = ids.get(key);
+            if (entry == null) {
+                int id = entries.length;
+                if (id >= capacity) {
+                    return null;
+                }
+                entry = new Entry(id, appName, metadata, methodName);
+                append(entry);
+                ids.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * consumer端, provider已经记录了该id.
+     */
+    public void confirm(int id) {
+        Entry entry = get(id);
+        if (entry != null) {
+            entry.confirmed = true;
+        }
+    }
+
+    /**
+     * provider端, 记录consumer定义的id, 超出容量时不记录并返回 {@code false}(不回复确认).
+     */
+    public synchronized boolean define(int id, String appName, ServiceMetadata metadata, String methodName) {
+        if (id >= capacity) {
+            return false;
+        }
+
+        Entry[] array = entries;
+        if (id < array.length && array[id] != null) {
+            Entry old = array[id];
+            if (old.matches(appName, metadata, methodName)) {
+                return true;
+            }
+        }
+
+        Entry entry = new Entry(id, appName, metadata, methodName);
+        if (id >= array.length) {
+            Entry[] newArray = new Entry[id + 1];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            array = newArray;
+        } else {
+            array = array.clone();
+        }
+        array[id] = entry;
+        entries = array;
+        return true;
+    }
+
+    public Entry get(int id) {
+        Entry[] array = entries;
+        return id >= 0 && id < array.length ? array[id] : null;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void append(Entry entry) {
+        Entry[] array = entries;
+        Entry[] newArray = new Entry[array.length + 1];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        newArray[array.length] = entry;
+        entries = newArray;
+    }
+
+    public static final class Entry {
+
+        private final int id;
+        // 同一id的调用共享同一组实例, provider端 ServiceMetadata.directory() 及字符串的hash都只计算一次
+        private final String appName;
+        private final ServiceMetadata metadata;
+        private final String methodName;
+
+        private volatile boolean confirmed;
+
+        Entry(int id, String appName, ServiceMetadata metadata, String methodName) {
+            this.id = id;
+            this.appName = appName;
+            this.metadata = metadata;
+            this.methodName = methodName;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public String appName() {
+            return appName;
+        }
+
+        public ServiceMetadata metadata() {
+            return metadata;
+        }
+
+        public String methodName() {
+            return methodName;
+        }
+
+        public boolean isConfirmed() {
+            return confirmed;
+        }
+
+        boolean matches(String appName, ServiceMetadata metadata, String methodName) {
+            return equals(this.appName, appName)
+                    && this.metadata.equals(metadata)
+                    && equals(this.methodName, methodName);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private static final class Key {
+
+        private final String appName;
+        private final String directory;
+        private final String methodName;
+
+        Key(String appName, String directory, String methodName) {
+            this.appName = appName;
+            this.directory = directory;
+            this.methodName = methodName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return Entry.equals(appName, key.appName)
+                    && directory.equals(key.directory)
+                    && Entry.equals(methodName, key.methodName);
+        }
+
+        @Override
+        public int hashCode() {
+            // 字符串都来自调用方缓存的实例(directory() 有缓存, 方法名来自 Method.getName()), hash也都是缓存过的
+            int result = appName != null ? appName.hashCode() : 0;
+            result = 31 * result + directory.hashCode();
+            result = 31 * result + (methodName != null ? methodName.hashCode() : 0);
+            return result;
+        }
+    }
+}
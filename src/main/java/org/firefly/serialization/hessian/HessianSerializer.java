@@ -0,0 +1,223 @@
+package org.firefly.serialization.hessian;
+
+import com.caucho.hessian.io.Hessian2Input;
+import com.caucho.hessian.io.Hessian2Output;
+import com.caucho.hessian.io.SerializerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.firefly.common.util.SystemPropertyUtil;
+import org.firefly.common.util.exception.ExceptionUtil;
+import org.firefly.common.util.internal.InternalThreadLocal;
+import org.firefly.common.util.internal.unsafe.UnsafeReferenceFieldUpdater;
+import org.firefly.common.util.internal.unsafe.UnsafeUpdater;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Hessian2的序列化/反序列化实现.
+ *
+ * 每个线程持有可复用的 {@link Hessian2Output}/{@link Hessian2Input} 及其底层的字节流, 每次调用只需 init,
+ * 不再为每次序列化/反序列化创建一整套流对象; 所有流共享一个 {@link SerializerFactory}(缓存了各类型的序列化器).
+ * 任何一次调用失败后流的状态都不可信, 当前线程的holder被丢弃, 下一次调用重新创建.
+ */
+public class HessianSerializer extends Serializer {
+
+    private static final UnsafeReferenceFieldUpdater<ByteArrayOutputStream, byte[]> bufUpdater =
+            UnsafeUpdater.newReferenceFieldUpdater(ByteArrayOutputStream.class, "buf");
+
+    private static final InternalThreadLocal<HessianHolder> hessianThreadLocal = new InternalThreadLocal<HessianHolder>() {
+
+        @Override
+        protected HessianHolder initialValue() {
+            return new HessianHolder();
+        }
+    };
+
+    @Override
+    public byte code() {
+        return SerializerType.HESSIAN.value();
+    }
+
+    @Override
+    public <T> byte[] writeObject(T obj) {
+        HessianHolder holder = hessianThreadLocal.get();
+        ByteArrayOutputStream buf = holder.buf;
+        Hessian2Output output = holder.output;
+        boolean success = false;
+        try {
+            output.init(buf);
+            output.writeObject(obj);
+            output.flush();
+            byte[] bytes = buf.toByteArray();
+            success = true;
+            return bytes;
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            holder.resetOutput(success);
+        }
+        return null; // never get here
+    }
+
+    @Override
+    public <T> void writeObject(ByteBuf out, T obj) {
+        HessianHolder holder = hessianThreadLocal.get();
+        Hessian2Output output = holder.output;
+        boolean success = false;
+        try {
+            output.init(new ByteBufOutputStream(out));
+            output.writeObject(obj);
+            output.flush();
+            success = true;
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            holder.resetOutput(success);
+        }
+    }
+
+    @Override
+    public <T> T readObject(byte[] bytes, int offset, int length, Class<T> clazz) {
+        HessianHolder holder = hessianThreadLocal.get();
+        Hessian2Input input = holder.input;
+        boolean success = false;
+        try {
+            holder.inputStream.setBuffer(bytes, offset, length);
+            input.init(holder.inputStream);
+            T obj = clazz.cast(input.readObject(clazz));
+            success = true;
+            return obj;
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            holder.resetInput(success);
+        }
+        return null; // never get here
+    }
+
+    @Override
+    public <T> T readObject(ByteBuf buf, Class<T> clazz) {
+        if (buf.hasArray()) {
+            return super.readObject(buf, clazz);
+        }
+
+        HessianHolder holder = hessianThreadLocal.get();
+        Hessian2Input input = holder.input;
+        boolean success = false;
+        try {
+            // direct/composite buffer 以流的方式读取, 无需拷贝到 byte[]
+            input.init(new ByteBufInputStream(buf));
+            T obj = clazz.cast(input.readObject(clazz));
+            success = true;
+            return obj;
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            holder.resetInput(success);
+        }
+        return null; // never get here
+    }
+
+    @Override
+    public <T> T readObject(InputStream in, Class<T> clazz) {
+        HessianHolder holder = hessianThreadLocal.get();
+        Hessian2Input input = holder.input;
+        boolean success = false;
+        try {
+            input.init(in);
+            T obj = clazz.cast(input.readObject(clazz));
+            success = true;
+            return obj;
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            holder.resetInput(success);
+        }
+        return null; // never get here
+    }
+
+    @Override
+    public String toString() {
+        return "hessian:(code=" + code() + ")";
+    }
+
+    // 延迟到第一次使用时才初始化hessian, 避免SPI加载本类时的初始化失败(比如高版本JDK未开放反射权限)影响其他序列化方式
+    static final class SerializerFactoryHolder {
+
+        static final SerializerFactory serializerFactory = new SerializerFactory();
+
+        static {
+            // 默认 true, 与其他序列化方式一样不要求对象实现 java.io.Serializable
+            serializerFactory.setAllowNonSerializable(
+                    SystemPropertyUtil.getBoolean("firefly.serializer.hessian.allow_non_serializable", true));
+        }
+    }
+
+    static final class HessianHolder {
+
+        private static final byte[] EMPTY_BYTES = new byte[0];
+
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream(DEFAULT_BUF_SIZE);
+        final Hessian2Output output = new Hessian2Output(buf);
+        final ResettableByteArrayInputStream inputStream = new ResettableByteArrayInputStream(EMPTY_BYTES);
+        final Hessian2Input input = new Hessian2Input(inputStream);
+
+        HessianHolder() {
+            output.setSerializerFactory(SerializerFactoryHolder.serializerFactory);
+            input.setSerializerFactory(SerializerFactoryHolder.serializerFactory);
+        }
+
+        void resetOutput(boolean success) {
+            if (!success) {
+                // 失败时 output 的内部状态(引用表, 未flush的数据)未知, 丢弃整个holder
+                hessianThreadLocal.remove();
+                return;
+            }
+
+            // 不再引用调用方的 ByteBuf
+            output.init(buf);
+            buf.reset(); // for reuse
+
+            // 防止hold过大的内存块一直不释放
+            assert bufUpdater != null;
+            if (bufUpdater.get(buf).length > MAX_CACHED_BUF_SIZE) {
+                bufUpdater.set(buf, new byte[DEFAULT_BUF_SIZE]);
+            }
+        }
+
+        void resetInput(boolean success) {
+            if (!success) {
+                // 失败时 input 可能停在对象中间, init 不会清空它内部缓冲区中没读完的字节及分块状态, 丢弃整个holder
+                hessianThreadLocal.remove();
+                return;
+            }
+
+            // 不再引用调用方的 byte[]/ByteBuf/InputStream
+            inputStream.setBuffer(EMPTY_BYTES, 0, 0);
+            input.init(inputStream);
+        }
+    }
+
+    /**
+     * 可以重新指定数据源的 {@link ByteArrayInputStream}.
+     */
+    static final class ResettableByteArrayInputStream extends ByteArrayInputStream {
+
+        ResettableByteArrayInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        void setBuffer(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.count = Math.min(offset + length, buf.length);
+            this.mark = offset;
+        }
+    }
+}
@@ -1,20 +1,43 @@
 package org.firefly.serialization.java;
 
-
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.firefly.common.util.SystemPropertyUtil;
 import org.firefly.common.util.exception.ExceptionUtil;
 import org.firefly.common.util.internal.InternalThreadLocal;
+import org.firefly.common.util.internal.Maps;
 import org.firefly.common.util.internal.unsafe.UnsafeReferenceFieldUpdater;
 import org.firefly.common.util.internal.unsafe.UnsafeUpdater;
+import org.firefly.serialization.BufSizeEstimator;
 import org.firefly.serialization.Serializer;
 import org.firefly.serialization.SerializerType;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Java自身的序列化/反序列化实现.
+ *
+ * 默认使用快速模式: 每个线程复用同一对 {@link ObjectOutputStream}/{@link ObjectInputStream}, 每次序列化之后
+ * reset 清空handle表, 写出的数据与每次新建 {@link ObjectOutputStream} 完全相同(stream header + 对象),
+ * 所以两端可以分别选择是否开启; 反序列化时 {@code resolveClass} 优先使用线程上下文ClassLoader加载,
+ * 结果按 (ClassLoader, 类名) 缓存, 省去每次查找 latestUserDefinedLoader 及 Class.forName 的开销.
  */
 public class JavaSerializer extends Serializer {
 
+    // 默认 true, 复用线程内的对象流
+    private static final boolean FAST =
+            SystemPropertyUtil.getBoolean("firefly.serializer.java.fast", true);
+
+    // ObjectStreamConstants.STREAM_MAGIC + STREAM_VERSION
+    private static final int STREAM_HEADER = (ObjectStreamConstants.STREAM_MAGIC << 16) | ObjectStreamConstants.STREAM_VERSION;
+
     private static final UnsafeReferenceFieldUpdater<ByteArrayOutputStream, byte[]> bufUpdater =
             UnsafeUpdater.newReferenceFieldUpdater(ByteArrayOutputStream.class, "buf");
 
@@ -27,6 +50,43 @@ public class JavaSerializer extends Serializer {
         }
     };
 
+    private static final InternalThreadLocal<OutputHolder> outputThreadLocal = new InternalThreadLocal<OutputHolder>() {
+
+        @Override
+        protected OutputHolder initialValue() {
+            return new OutputHolder();
+        }
+    };
+
+    private static final InternalThreadLocal<InputHolder> inputThreadLocal = new InternalThreadLocal<InputHolder>() {
+
+        @Override
+        protected InputHolder initialValue() {
+            return new InputHolder();
+        }
+    };
+
+    // 线程上下文ClassLoader -> (类名 -> Class), 不同ClassLoader中的同名类互不影响;
+    // ClassLoader及Class都是弱引用, 不阻止应用的ClassLoader被卸载
+    private static final WeakHashMap<ClassLoader, ConcurrentMap<String, WeakReference<Class<?>>>> classCaches =
+            new WeakHashMap<>();
+
+    // 按类型估计序列化结果的大小, 预先分配输出缓冲区
+    private static final BufSizeEstimator sizeEstimator = new BufSizeEstimator("java");
+
+    private final boolean fast;
+
+    public JavaSerializer() {
+        this(FAST);
+    }
+
+    /**
+     * @param fast 是否复用线程内的对象流, {@code false} 时每次新建对象流
+     */
+    public JavaSerializer(boolean fast) {
+        this.fast = fast;
+    }
+
     @Override
     public byte code() {
         return SerializerType.JAVA.value();
@@ -34,6 +94,22 @@ public class JavaSerializer extends Serializer {
 
     @Override
     public <T> byte[] writeObject(T obj) {
+        if (fast) {
+            OutputHolder holder = outputThreadLocal.get();
+            ByteBuf buf = holder.buf;
+            try {
+                writeFast(holder, buf, obj);
+                return ByteBufUtil.getBytes(buf);
+            } finally {
+                buf.clear(); // for reuse
+
+                // 防止hold过大的内存块一直不释放
+                if (buf.capacity() > MAX_CACHED_BUF_SIZE) {
+                    holder.buf = Unpooled.buffer(DEFAULT_BUF_SIZE);
+                }
+            }
+        }
+
         ByteArrayOutputStream buf = bufThreadLocal.get();
         ObjectOutputStream output = null;
         try {
@@ -61,8 +137,35 @@ public class JavaSerializer extends Serializer {
         return null; // never get here
     }
 
+    @Override
+    public <T> void writeObject(ByteBuf out, T obj) {
+        if (fast) {
+            writeFast(outputThreadLocal.get(), out, obj);
+            return;
+        }
+
+        ObjectOutputStream output = null;
+        try {
+            output = new ObjectOutputStream(new ByteBufOutputStream(out));
+            output.writeObject(obj);
+            output.flush();
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
     @Override
     public <T> T readObject(byte[] bytes, int offset, int length, Class<T> clazz) {
+        if (fast) {
+            return readFast(Unpooled.wrappedBuffer(bytes, offset, length), clazz);
+        }
+
         ObjectInputStream input = null;
         try {
             input = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length));
@@ -80,8 +183,317 @@ public class JavaSerializer extends Serializer {
         return null; // never get here
     }
 
+    @Override
+    public <T> T readObject(ByteBuf buf, Class<T> clazz) {
+        if (fast) {
+            return readFast(buf, clazz);
+        }
+
+        ObjectInputStream input = null;
+        try {
+            // ByteBufInputStream 直接读取 buf (heap/direct/composite均可), 无需拷贝到 byte[]
+            input = new ObjectInputStream(new ByteBufInputStream(buf));
+            Object obj = input.readObject();
+            return clazz.cast(obj);
+        } catch (Exception e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {}
+            }
+        }
+        return null; // never get here
+    }
+
+    @Override
+    public <T> T readObject(ByteBuffer buffer, Class<T> clazz) {
+        // 包装成 ByteBuf(不拷贝, 不改变 buffer 的 position), 以流的方式读取
+        return readObject(Unpooled.wrappedBuffer(buffer), clazz);
+    }
+
+    @Override
+    public <T> T readObject(InputStream in, Class<T> clazz) {
+        if (fast) {
+            return readFast(in, clazz);
+        }
+
+        try {
+            // 不关闭 ObjectInputStream, in 由调用方关闭
+            ObjectInputStream input = new ObjectInputStream(in);
+            Object obj = input.readObject();
+            return clazz.cast(obj);
+        } catch (Exception e) {
+            ExceptionUtil.throwException(e);
+        }
+        return null; // never get here
+    }
+
     @Override
     public String toString() {
         return "java:(code=" + code() + ")";
     }
+
+    private static <T> void writeFast(OutputHolder holder, ByteBuf out, T obj) {
+        BufSizeEstimator.Estimate estimate = sizeEstimator.estimate(obj.getClass());
+        // 一次扩容到估计的大小, 避免 out 在写入过程中多次扩容
+        out.ensureWritable(estimate.guess());
+        int startIndex = out.writerIndex();
+
+        boolean success = false;
+        try {
+            holder.sink.out = out;
+            out.writeInt(STREAM_HEADER);
+            holder.output.writeObject(obj);
+            holder.output.flush();
+            estimate.record(out.writerIndex() - startIndex);
+
+            // 清空handle表, 不再引用 obj; reset 写出的 TC_RESET 被丢弃, 下一个对象仍从初始状态开始写
+            holder.sink.out = null;
+            holder.output.reset();
+            success = true;
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            holder.sink.out = null;
+            if (!success) {
+                // 对象流的状态未知, 丢弃
+                outputThreadLocal.remove();
+            }
+        }
+    }
+
+    private static <T> T readFast(ByteBuf buf, Class<T> clazz) {
+        InputHolder holder = inputThreadLocal.get();
+        boolean success = false;
+        try {
+            if (buf.readableBytes() < 4 || buf.readInt() != STREAM_HEADER) {
+                throw new StreamCorruptedException("invalid stream header");
+            }
+            // 在对象之前插入 TC_RESET, 使 ObjectInputStream 清空上一次读取留下的handle表
+            holder.source.reset(buf);
+            Object obj = holder.input.readObject();
+            success = true;
+            return clazz.cast(obj);
+        } catch (Exception e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            holder.source.in = null; // 不再引用调用方的 ByteBuf
+            if (!success) {
+                inputThreadLocal.remove();
+            }
+        }
+        return null; // never get here
+    }
+
+    private static <T> T readFast(InputStream in, Class<T> clazz) {
+        InputHolder holder = inputThreadLocal.get();
+        boolean success = false;
+        try {
+            if (readInt(in) != STREAM_HEADER) {
+                throw new StreamCorruptedException("invalid stream header");
+            }
+            holder.source.reset(in);
+            Object obj = holder.input.readObject();
+            success = true;
+            return clazz.cast(obj);
+        } catch (Exception e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            holder.source.stream = null; // 不再引用调用方的 InputStream
+            if (!success) {
+                inputThreadLocal.remove();
+            }
+        }
+        return null; // never get here
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    static final class OutputHolder {
+
+        final SinkOutputStream sink = new SinkOutputStream();
+        final ObjectOutputStream output;
+        // 复用的堆内 ByteBuf, 用于 writeObject(obj) 输出 byte[] 的场景
+        ByteBuf buf = Unpooled.buffer(DEFAULT_BUF_SIZE);
+
+        OutputHolder() {
+            try {
+                // 构造时写出的 stream header 被丢弃, 每次序列化时由 writeFast 写入
+                output = new ObjectOutputStream(sink);
+                output.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 上一次读取的对象会留在handle表中, 直到本线程下一次读取时被 TC_RESET 清空.
+     */
+    static final class InputHolder {
+
+        final SourceInputStream source = new SourceInputStream();
+        final ObjectInputStream input;
+
+        InputHolder() {
+            try {
+                // 构造时需要读取一次 stream header
+                source.in = Unpooled.wrappedBuffer(new byte[] {
+                        (byte) (STREAM_HEADER >>> 24), (byte) (STREAM_HEADER >>> 16),
+                        (byte) (STREAM_HEADER >>> 8), (byte) STREAM_HEADER });
+                input = new CachedClassObjectInputStream(source);
+                source.in = null;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 写入当前指定的 {@link ByteBuf}, 未指定时丢弃.
+     */
+    static final class SinkOutputStream extends OutputStream {
+
+        ByteBuf out;
+
+        @Override
+        public void write(int b) {
+            if (out != null) {
+                out.writeByte(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (out != null) {
+                out.writeBytes(b, off, len);
+            }
+        }
+    }
+
+    /**
+     * 从当前指定的 {@link ByteBuf} (或 {@link InputStream}) 中读取, 可以在数据之前插入一个 TC_RESET.
+     */
+    static final class SourceInputStream extends InputStream {
+
+        ByteBuf in;
+        InputStream stream;
+        boolean resetPending;
+
+        void reset(ByteBuf in) {
+            this.in = in;
+            this.resetPending = true;
+        }
+
+        void reset(InputStream stream) {
+            this.stream = stream;
+            this.resetPending = true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (resetPending) {
+                resetPending = false;
+                return ObjectStreamConstants.TC_RESET & 0xff;
+            }
+            if (stream != null) {
+                return stream.read();
+            }
+            if (in == null || !in.isReadable()) {
+                return -1;
+            }
+            return in.readByte() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (resetPending) {
+                resetPending = false;
+                b[off] = ObjectStreamConstants.TC_RESET;
+                return 1;
+            }
+            if (stream != null) {
+                return stream.read(b, off, len);
+            }
+            if (in == null || !in.isReadable()) {
+                return -1;
+            }
+            len = Math.min(len, in.readableBytes());
+            in.readBytes(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (stream != null) {
+                return (resetPending ? 1 : 0) + stream.available();
+            }
+            return (resetPending ? 1 : 0) + (in == null ? 0 : in.readableBytes());
+        }
+    }
+
+    static ConcurrentMap<String, WeakReference<Class<?>>> classCache(ClassLoader loader) {
+        synchronized (classCaches) {
+            ConcurrentMap<String, WeakReference<Class<?>>> cache = classCaches.get(loader);
+            if (cache == null) {
+                cache = Maps.newConcurrentMap();
+                classCaches.put(loader, cache);
+            }
+            return cache;
+        }
+    }
+
+    static final class CachedClassObjectInputStream extends ObjectInputStream {
+
+        // 上一次使用的ClassLoader及其缓存, 同一个线程中通常不变, 避免每次都查找 classCaches
+        private WeakReference<ClassLoader> lastLoader;
+        private ConcurrentMap<String, WeakReference<Class<?>>> lastCache;
+
+        CachedClassObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                return super.resolveClass(desc);
+            }
+
+            ConcurrentMap<String, WeakReference<Class<?>>> cache = lastCache;
+            if (lastLoader == null || lastLoader.get() != loader) {
+                cache = lastCache = classCache(loader);
+                lastLoader = new WeakReference<>(loader);
+            }
+
+            String name = desc.getName();
+            WeakReference<Class<?>> ref = cache.get(name);
+            Class<?> clazz = ref == null ? null : ref.get();
+            if (clazz == null) {
+                try {
+                    clazz = Class.forName(name, false, loader);
+                } catch (ClassNotFoundException e) {
+                    // 基本类型或者上下文ClassLoader不可见的类, 交给默认的 latestUserDefinedLoader
+                    clazz = super.resolveClass(desc);
+                }
+                cache.put(name, new WeakReference<Class<?>>(clazz));
+            }
+            return clazz;
+        }
+    }
 }
@@ -0,0 +1,207 @@
+package org.firefly.serialization.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.firefly.common.util.SystemPropertyUtil;
+import org.firefly.common.util.internal.InternalThreadLocal;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerType;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.firefly.common.util.Preconditions.checkNotNull;
+
+/**
+ * Kryo的序列化/反序列化实现.
+ *
+ * {@link Kryo} 不是线程安全的, 每个线程持有一个 {@link Kryo} 实例以及可复用的 {@link Output}/{@link Input}.
+ *
+ * 可以通过 {@link #registerClass(Class[])} 预先注册类型, 注册过的类型序列化时只写一个varint类型id而不是类名,
+ * 注意consumer与provider必须以相同的顺序注册相同的类型.
+ */
+public class KryoSerializer extends Serializer {
+
+    // 默认 false, 允许序列化未注册的类型(写入类名)
+    private static final boolean REGISTRATION_REQUIRED =
+            SystemPropertyUtil.getBoolean("firefly.serializer.kryo.registration.required", false);
+
+    /**
+     * 默认 true, 记录对象引用, 支持循环引用及共享引用(与Java原生序列化的语义一致).
+     * 设置为 false 可以省去引用表的开销, 但是对象图中不能有循环引用(会栈溢出), 共享引用的对象会被写多次,
+     * 反序列化之后不再是同一个对象; 写入格式不同, consumer与provider必须设置相同的值.
+     */
+    private static final boolean REFERENCES =
+            SystemPropertyUtil.getBoolean("firefly.serializer.kryo.references", true);
+
+    // 使用Java原生序列化的类型(及其子类)
+    private static final List<Class<?>> useJavaSerializerTypes = new CopyOnWriteArrayList<>();
+    // 预先注册的类型, 只增不减, 按注册顺序分配类型id
+    private static final List<Class<?>> registeredTypes = new CopyOnWriteArrayList<>();
+
+    static {
+        // Throwable 通常没有无参构造方法并且带有 transient/native 状态, 交给Java原生序列化更稳妥
+        useJavaSerializerTypes.add(Throwable.class);
+    }
+
+    private static final InternalThreadLocal<KryoHolder> kryoThreadLocal = new InternalThreadLocal<KryoHolder>() {
+
+        @Override
+        protected KryoHolder initialValue() {
+            return new KryoHolder();
+        }
+    };
+
+    /**
+     * 指定类型(及其子类)使用Java原生序列化, 需要在序列化器第一次使用之前设置.
+     */
+    public static void setJavaSerializer(Class<?> type) {
+        useJavaSerializerTypes.add(checkNotNull(type, "type"));
+    }
+
+    /**
+     * 预先注册类型以获得紧凑的类型id, 线程内的 {@link Kryo} 实例在下一次使用时补上新注册的类型.
+     */
+    public static void registerClass(Class<?>... types) {
+        for (Class<?> type : types) {
+            registeredTypes.add(checkNotNull(type, "type"));
+        }
+    }
+
+    @Override
+    public byte code() {
+        return SerializerType.KRYO.value();
+    }
+
+    @Override
+    public <T> byte[] writeObject(T obj) {
+        KryoHolder holder = kryoThreadLocal.get();
+        Output output = holder.output;
+        try {
+            holder.kryo().writeObject(output, obj);
+            return output.toBytes();
+        } finally {
+            holder.resetOutput();
+        }
+    }
+
+    @Override
+    public <T> void writeObject(ByteBuf out, T obj) {
+        KryoHolder holder = kryoThreadLocal.get();
+        Output output = holder.output;
+        try {
+            // output 的 byte[] 只作为写缓冲, 满了即刷到 out 中
+            output.setOutputStream(new ByteBufOutputStream(out));
+            holder.kryo().writeObject(output, obj);
+            output.flush();
+        } finally {
+            output.setOutputStream(null);
+            holder.resetOutput();
+        }
+    }
+
+    @Override
+    public <T> T readObject(byte[] bytes, int offset, int length, Class<T> clazz) {
+        KryoHolder holder = kryoThreadLocal.get();
+        Input input = holder.input;
+        try {
+            input.setBuffer(bytes, offset, length);
+            return holder.kryo().readObject(input, clazz);
+        } finally {
+            holder.resetInput();
+        }
+    }
+
+    @Override
+    public <T> T readObject(ByteBuf buf, Class<T> clazz) {
+        if (buf.hasArray()) {
+            return super.readObject(buf, clazz);
+        }
+
+        KryoHolder holder = kryoThreadLocal.get();
+        Input input = holder.input;
+        try {
+            // direct/composite buffer 以流的方式读取, input 的 byte[] 只作为读缓冲
+            input.setBuffer(holder.inputBuf);
+            input.setInputStream(new ByteBufInputStream(buf));
+            return holder.kryo().readObject(input, clazz);
+        } finally {
+            holder.resetInput();
+        }
+    }
+
+    @Override
+    public <T> T readObject(InputStream in, Class<T> clazz) {
+        KryoHolder holder = kryoThreadLocal.get();
+        Input input = holder.input;
+        try {
+            // input 的 byte[] 只作为读缓冲
+            input.setBuffer(holder.inputBuf);
+            input.setInputStream(in);
+            return holder.kryo().readObject(input, clazz);
+        } finally {
+            holder.resetInput();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "kryo:(code=" + code() + ")";
+    }
+
+    static final class KryoHolder {
+
+        private static final byte[] EMPTY_BYTES = new byte[0];
+
+        final Kryo kryo;
+        final Output output = new Output(DEFAULT_BUF_SIZE, -1);
+        final Input input = new Input(EMPTY_BYTES);
+        final byte[] inputBuf = new byte[DEFAULT_BUF_SIZE];
+        int registeredCount;
+
+        KryoHolder() {
+            kryo = new Kryo();
+            for (Class<?> type : useJavaSerializerTypes) {
+                kryo.addDefaultSerializer(type, JavaSerializer.class);
+            }
+            // 反序列化时不调用构造方法, 与 ProtoStuffSerializer 的默认行为一致
+            kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+            kryo.setRegistrationRequired(REGISTRATION_REQUIRED);
+            kryo.setReferences(REFERENCES);
+        }
+
+        Kryo kryo() {
+            List<Class<?>> types = registeredTypes;
+            int size = types.size();
+            if (registeredCount < size) {
+                // 补上本线程 Kryo 实例创建之后新注册的类型
+                for (int i = registeredCount; i < size; i++) {
+                    kryo.register(types.get(i));
+                }
+                registeredCount = size;
+            }
+            return kryo;
+        }
+
+        void resetOutput() {
+            output.clear(); // for reuse
+
+            // 防止hold过大的内存块一直不释放
+            if (output.getBuffer().length > MAX_CACHED_BUF_SIZE) {
+                output.setBuffer(new byte[DEFAULT_BUF_SIZE], -1);
+            }
+        }
+
+        void resetInput() {
+            // 不再引用调用方的 byte[]
+            input.setBuffer(EMPTY_BYTES);
+        }
+    }
+}
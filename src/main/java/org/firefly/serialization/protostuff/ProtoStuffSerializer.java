@@ -1,23 +1,41 @@
 package org.firefly.serialization.protostuff;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import io.protostuff.ByteBufferInput;
 import io.protostuff.LinkedBuffer;
 import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
 import io.protostuff.runtime.RuntimeSchema;
 import org.firefly.common.util.Reflects;
 import org.firefly.common.util.SystemPropertyUtil;
+import org.firefly.common.util.exception.ExceptionUtil;
 import org.firefly.common.util.internal.InternalThreadLocal;
 import org.firefly.common.util.internal.Maps;
+import org.firefly.serialization.BufSizeEstimator;
 import org.firefly.serialization.Serializer;
 import org.firefly.serialization.SerializerType;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
+import static org.firefly.common.util.exception.StackTraceUtil.stackTrace;
+
 /**
  * Protostuff的序列化/反序列化实现, Firefly中默认的实现.
  */
 public class ProtoStuffSerializer extends Serializer {
 
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(ProtoStuffSerializer.class);
+
     static {
         // 详见 io.protostuff.runtime.RuntimeEnv
 
@@ -46,12 +64,15 @@ public class ProtoStuffSerializer extends Serializer {
 
     private static final ConcurrentMap<Class<?>, Schema<?>> schemaCache = Maps.newConcurrentMap();
 
+    // 按类型估计序列化结果的大小, 预先分配输出缓冲区
+    private static final BufSizeEstimator sizeEstimator = new BufSizeEstimator("proto_stuff");
+
     // 目的是复用 LinkedBuffer 中链表头结点 byte[]
-    private static final InternalThreadLocal<LinkedBuffer> bufThreadLocal = new InternalThreadLocal<LinkedBuffer>() {
+    private static final InternalThreadLocal<BufHolder> bufThreadLocal = new InternalThreadLocal<BufHolder>() {
 
         @Override
-        protected LinkedBuffer initialValue() {
-            return LinkedBuffer.allocate(DEFAULT_BUF_SIZE);
+        protected BufHolder initialValue() {
+            return new BufHolder(DEFAULT_BUF_SIZE);
         }
     };
 
@@ -63,11 +84,39 @@ public class ProtoStuffSerializer extends Serializer {
     @SuppressWarnings("unchecked")
     @Override
     public <T> byte[] writeObject(T obj) {
-        Schema<T> schema = getSchema((Class<T>) obj.getClass());
+        Class<T> clazz = (Class<T>) obj.getClass();
+        Schema<T> schema = getSchema(clazz);
+
+        BufSizeEstimator.Estimate estimate = sizeEstimator.estimate(clazz);
+        // 头结点足够大时只有一个结点, toByteArray 只需拷贝一次
+        LinkedBuffer buf = bufThreadLocal.get().linkedBuffer(estimate.guess());
+        try {
+            byte[] bytes = ProtostuffIOUtil.toByteArray(obj, schema, buf);
+            estimate.record(bytes.length);
+            return bytes;
+        } finally {
+            buf.clear(); // for reuse
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> void writeObject(ByteBuf out, T obj) {
+        Class<T> clazz = (Class<T>) obj.getClass();
+        Schema<T> schema = getSchema(clazz);
 
-        LinkedBuffer buf = bufThreadLocal.get();
+        BufSizeEstimator.Estimate estimate = sizeEstimator.estimate(clazz);
+        // 一次扩容到估计的大小, 避免 out 在写入过程中多次扩容
+        out.ensureWritable(estimate.guess());
+        int startIndex = out.writerIndex();
+
+        LinkedBuffer buf = bufThreadLocal.get().buf;
         try {
-            return ProtostuffIOUtil.toByteArray(obj, schema, buf);
+            // LinkedBuffer 只作为写缓冲, 满了即刷到 out 中, 不再 toByteArray
+            ProtostuffIOUtil.writeTo(new ByteBufOutputStream(out), obj, schema, buf);
+            estimate.record(out.writerIndex() - startIndex);
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
         } finally {
             buf.clear(); // for reuse
         }
@@ -82,11 +131,125 @@ public class ProtoStuffSerializer extends Serializer {
         return msg;
     }
 
+    @Override
+    public <T> T readObject(ByteBuf buf, Class<T> clazz) {
+        if (buf.hasArray()) {
+            return super.readObject(buf, clazz);
+        }
+
+        if (buf.nioBufferCount() != 1) {
+            // CompositeByteBuf 等, 以流的方式逐块读取, 无需先拷贝成一个连续的 byte[]
+            return readObject(new ByteBufInputStream(buf), clazz);
+        }
+
+        // direct buffer, 通过 ByteBufferInput 直接读取堆外内存, 避免拷贝到 byte[]
+        return readObject(buf.nioBuffer(), clazz);
+    }
+
+    @Override
+    public <T> T readObject(InputStream in, Class<T> clazz) {
+        T msg = Reflects.newInstance(clazz, false);
+        Schema<T> schema = getSchema(clazz);
+
+        LinkedBuffer buffer = bufThreadLocal.get().buf;
+        try {
+            ProtostuffIOUtil.mergeFrom(in, msg, schema, buffer);
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        } finally {
+            buffer.clear();
+        }
+        return msg;
+    }
+
+    @Override
+    public <T> T readObject(ByteBuffer buffer, Class<T> clazz) {
+        if (buffer.hasArray()) {
+            return super.readObject(buffer, clazz);
+        }
+
+        T msg = Reflects.newInstance(clazz, false);
+        Schema<T> schema = getSchema(clazz);
+
+        try {
+            // slice() 使 ByteBufferInput 的读取不影响调用方的 position
+            ByteBufferInput input = new ByteBufferInput(buffer.slice(), true);
+            schema.mergeFrom(input, msg);
+            input.checkLastTagWas(0);
+        } catch (IOException e) {
+            ExceptionUtil.throwException(e);
+        }
+        return msg;
+    }
+
+    @Override
+    public void warmUp(Type... types) {
+        Set<Class<?>> visited = new HashSet<>();
+        for (Type type : types) {
+            try {
+                warmUp(type, visited);
+            } catch (Throwable t) {
+                // 预热失败不影响正常使用, 第一次序列化时会再次尝试构建
+                logger.warn("Warm up schema for {} failed: {}.", type, stackTrace(t));
+            }
+        }
+    }
+
+    private void warmUp(Type type, Set<Class<?>> visited) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            warmUp(parameterizedType.getRawType(), visited);
+            for (Type arg : parameterizedType.getActualTypeArguments()) {
+                warmUp(arg, visited);
+            }
+        } else if (type instanceof GenericArrayType) {
+            warmUp(((GenericArrayType) type).getGenericComponentType(), visited);
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                warmUp(bound, visited);
+            }
+        } else if (type instanceof TypeVariable) {
+            for (Type bound : ((TypeVariable<?>) type).getBounds()) {
+                warmUp(bound, visited);
+            }
+        } else if (type instanceof Class) {
+            Class<?> clazz = (Class<?>) type;
+            while (clazz.isArray()) {
+                clazz = clazz.getComponentType();
+            }
+            if (!isSchemaNeeded(clazz) || !visited.add(clazz)) {
+                return;
+            }
+
+            getSchema(clazz);
+
+            // 字段的 schema 是在第一次读写到它时才构建的, 一并预热
+            for (Class<?> cls = clazz; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+                for (Field field : cls.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        warmUp(field.getGenericType(), visited);
+                    }
+                }
+            }
+        }
+    }
+
+    // 基本类型, 枚举, 接口/抽象类以及JDK内置的类型由protostuff内置的策略处理, 不需要 RuntimeSchema
+    private static boolean isSchemaNeeded(Class<?> clazz) {
+        if (clazz.isPrimitive() || clazz.isEnum() || clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+            return false;
+        }
+        String name = clazz.getName();
+        return !name.startsWith("java.") && !name.startsWith("javax.") && !name.startsWith("sun.");
+    }
+
     @SuppressWarnings("unchecked")
     private <T> Schema<T> getSchema(Class<T> clazz) {
         Schema<T> schema = (Schema<T>) schemaCache.get(clazz);
         if (schema == null) {
-            Schema<T> newSchema = RuntimeSchema.createFrom(clazz);
+            // 与嵌套字段共用 RuntimeSchema 内部(IdStrategy)的缓存, 预热一次对两者都生效
+            Schema<T> newSchema = RuntimeSchema.getSchema(clazz);
             schema = (Schema<T>) schemaCache.putIfAbsent(clazz, newSchema);
             if (schema == null) {
                 schema = newSchema;
@@ -99,4 +262,31 @@ public class ProtoStuffSerializer extends Serializer {
     public String toString() {
         return "proto_stuff:(code=" + code() + ")";
     }
+
+    static final class BufHolder {
+
+        LinkedBuffer buf;
+        int size;
+
+        BufHolder(int size) {
+            this.buf = LinkedBuffer.allocate(size);
+            this.size = size;
+        }
+
+        /**
+         * 返回头结点不小于 {@code guess} 的 LinkedBuffer, 线程缓存的头结点随估计值增大,
+         * 但不超过 {@link #MAX_CACHED_BUF_SIZE}, 超过的只在本次使用.
+         */
+        LinkedBuffer linkedBuffer(int guess) {
+            if (guess <= size) {
+                return buf;
+            }
+            if (guess > MAX_CACHED_BUF_SIZE) {
+                return LinkedBuffer.allocate(guess);
+            }
+            buf = LinkedBuffer.allocate(guess);
+            size = guess;
+            return buf;
+        }
+    }
 }
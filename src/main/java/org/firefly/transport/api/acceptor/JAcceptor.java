@@ -22,6 +22,11 @@ public interface JAcceptor extends Transporter {
      */
     int boundPort();
 
+    /**
+     * The unix domain socket path the server also listens on, {@code null} if none.
+     */
+    String domainSocketPath();
+
     /**
      * Acceptor options [parent, child].
      */
@@ -16,13 +16,17 @@ public class ParentConfig extends NettyConfig {
     private volatile int backlog = 1024;
     private volatile int rcvBuf = -1;
     private volatile boolean reuseAddress = true;
+    private volatile boolean reusePort = false;
+    private volatile String domainSocketPath;
 
     @Override
     public List<JOption<?>> getOptions() {
         return getOptions(super.getOptions(),
                 JOption.SO_BACKLOG,
                 JOption.SO_RCVBUF,
-                JOption.SO_REUSEADDR);
+                JOption.SO_REUSEADDR,
+                JOption.SO_REUSEPORT,
+                JOption.DOMAIN_SOCKET_PATH);
     }
 
     protected List<JOption<?>> getOptions(List<JOption<?>> result, JOption<?>... options) {
@@ -47,6 +51,12 @@ public class ParentConfig extends NettyConfig {
         if (option == JOption.SO_REUSEADDR) {
             return (T) Boolean.valueOf(isReuseAddress());
         }
+        if (option == JOption.SO_REUSEPORT) {
+            return (T) Boolean.valueOf(isReusePort());
+        }
+        if (option == JOption.DOMAIN_SOCKET_PATH) {
+            return (T) getDomainSocketPath();
+        }
 
         return super.getOption(option);
     }
@@ -56,11 +66,15 @@ public class ParentConfig extends NettyConfig {
         validate(option, value);
 
         if (option == JOption.SO_BACKLOG) {
-            setIoRatio((Integer) value);
+            setBacklog((Integer) value);
         } else if (option == JOption.SO_RCVBUF) {
             setRcvBuf((Integer) value);
         } else if (option == JOption.SO_REUSEADDR) {
             setReuseAddress((Boolean) value);
+        } else if (option == JOption.SO_REUSEPORT) {
+            setReusePort((Boolean) value);
+        } else if (option == JOption.DOMAIN_SOCKET_PATH) {
+            setDomainSocketPath((String) value);
         } else {
             return super.setOption(option, value);
         }
@@ -91,4 +105,20 @@ public class ParentConfig extends NettyConfig {
     public void setReuseAddress(boolean reuseAddress) {
         this.reuseAddress = reuseAddress;
     }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public String getDomainSocketPath() {
+        return domainSocketPath;
+    }
+
+    public void setDomainSocketPath(String domainSocketPath) {
+        this.domainSocketPath = domainSocketPath;
+    }
 }
@@ -18,4 +18,10 @@ public class IoSignals {
     public static final Signal READER_IDLE      = Signal.valueOf(IoSignals.class, "READER_IDLE");
     /** Protocol body 太大 */
     public static final Signal BODY_TOO_LARGE   = Signal.valueOf(IoSignals.class, "BODY_TOO_LARGE");
+    /** 压缩的 Protocol body 无法解压 */
+    public static final Signal ILLEGAL_COMPRESSED_BODY = Signal.valueOf(IoSignals.class, "ILLEGAL_COMPRESSED_BODY");
+    /** 同时进行中的分块传输太多 */
+    public static final Signal TOO_MANY_CHUNKED_STREAMS = Signal.valueOf(IoSignals.class, "TOO_MANY_CHUNKED_STREAMS");
+    /** 单个连接上缓存的分块传输消息体太多 */
+    public static final Signal TOO_MANY_CHUNKED_BYTES = Signal.valueOf(IoSignals.class, "TOO_MANY_CHUNKED_BYTES");
 }
@@ -6,4 +6,9 @@ import org.firefly.model.transport.channel.interfice.JChannel;
 public interface ConsumerProcessor {
 
     void handleResponse(JChannel channel, JResponseBytes response) throws Exception;
+
+    /**
+     * 连接断开, 该 {@code channel} 上进行中的调用不会再收到响应.
+     */
+    void handleInactive(JChannel channel) throws Exception;
 }
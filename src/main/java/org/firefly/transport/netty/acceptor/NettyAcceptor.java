@@ -95,6 +95,11 @@ public abstract class NettyAcceptor implements JAcceptor {
         return ((InetSocketAddress) localAddress).getPort();
     }
 
+    @Override
+    public String domainSocketPath() {
+        return null;
+    }
+
     @Override
     public void withProcessor(ProviderProcessor processor) {
         // the default implementation does nothing
@@ -138,6 +143,13 @@ public abstract class NettyAcceptor implements JAcceptor {
                 .childOption(ChannelOption.MESSAGE_SIZE_ESTIMATOR, JMessageSizeEstimator.DEFAULT);
     }
 
+    /**
+     * The number of boss threads.
+     */
+    protected int nBosses() {
+        return nBosses;
+    }
+
     /**
      * Which allows easy bootstrap of {@link io.netty.channel.ServerChannel}.
      */
@@ -5,10 +5,13 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
 import io.netty.channel.kqueue.KQueueEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import org.firefly.common.util.constant.JConstants;
+import org.firefly.model.transport.configuration.netty.JOption;
 import org.firefly.transport.api.Transporter;
 import org.firefly.transport.api.configuration.*;
 import org.firefly.transport.api.configuration.group.JConfigGroup;
@@ -17,8 +20,10 @@ import org.firefly.transport.netty.channelfactory.NativeSupport;
 import org.firefly.transport.netty.channelfactory.TcpChannelProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.Map;
 import java.util.concurrent.ThreadFactory;
 
 public abstract class NettyTcpAcceptor extends NettyAcceptor {
@@ -27,6 +32,8 @@ public abstract class NettyTcpAcceptor extends NettyAcceptor {
 
     private final boolean isNative; // use native transport
     private final NettyTcpConfigGroup configGroup = new NettyTcpConfigGroup();
+    private volatile boolean reusePortWarned;
+    private volatile String domainSocketPath; // 已经绑定的 unix domain socket 路径
 
     public NettyTcpAcceptor(int port) {
         super(Transporter.Protocol.TCP, new InetSocketAddress(port));
@@ -113,6 +120,9 @@ public abstract class NettyTcpAcceptor extends NettyAcceptor {
         if (parent.getRcvBuf() > 0) {
             boot.option(ChannelOption.SO_RCVBUF, parent.getRcvBuf());
         }
+        if (isReusePort()) {
+            boot.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
 
         // child options
         ChildConfig child = configGroup.child();
@@ -155,6 +165,16 @@ public abstract class NettyTcpAcceptor extends NettyAcceptor {
         // wait until the server socket is bind succeed.
         ChannelFuture future = bind(localAddress).sync();
 
+        if (isReusePort()) {
+            // 同一端口上再绑定 nBosses - 1 个server channel, bootstrap按round-robin把它们注册到不同的boss线程上,
+            // 由内核在这些socket之间分发新连接
+            for (int i = 1; i < nBosses(); i++) {
+                bootstrap().bind(localAddress).sync();
+            }
+        }
+
+        bindDomainSocket();
+
         if (logger.isInfoEnabled()) {
             logger.info("Jupiter TCP server start" + (sync ? ", and waits until the server socket closed." : ".")
                     + JConstants.NEWLINE + " {}.", toString());
@@ -167,6 +187,57 @@ public abstract class NettyTcpAcceptor extends NettyAcceptor {
         }
     }
 
+    @Override
+    public String domainSocketPath() {
+        return domainSocketPath;
+    }
+
+    /**
+     * 与TCP server channel共用boss/worker线程及childHandler, 在 {@link JOption#DOMAIN_SOCKET_PATH} 上再监听
+     * 一个 unix domain socket, 只在 native epoll 下生效.
+     */
+    protected void bindDomainSocket() throws InterruptedException {
+        String path = configGroup.parent().getDomainSocketPath();
+        if (path == null) {
+            return;
+        }
+        if (socketType() != TcpChannelProvider.SocketType.NATIVE_EPOLL) {
+            logger.warn("Unix domain socket is only supported by native epoll transport, ignored: {}.", path);
+            return;
+        }
+
+        File file = new File(path);
+        if (file.exists() && !file.delete()) { // 上次进程异常退出时遗留的socket文件
+            logger.warn("Could not delete stale unix domain socket file: {}.", path);
+        }
+
+        ServerBootstrap tcpBoot = bootstrap();
+        ServerBootstrap boot = new ServerBootstrap()
+                .group(boss(), worker())
+                .channelFactory(TcpChannelProvider.NATIVE_EPOLL_DOMAIN_ACCEPTOR)
+                .childHandler(tcpBoot.config().childHandler());
+        copyOptions(tcpBoot.config().options(), boot, false);
+        copyOptions(tcpBoot.config().childOptions(), boot, true);
+
+        boot.bind(new DomainSocketAddress(path)).sync();
+        domainSocketPath = path;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void copyOptions(Map<ChannelOption<?>, Object> options, ServerBootstrap boot, boolean child) {
+        for (Map.Entry<ChannelOption<?>, Object> entry : options.entrySet()) {
+            ChannelOption<Object> option = (ChannelOption<Object>) entry.getKey();
+            if (TcpChannelProvider.isUnsupportedByDomainSocket(option)) {
+                continue;
+            }
+            if (child) {
+                boot.childOption(option, entry.getValue());
+            } else {
+                boot.option(option, entry.getValue());
+            }
+        }
+    }
+
     @Override
     public void setIoRatio(int bossIoRatio, int workerIoRatio) {
         EventLoopGroup boss = boss();
@@ -220,6 +291,23 @@ public abstract class NettyTcpAcceptor extends NettyAcceptor {
         }
     }
 
+    /**
+     * SO_REUSEPORT 只在 Linux native epoll 下生效, 其他情况下退化为单个server channel.
+     */
+    protected boolean isReusePort() {
+        if (!configGroup.parent().isReusePort()) {
+            return false;
+        }
+        if (socketType() != TcpChannelProvider.SocketType.NATIVE_EPOLL) {
+            if (!reusePortWarned) {
+                reusePortWarned = true;
+                logger.warn("SO_REUSEPORT is only supported by native epoll transport, ignored.");
+            }
+            return false;
+        }
+        return true;
+    }
+
     private TcpChannelProvider.SocketType socketType() {
         if (isNative && NativeSupport.isNativeEPollAvailable()) {
             // netty provides the native socket transport for Linux using JNI.
@@ -236,6 +324,8 @@ public abstract class NettyTcpAcceptor extends NettyAcceptor {
     public String toString() {
         return "Socket address:[" + localAddress + ']'
                 + ", socket type: " + socketType()
+                + (isReusePort() ? ", reuse port with " + nBosses() + " server channels" : "")
+                + (domainSocketPath != null ? ", unix domain socket: " + domainSocketPath : "")
                 + JConstants.NEWLINE
                 + bootstrap();
     }
@@ -4,6 +4,9 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import org.firefly.common.util.constant.JConstants;
 import org.firefly.model.transport.configuration.netty.JOption;
@@ -106,6 +109,14 @@ public class ProviderServerNettyTcpAcceptor extends NettyTcpAcceptor {
         super(localAddress, nWorkers, isNative);
     }
 
+    public ProviderServerNettyTcpAcceptor(int port, int nBosses, int nWorkers, boolean isNative) {
+        super(port, nBosses, nWorkers, isNative);
+    }
+
+    public ProviderServerNettyTcpAcceptor(SocketAddress localAddress, int nBosses, int nWorkers, boolean isNative) {
+        super(localAddress, nBosses, nWorkers, isNative);
+    }
+
     @Override
     protected void doInit() {
         // parent options
@@ -128,7 +139,17 @@ public class ProviderServerNettyTcpAcceptor extends NettyTcpAcceptor {
 
             @Override
             protected void initChannel(Channel ch) throws Exception {
-                ch.pipeline().addLast(
+                ChannelPipeline pipeline = ch.pipeline();
+                if (JConstants.FLUSH_CONSOLIDATION) {
+                    // 合并业务线程写响应时触发的flush, 减少write系统调用, 不影响每个消息各自的promise
+                    pipeline.addLast(new FlushConsolidationHandler(
+                            JConstants.FLUSH_CONSOLIDATION_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+                }
+                if (JConstants.CHUNKED_TRANSFER) {
+                    // 大响应体分块写出, 必须在encoder之前
+                    pipeline.addLast(new ChunkedWriteHandler());
+                }
+                pipeline.addLast(
                         new IdleStateHandler(JConstants.READER_IDLE_TIME_SECONDS, 0, 0, TimeUnit.SECONDS),
                         idleStateTrigger,
                         new ProtocolDecoder(),
@@ -2,7 +2,11 @@ package org.firefly.transport.netty.channelfactory;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFactory;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.kqueue.KQueueServerSocketChannel;
@@ -14,10 +18,12 @@ public final class TcpChannelProvider<T extends Channel> implements ChannelFacto
 
     public static final ChannelFactory<ServerChannel> JAVA_NIO_ACCEPTOR = new TcpChannelProvider<>(SocketType.JAVA_NIO, ChannelType.ACCEPTOR);
     public static final ChannelFactory<ServerChannel> NATIVE_EPOLL_ACCEPTOR = new TcpChannelProvider<>(SocketType.NATIVE_EPOLL, ChannelType.ACCEPTOR);
+    public static final ChannelFactory<ServerChannel> NATIVE_EPOLL_DOMAIN_ACCEPTOR = new TcpChannelProvider<>(SocketType.NATIVE_EPOLL_DOMAIN, ChannelType.ACCEPTOR);
     public static final ChannelFactory<ServerChannel> NATIVE_KQUEUE_ACCEPTOR = new TcpChannelProvider<>(SocketType.NATIVE_KQUEUE, ChannelType.ACCEPTOR);
 
     public static final ChannelFactory<Channel> JAVA_NIO_CONNECTOR = new TcpChannelProvider<>(SocketType.JAVA_NIO, ChannelType.CONNECTOR);
     public static final ChannelFactory<Channel> NATIVE_EPOLL_CONNECTOR = new TcpChannelProvider<>(SocketType.NATIVE_EPOLL, ChannelType.CONNECTOR);
+    public static final ChannelFactory<Channel> NATIVE_EPOLL_DOMAIN_CONNECTOR = new TcpChannelProvider<>(SocketType.NATIVE_EPOLL_DOMAIN, ChannelType.CONNECTOR);
     public static final ChannelFactory<Channel> NATIVE_KQUEUE_CONNECTOR = new TcpChannelProvider<>(SocketType.NATIVE_KQUEUE, ChannelType.CONNECTOR);
 
     public TcpChannelProvider(SocketType socketType, ChannelType channelType) {
@@ -38,6 +44,8 @@ public final class TcpChannelProvider<T extends Channel> implements ChannelFacto
                         return (T) new NioServerSocketChannel();
                     case NATIVE_EPOLL:
                         return (T) new EpollServerSocketChannel();
+                    case NATIVE_EPOLL_DOMAIN:
+                        return (T) new EpollServerDomainSocketChannel();
                     case NATIVE_KQUEUE:
                         return (T) new KQueueServerSocketChannel();
                     default:
@@ -49,6 +57,8 @@ public final class TcpChannelProvider<T extends Channel> implements ChannelFacto
                         return (T) new NioSocketChannel();
                     case NATIVE_EPOLL:
                         return (T) new EpollSocketChannel();
+                    case NATIVE_EPOLL_DOMAIN:
+                        return (T) new EpollDomainSocketChannel();
                     case NATIVE_KQUEUE:
                         return (T) new KQueueSocketChannel();
                     default:
@@ -59,9 +69,23 @@ public final class TcpChannelProvider<T extends Channel> implements ChannelFacto
         }
     }
 
+    /**
+     * unix domain socket 不支持的选项(TCP专有), 把TCP bootstrap的选项复制给 domain socket 时需要去掉.
+     */
+    public static boolean isUnsupportedByDomainSocket(ChannelOption<?> option) {
+        return option == ChannelOption.SO_REUSEADDR
+                || option == ChannelOption.ALLOW_HALF_CLOSURE
+                || option == ChannelOption.SO_KEEPALIVE
+                || option == ChannelOption.TCP_NODELAY
+                || option == ChannelOption.SO_LINGER
+                || option == ChannelOption.IP_TOS
+                || option == EpollChannelOption.SO_REUSEPORT;
+    }
+
     public enum SocketType {
         JAVA_NIO,
         NATIVE_EPOLL,   // for linux
+        NATIVE_EPOLL_DOMAIN, // unix domain socket, for linux
         NATIVE_KQUEUE   // for bsd systems
     }
 
@@ -5,8 +5,12 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import org.firefly.common.util.constant.JConstants;
+import org.firefly.common.util.internal.Lists;
 import org.firefly.model.transport.channel.interfice.JChannelGroup;
 import org.firefly.model.transport.configuration.netty.JOption;
 import org.firefly.model.transport.metadata.UnresolvedAddress;
@@ -21,6 +25,7 @@ import org.firefly.transport.netty.handler.connector.ConnectorIdleStateTrigger;
 import org.firefly.transport.netty.handler.connector.consumer.ConsumerToProviderConnectorHandler;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import static org.firefly.common.util.Preconditions.checkNotNull;
 
@@ -118,8 +123,12 @@ public class ConsumerToProviderNettyConnector extends NettyTcpConnector {
     public JConnection connect(UnresolvedAddress address, boolean async) {
         setOptions();
 
-        final Bootstrap boot = bootstrap();
-        final SocketAddress socketAddress = InetSocketAddress.createUnresolved(address.getHost(), address.getPort());
+        // 同一台机器上的provider优先通过 unix domain socket 连接
+        final boolean domain = preferDomainSocket(address);
+        final Bootstrap boot = domain ? domainBootstrap() : bootstrap();
+        final SocketAddress socketAddress = domain
+                ? new DomainSocketAddress(address.getSocketPath())
+                : InetSocketAddress.createUnresolved(address.getHost(), address.getPort());
         final JChannelGroup group = group(address);
 
         // 重连watchdog
@@ -127,20 +136,28 @@ public class ConsumerToProviderNettyConnector extends NettyTcpConnector {
 
             @Override
             public ChannelHandler[] handlers() {
-                return new ChannelHandler[] {
-                        this,
-                        new IdleStateHandler(0, JConstants.WRITER_IDLE_TIME_SECONDS, 0, TimeUnit.SECONDS),
-                        idleStateTrigger,
-                        new ProtocolDecoder(),
-                        encoder,
-                        handler
-                };
+                List<ChannelHandler> handlers = Lists.newArrayListWithCapacity(8);
+                handlers.add(this);
+                if (JConstants.FLUSH_CONSOLIDATION) {
+                    // 合并业务线程写请求时触发的flush, 减少write系统调用, 不影响每个消息各自的promise
+                    handlers.add(new FlushConsolidationHandler(JConstants.FLUSH_CONSOLIDATION_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+                }
+                if (JConstants.CHUNKED_TRANSFER) {
+                    // 大请求体分块写出, 必须在encoder之前
+                    handlers.add(new ChunkedWriteHandler());
+                }
+                handlers.add(new IdleStateHandler(0, JConstants.WRITER_IDLE_TIME_SECONDS, 0, TimeUnit.SECONDS));
+                handlers.add(idleStateTrigger);
+                handlers.add(new ProtocolDecoder());
+                handlers.add(encoder);
+                handlers.add(handler);
+                return handlers.toArray(new ChannelHandler[handlers.size()]);
             }
         };
 
         ChannelFuture future;
         try {
-            synchronized (bootstrapLock()) {
+            synchronized (domain ? boot : bootstrapLock()) {
                 boot.handler(new ChannelInitializer<Channel>() {
                     @Override
                     protected void initChannel(Channel ch) throws Exception {
@@ -7,6 +7,7 @@ import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.kqueue.KQueueEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import org.firefly.common.util.NetUtil;
 import org.firefly.common.util.constant.JConstants;
 import org.firefly.model.transport.metadata.UnresolvedAddress;
 import org.firefly.transport.api.configuration.ChildConfig;
@@ -15,12 +16,15 @@ import org.firefly.transport.api.configuration.template.NettyConfig;
 import org.firefly.transport.api.connector.connection.JConnection;
 import org.firefly.transport.netty.channelfactory.NativeSupport;
 import org.firefly.transport.netty.channelfactory.TcpChannelProvider;
+import java.io.File;
+import java.util.Map;
 import java.util.concurrent.ThreadFactory;
 
 public abstract class NettyTcpConnector extends NettyConnector {
 
     private final boolean isNative; // use native transport
     private final ChildConfig childConfig = new ChildConfig();
+    private volatile Bootstrap domainBootstrap; // 连接 unix domain socket 使用, 按需创建
 
     public NettyTcpConnector() {
         super(Protocol.TCP);
@@ -87,6 +91,48 @@ public abstract class NettyTcpConnector extends NettyConnector {
         return connect(address, false);
     }
 
+    /**
+     * 对端注册了 unix domain socket 路径并且与本机是同一台机器时, 优先通过 domain socket 连接, 绕过TCP loopback.
+     */
+    protected boolean preferDomainSocket(UnresolvedAddress address) {
+        String path = address.getSocketPath();
+        return path != null
+                && JConstants.PREFER_DOMAIN_SOCKET
+                && socketType() == TcpChannelProvider.SocketType.NATIVE_EPOLL
+                && NetUtil.isLocalAddress(address.getHost())
+                && new File(path).exists();
+    }
+
+    /**
+     * 连接 unix domain socket 使用的 {@link Bootstrap}, 与TCP共用worker线程, 复制TCP bootstrap中对 domain socket 有效的选项.
+     */
+    protected Bootstrap domainBootstrap() {
+        Bootstrap boot = domainBootstrap;
+        if (boot == null) {
+            synchronized (bootstrapLock()) {
+                boot = domainBootstrap;
+                if (boot == null) {
+                    boot = new Bootstrap()
+                            .group(worker())
+                            .channelFactory(TcpChannelProvider.NATIVE_EPOLL_DOMAIN_CONNECTOR);
+                    copyOptions(bootstrap().config().options(), boot);
+                    domainBootstrap = boot;
+                }
+            }
+        }
+        return boot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void copyOptions(Map<ChannelOption<?>, Object> options, Bootstrap boot) {
+        for (Map.Entry<ChannelOption<?>, Object> entry : options.entrySet()) {
+            ChannelOption<Object> option = (ChannelOption<Object>) entry.getKey();
+            if (!TcpChannelProvider.isUnsupportedByDomainSocket(option)) {
+                boot.option(option, entry.getValue());
+            }
+        }
+    }
+
     @Override
     public JConfig config() {
         return childConfig;
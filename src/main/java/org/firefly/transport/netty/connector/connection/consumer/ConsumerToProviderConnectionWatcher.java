@@ -36,7 +36,7 @@ public class ConsumerToProviderConnectionWatcher implements JConnector.Connectio
         fClient.subscribe(directory, new NotifyListener() {
             @Override
             public void notify(RegisterMeta registerMeta, NotifyEvent event) {
-                UnresolvedAddress address = new UnresolvedAddress(registerMeta.getHost(), registerMeta.getPort());
+                UnresolvedAddress address = new UnresolvedAddress(registerMeta.getHost(), registerMeta.getPort(), registerMeta.getSocketPath());
                 final JChannelGroup group = fClient.getConnector().group(address);
                 if (event == NotifyEvent.CHILD_ADDED) {
                     if (!group.isAvailable()) {
@@ -39,6 +39,7 @@ public class ProviderAcceptorHandler extends ChannelInboundHandlerAdapter {
             try {
                 processor.handleRequest(jChannel, (JRequestBytes) msg);
             } catch (Throwable t) {
+                ((JRequestBytes) msg).nullBytes(); // 释放零拷贝模式下的 inputBuf
                 processor.handleException(jChannel, (JRequestBytes) msg, Status.SERVER_ERROR, t);
             }
         } else {
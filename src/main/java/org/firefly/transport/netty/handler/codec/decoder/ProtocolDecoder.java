@@ -2,16 +2,30 @@ package org.firefly.transport.netty.handler.codec.decoder;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ReplayingDecoder;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
 import org.firefly.common.util.exception.Signal;
 import org.firefly.common.util.SystemClock;
 import org.firefly.common.util.SystemPropertyUtil;
+import org.firefly.common.util.constant.JConstants;
+import org.firefly.model.rpc.BytesHolder;
 import org.firefly.model.rpc.request.JRequestBytes;
 import org.firefly.model.rpc.response.JResponseBytes;
+import org.firefly.model.transport.channel.NettyChannel;
 import org.firefly.model.transport.protocol.JProtocolHeader;
 import org.firefly.transport.api.exception.IoSignals;
+import org.firefly.transport.netty.handler.codec.encoder.ProtocolEncoder;
+import org.firefly.transport.netty.handler.connector.Heartbeats;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <pre>
@@ -31,12 +45,11 @@ import java.util.List;
  * + 1 // 状态位, 设置请求响应状态
  * + 8 // 消息 id, long 类型
  * + 4 // 消息体 body 长度, int 类型
+ *
+ * 同时可以识别v2协议(magic = (short) 0xbabf), 见 {@link JProtocolHeader}.
  * </pre>
  */
-public class ProtocolDecoder extends ReplayingDecoder<ProtocolDecoder.State> {
-
-    // 协议体最大限制, 默认5M
-    private static final int MAX_BODY_SIZE = SystemPropertyUtil.getInt("firefly.io.decoder.max.body.size", 1024 * 1024 * 5);
+public class ProtocolDecoder extends ByteToMessageDecoder {
 
     /**
      * Cumulate {@link ByteBuf}s by add them to a CompositeByteBuf and so do no memory copy whenever possible.
@@ -45,8 +58,15 @@ public class ProtocolDecoder extends ReplayingDecoder<ProtocolDecoder.State> {
      */
     private static final boolean USE_COMPOSITE_BUF = SystemPropertyUtil.getBoolean("firefly.io.decoder.composite.buf", false);
 
+    /**
+     * 零拷贝模式, 消息体不再拷贝到新分配的 byte[] 中, 而是以 cumulation buffer 的 retained slice 形式交给上层,
+     * 由业务线程直接反序列化后释放 (见 {@link org.firefly.model.rpc.BytesHolder#nullBytes()}).
+     *
+     * 注意: 开启后 slice 会一直持有 cumulation buffer 直到业务线程反序列化完成.
+     */
+    private static final boolean ZERO_COPY = SystemPropertyUtil.getBoolean("firefly.io.decoder.zero.copy", false);
+
     public ProtocolDecoder() {
-        super(State.HEADER_MAGIC);
         if (USE_COMPOSITE_BUF) {
             setCumulator(COMPOSITE_CUMULATOR);
         }
@@ -55,49 +75,121 @@ public class ProtocolDecoder extends ReplayingDecoder<ProtocolDecoder.State> {
     // 协议头
     private final JProtocolHeader header = new JProtocolHeader();
 
+    private State state = State.HEADER;
+
+    // 分块传输中尚未收到最后一块的消息体, invoke id 为key, 只在IO线程中访问
+    private final LongObjectMap<ChunkedBodyStream> chunkedStreams = new LongObjectHashMap<>();
+    // 已经收到但业务线程还没有读取的块占用的字节数
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    /**
+     * 不同于 {@link io.netty.handler.codec.ReplayingDecoder}, 数据不足时直接返回等待更多数据, 不会抛出异常后重放:
+     * 协议头只在16个字节全部到达后解析一次, 然后等待 bodyLength 个字节全部到达后再一次性读取消息体,
+     * 大消息体被拆成很多个TCP分段到达时不会被反复解析.
+     */
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        switch (state()) {
-            case HEADER_MAGIC:
-                checkMagic(in.readShort());         // MAGIC
-                checkpoint(State.HEADER_SIGN);
-            case HEADER_SIGN:
-                header.sign(in.readByte());         // 消息标志位
-                checkpoint(State.HEADER_STATUS);
-            case HEADER_STATUS:
-                header.status(in.readByte());       // 状态位
-                checkpoint(State.HEADER_ID);
-            case HEADER_ID:
-                header.id(in.readLong());           // 消息id
-                checkpoint(State.HEADER_BODY_LENGTH);
-            case HEADER_BODY_LENGTH:
-                header.bodyLength(in.readInt());    // 消息体长度
-                checkpoint(State.BODY);
+        switch (state) {
+            case HEADER:
+                if (in.readableBytes() < 2) {
+                    return;
+                }
+                short magic = in.getShort(in.readerIndex());
+                if (magic == JProtocolHeader.MAGIC) {
+                    if (in.readableBytes() < JProtocolHeader.HEAD_LENGTH) {
+                        return;
+                    }
+                    in.skipBytes(2);                        // MAGIC
+                    header.sign(in.readByte());             // 消息标志位
+                    header.status(in.readByte());           // 状态位
+                    header.id(in.readLong());               // 消息id
+                    header.bodyLength(in.readInt());        // 消息体长度
+                    header.flags((byte) 0);
+                    header.extLength(0);
+                } else if (magic == JProtocolHeader.MAGIC_V2) {
+                    if (in.readableBytes() < JProtocolHeader.V2_HEAD_LENGTH) {
+                        return;
+                    }
+                    in.skipBytes(2);                        // MAGIC
+                    header.messageCode(in.readByte());      // 消息类型
+                    header.serializerCode(in.readByte());   // 序列化类型
+                    header.status(in.readByte());           // 状态位
+                    header.flags(in.readByte());            // 标志位
+                    header.id(in.readLong());               // 消息id
+                    header.bodyLength(in.readInt());        // 消息体长度
+                    header.extLength(in.readUnsignedShort()); // 扩展区长度
+                } else {
+                    throw IoSignals.ILLEGAL_MAGIC;
+                }
+
+                byte messageCode = header.messageCode();
+                if (messageCode == JProtocolHeader.REQUEST || messageCode == JProtocolHeader.RESPONSE) {
+                    // 分块传输时检查的是每一块的长度, 整个消息体的长度由 MAX_CHUNKED_BODY_SIZE 限制
+                    // 协议头到达即检查, 不必等到消息体全部到达
+                    checkBodyLength(header.bodyLength());
+                }
+                state = State.BODY;
             case BODY:
+                int extLength = header.extLength();
+                int length = header.bodyLength();
                 switch (header.messageCode()) {
                     case JProtocolHeader.HEARTBEAT:
+                        if (in.readableBytes() < extLength + length) {
+                            return;
+                        }
+                        in.skipBytes(extLength + length);
+
+                        if (header.status() >= JProtocolHeader.PROTOCOL_VERSION_2) {
+                            negotiate(ctx);
+                        }
+
                         break;
+                    case JProtocolHeader.CHUNK_CREDIT: {
+                        if (length != 4) {
+                            throw IoSignals.ILLEGAL_SIGN;
+                        }
+                        if (in.readableBytes() < extLength + length) {
+                            return;
+                        }
+                        in.skipBytes(extLength);
+
+                        onChunkCredit(ctx, header.id(), in.readInt());
+
+                        break;
+                    }
                     case JProtocolHeader.REQUEST: {
-                        int length = checkBodyLength(header.bodyLength());
-                        byte[] bytes = new byte[length];
-                        in.readBytes(bytes);
+                        if (in.readableBytes() < extLength + length) {
+                            return;
+                        }
+
+                        if ((header.flags() & JProtocolHeader.FLAG_CHUNK) != 0) {
+                            readChunk(ctx, in, extLength, length, out);
+                            break;
+                        }
 
                         JRequestBytes request = new JRequestBytes(header.id());
                         request.timestamp(SystemClock.millisClock().now());
-                        request.bytes(header.serializerCode(), bytes);
+                        readExtensions(in, extLength, request);
+                        readBody(in, length, request);
 
                         out.add(request);
 
                         break;
                     }
                     case JProtocolHeader.RESPONSE: {
-                        int length = checkBodyLength(header.bodyLength());
-                        byte[] bytes = new byte[length];
-                        in.readBytes(bytes);
+                        if (in.readableBytes() < extLength + length) {
+                            return;
+                        }
+
+                        if ((header.flags() & JProtocolHeader.FLAG_CHUNK) != 0) {
+                            readChunk(ctx, in, extLength, length, out);
+                            break;
+                        }
 
                         JResponseBytes response = new JResponseBytes(header.id());
                         response.status(header.status());
-                        response.bytes(header.serializerCode(), bytes);
+                        readExtensions(in, extLength, response);
+                        readBody(in, length, response);
 
                         out.add(response);
 
@@ -106,29 +198,367 @@ public class ProtocolDecoder extends ReplayingDecoder<ProtocolDecoder.State> {
                     default:
                         throw IoSignals.ILLEGAL_SIGN;
                 }
-                checkpoint(State.HEADER_MAGIC);
+                state = State.HEADER;
         }
     }
 
-    private static void checkMagic(short magic) throws Signal {
-        if (magic != JProtocolHeader.MAGIC) {
-            throw IoSignals.ILLEGAL_MAGIC;
+    /**
+     * 读取一块分块传输的消息体: 收到第一块时就把消息体以 {@link ChunkedBodyStream} 的形式交给上层,
+     * 之后的块按 invoke id 追加到流中, 由业务线程边接收边反序列化.
+     *
+     * 每一块都是 cumulation buffer 的 retained slice, 不拷贝, 业务线程读完即释放. 第一块之后对端只能发送
+     * 已授予的credit以内的数据, 所以每个流缓存的数据不超过第一块加上 {@link JConstants#CHUNKED_STREAM_WINDOW};
+     * 单个连接上缓存的所有块不能超过 {@link JConstants#MAX_CHUNKED_PENDING_BYTES}, 否则是对端没有遵守流量控制.
+     */
+    private void readChunk(ChannelHandlerContext ctx, ByteBuf in, int extLength, int length, List<Object> out)
+            throws Signal {
+
+        long id = header.id();
+        boolean last = (header.flags() & JProtocolHeader.FLAG_LAST_CHUNK) != 0;
+        ChunkedBodyStream stream = chunkedStreams.get(id);
+        BytesHolder holder = null;
+        if (stream == null) {
+            if (chunkedStreams.size() >= JConstants.MAX_CHUNKED_STREAMS) {
+                throw IoSignals.TOO_MANY_CHUNKED_STREAMS;
+            }
+
+            if (header.messageCode() == JProtocolHeader.REQUEST) {
+                JRequestBytes request = new JRequestBytes(id);
+                request.timestamp(SystemClock.millisClock().now());
+                holder = request;
+            } else {
+                JResponseBytes response = new JResponseBytes(id);
+                response.status(header.status());
+                holder = response;
+            }
+            readExtensions(in, extLength, holder); // 扩展区只在第一块中出现
+            holder.flags((byte) (header.flags() & ~(JProtocolHeader.FLAG_CHUNK | JProtocolHeader.FLAG_LAST_CHUNK)));
+            stream = new ChunkedBodyStream(ctx, id);
+            holder.inputStream(header.serializerCode(), stream);
+        } else {
+            in.skipBytes(extLength);
+        }
+
+        if (!stream.offer(in, length, holder != null, last)) {
+            in.skipBytes(length); // 业务线程已放弃读取, 丢弃对端在收到取消之前发出的块
+        }
+
+        if (holder != null) {
+            if (!last) {
+                chunkedStreams.put(id, stream);
+                // 第一块不占用credit, 对端收到窗口之后才继续发送
+                stream.grant(JConstants.CHUNKED_STREAM_WINDOW);
+            }
+            out.add(holder);
+        } else if (last) {
+            chunkedStreams.remove(id);
+        }
+    }
+
+    /**
+     * 对端授予了本端正在写出的分块消息体 {@code credit} 个字节, 恢复 {@link ChunkedWriteHandler} 的写出.
+     */
+    private static void onChunkCredit(ChannelHandlerContext ctx, long id, int credit) {
+        ProtocolEncoder.ChunkedBody body = NettyChannel.attachChannel(ctx.channel()).chunkedBody(id);
+        if (body == null) {
+            return; // 已经写完
+        }
+        body.credit(credit);
+
+        ChunkedWriteHandler handler = ctx.pipeline().get(ChunkedWriteHandler.class);
+        if (handler != null) {
+            handler.resumeTransfer();
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        // 连接断开时唤醒还在等待后续块的业务线程
+        for (ChunkedBodyStream stream : chunkedStreams.values()) {
+            stream.abort();
+        }
+        chunkedStreams.clear();
+    }
+
+    private void readExtensions(ByteBuf in, int extLength, BytesHolder holder) throws Signal {
+        holder.flags(header.flags());
+
+        int end = in.readerIndex() + extLength;
+        while (in.readerIndex() < end) {
+            byte type = in.readByte();
+            int valueLength = in.readUnsignedShort();
+            if (in.readerIndex() + valueLength > end) {
+                throw IoSignals.ILLEGAL_SIGN;
+            }
+            byte[] value = new byte[valueLength];
+            in.readBytes(value);
+            holder.extension(type, value);
+        }
+    }
+
+    // 压缩过的消息体(FLAG_COMPRESSED)原样交给上层, 由业务线程在反序列化之前解压
+    private void readBody(ByteBuf in, int length, BytesHolder holder) {
+        if (ZERO_COPY) {
+            holder.inputBuf(header.serializerCode(), in.readRetainedSlice(length));
+        } else {
+            byte[] bytes = new byte[length];
+            in.readBytes(bytes);
+            holder.bytes(header.serializerCode(), bytes);
+        }
+    }
+
+    /**
+     * 协议版本协商, consumer发起(id = NEGOTIATE_REQUEST_ID), provider确认(id = NEGOTIATE_ACK_ID).
+     */
+    private void negotiate(ChannelHandlerContext ctx) {
+        if (!JConstants.PROTOCOL_V2) {
+            return; // 本端不开启v2, 不回复, 对端会一直使用v1
+        }
+
+        NettyChannel channel = NettyChannel.attachChannel(ctx.channel());
+        channel.protocolVersion(JProtocolHeader.PROTOCOL_VERSION_2);
+
+        if (header.id() == JProtocolHeader.NEGOTIATE_REQUEST_ID) {
+            ctx.writeAndFlush(Heartbeats.negotiateAckContent());
         }
     }
 
     private static int checkBodyLength(int size) throws Signal {
-        if (size > MAX_BODY_SIZE) {
+        if (size > JConstants.MAX_BODY_SIZE) {
             throw IoSignals.BODY_TOO_LARGE;
         }
         return size;
     }
 
+    /**
+     * 分块传输的消息体, IO线程追加收到的块, 业务线程以 {@link InputStream} 的方式读取, 没有数据时阻塞等待.
+     *
+     * 每读完一块即释放, 累计读完半个窗口就向对端补充同样多的credit; 没有读完就关闭时通知对端放弃该流,
+     * 之后收到的块直接丢弃.
+     */
+    final class ChunkedBodyStream extends InputStream {
+
+        private final ChannelHandlerContext ctx;
+        private final long id;
+        // 以下由 this 保护
+        private final ArrayDeque<ByteBuf> chunks = new ArrayDeque<>();
+        private long window;        // 已授予对端但还没有收到的字节数
+        private boolean last;       // 已收到最后一块
+        private boolean closed;     // 业务线程已关闭
+        private boolean aborted;    // 连接已断开
+        // 只在IO线程中访问
+        private long received;
+        // 以下只在业务线程中访问
+        private ByteBuf current;
+        private int currentLength;
+        private int consumed;       // 已读完但还没有补充credit的字节数
+
+        ChunkedBodyStream(ChannelHandlerContext ctx, long id) {
+            this.ctx = ctx;
+            this.id = id;
+        }
+
+        /**
+         * IO线程追加一块, 流已被业务线程关闭时返回 false, 由调用方丢弃这一块.
+         */
+        boolean offer(ByteBuf in, int length, boolean first, boolean last) throws Signal {
+            synchronized (this) {
+                if (closed) {
+                    if (last) {
+                        this.last = true;
+                    }
+                    return false;
+                }
+                if (!first && length > window) {
+                    throw IoSignals.TOO_MANY_CHUNKED_BYTES; // 超出了授予的credit
+                }
+                if (received + length > JConstants.MAX_CHUNKED_BODY_SIZE) {
+                    throw IoSignals.BODY_TOO_LARGE;
+                }
+                if (pendingBytes.get() + length > JConstants.MAX_CHUNKED_PENDING_BYTES) {
+                    throw IoSignals.TOO_MANY_CHUNKED_BYTES;
+                }
+
+                if (!first) {
+                    window -= length;
+                }
+                received += length;
+                if (length > 0) {
+                    pendingBytes.addAndGet(length);
+                    chunks.add(in.readRetainedSlice(length));
+                }
+                if (last) {
+                    this.last = true;
+                }
+                notifyAll();
+                return true;
+            }
+        }
+
+        /**
+         * 向对端补充 {@code credit} 个字节的窗口.
+         */
+        void grant(int credit) {
+            synchronized (this) {
+                if (last || closed || aborted) {
+                    return;
+                }
+                window += credit;
+            }
+            writeCredit(credit);
+        }
+
+        void abort() {
+            synchronized (this) {
+                aborted = true;
+                releaseChunks();
+                notifyAll();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuf buf = current();
+            if (buf == null) {
+                return -1;
+            }
+            int b = buf.readByte() & 0xff;
+            if (!buf.isReadable()) {
+                consumed();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuf buf = current();
+            if (buf == null) {
+                return -1;
+            }
+            len = Math.min(len, buf.readableBytes());
+            buf.readBytes(b, off, len);
+            if (!buf.isReadable()) {
+                consumed();
+            }
+            return len;
+        }
+
+        @Override
+        public int available() {
+            ByteBuf buf = current;
+            if (buf != null) {
+                return buf.readableBytes();
+            }
+            synchronized (this) {
+                buf = closed ? null : chunks.peek();
+                return buf == null ? 0 : buf.readableBytes();
+            }
+        }
+
+        @Override
+        public void close() {
+            boolean cancel;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                cancel = !last && !aborted;
+                releaseChunks();
+            }
+            ByteBuf buf = current;
+            if (buf != null) {
+                current = null;
+                buf.release();
+                pendingBytes.addAndGet(-currentLength);
+            }
+
+            if (cancel) {
+                writeCredit(-1);
+            }
+        }
+
+        // 当前正在读的块, 没有数据时等待IO线程追加, 流结束时返回 null
+        private ByteBuf current() throws IOException {
+            ByteBuf buf = current;
+            if (buf != null) {
+                return buf;
+            }
+
+            synchronized (this) {
+                long deadline = 0;
+                for (;;) {
+                    if (closed) {
+                        throw new IOException("chunked body closed: " + id);
+                    }
+                    buf = chunks.poll();
+                    if (buf != null) {
+                        break;
+                    }
+                    if (last) {
+                        return null;
+                    }
+                    if (aborted) {
+                        throw new IOException("connection closed before the last chunk: " + id);
+                    }
+
+                    long now = System.nanoTime();
+                    if (deadline == 0) {
+                        deadline = now + TimeUnit.MILLISECONDS.toNanos(JConstants.CHUNKED_READ_TIMEOUT);
+                    } else if (now - deadline >= 0) {
+                        throw new IOException("timeout waiting for the next chunk: " + id);
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, deadline - now);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+            current = buf;
+            currentLength = buf.readableBytes();
+            return buf;
+        }
+
+        // 当前块已读完, 释放并按需补充credit
+        private void consumed() {
+            ByteBuf buf = current;
+            current = null;
+            buf.release();
+            pendingBytes.addAndGet(-currentLength);
+
+            consumed += currentLength;
+            if (consumed >= JConstants.CHUNKED_STREAM_WINDOW / 2) {
+                int credit = consumed;
+                consumed = 0;
+                grant(credit);
+            }
+        }
+
+        // 调用方持有 this 的锁
+        private void releaseChunks() {
+            long released = 0;
+            for (ByteBuf buf; (buf = chunks.poll()) != null; ) {
+                released += buf.readableBytes();
+                buf.release();
+            }
+            pendingBytes.addAndGet(-released);
+        }
+
+        private void writeCredit(int credit) {
+            // 从 ChunkedWriteHandler 的位置写出, 不排在本端等待credit的分块消息体后面
+            ChannelHandlerContext chunkedCtx = ctx.pipeline().context(ChunkedWriteHandler.class);
+            ChannelHandlerContext out = chunkedCtx == null ? ctx : chunkedCtx;
+            out.writeAndFlush(ProtocolEncoder.encodeChunkCredit(ctx.alloc(), id, credit));
+        }
+    }
+
     enum State {
-        HEADER_MAGIC,
-        HEADER_SIGN,
-        HEADER_STATUS,
-        HEADER_ID,
-        HEADER_BODY_LENGTH,
+        HEADER,
         BODY
     }
 }
@@ -2,7 +2,7 @@ package org.firefly.transport.netty.handler.codec.decoder.client;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ReplayingDecoder;
+import io.netty.handler.codec.ByteToMessageDecoder;
 import org.firefly.common.util.exception.Signal;
 import org.firefly.model.registry.PublishSubscriptionMessage;
 import org.firefly.model.transport.ack.Acknowledge;
@@ -33,33 +33,26 @@ import java.util.List;
  * + 4 // 消息体 body 长度, int 类型
  * </pre>
  */
-public class ClientPublishSubscriptionMessageDecoder extends ReplayingDecoder<ClientPublishSubscriptionMessageDecoder.State> {
-
-    public ClientPublishSubscriptionMessageDecoder() {
-        super(State.HEADER_MAGIC);
-    }
+public class ClientPublishSubscriptionMessageDecoder extends ByteToMessageDecoder {
 
     // 协议头
     private final JProtocolHeader header = new JProtocolHeader();
 
+    private State state = State.HEADER;
+
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        switch (state()) {
-            case HEADER_MAGIC:
+        switch (state) {
+            case HEADER:
+                if (in.readableBytes() < JProtocolHeader.HEAD_LENGTH) {
+                    return;
+                }
                 checkMagic(in.readShort());             // MAGIC
-                checkpoint(State.HEADER_SIGN);
-            case HEADER_SIGN:
                 header.sign(in.readByte());             // 消息标志位
-                checkpoint(State.HEADER_STATUS);
-            case HEADER_STATUS:
                 in.readByte();                          // no-op
-                checkpoint(State.HEADER_ID);
-            case HEADER_ID:
                 header.id(in.readLong());               // 消息id
-                checkpoint(State.HEADER_BODY_LENGTH);
-            case HEADER_BODY_LENGTH:
                 header.bodyLength(in.readInt());        // 消息体长度
-                checkpoint(State.BODY);
+                state = State.BODY;
             case BODY:
                 byte s_code = header.serializerCode();
 
@@ -67,7 +60,11 @@ public class ClientPublishSubscriptionMessageDecoder extends ReplayingDecoder<Cl
                     case JProtocolHeader.PUBLISH_SERVICE:
                     case JProtocolHeader.PUBLISH_CANCEL_SERVICE:
                     case JProtocolHeader.OFFLINE_NOTICE: {
-                        byte[] bytes = new byte[header.bodyLength()];
+                        int length = header.bodyLength();
+                        if (in.readableBytes() < length) {
+                            return;
+                        }
+                        byte[] bytes = new byte[length];
                         in.readBytes(bytes);
 
                         Serializer serializer = SerializerFactory.getSerializer(s_code);
@@ -85,7 +82,7 @@ public class ClientPublishSubscriptionMessageDecoder extends ReplayingDecoder<Cl
                         throw IoSignals.ILLEGAL_SIGN;
 
                 }
-                checkpoint(State.HEADER_MAGIC);
+                state = State.HEADER;
         }
     }
 
@@ -96,11 +93,7 @@ public class ClientPublishSubscriptionMessageDecoder extends ReplayingDecoder<Cl
     }
 
     enum State {
-        HEADER_MAGIC,
-        HEADER_SIGN,
-        HEADER_STATUS,
-        HEADER_ID,
-        HEADER_BODY_LENGTH,
+        HEADER,
         BODY
     }
 }
@@ -1,14 +1,22 @@
 package org.firefly.transport.netty.handler.codec.encoder;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.stream.ChunkedInput;
 import org.firefly.common.util.Reflects;
+import org.firefly.common.util.collection.ByteObjectMap;
+import org.firefly.common.util.constant.JConstants;
 import org.firefly.model.rpc.BytesHolder;
 import org.firefly.model.rpc.request.JRequestBytes;
 import org.firefly.model.rpc.response.JResponseBytes;
+import org.firefly.model.transport.channel.NettyChannel;
 import org.firefly.model.transport.protocol.JProtocolHeader;
+import org.firefly.transport.api.exception.IoSignals;
 
 /**
  * <pre>
@@ -28,50 +36,307 @@ import org.firefly.model.transport.protocol.JProtocolHeader;
  * + 1 // 状态位, 设置请求响应状态
  * + 8 // 消息 id, long 类型, 未来jupiter可能将id限制在48位, 留出高地址的16位作为扩展字段
  * + 4 // 消息体 body 长度, int 类型
+ *
+ * 与对端协商为v2后按v2格式编码, 见 {@link JProtocolHeader}.
+ * encoder只负责组帧: 序列化及压缩都已在业务线程中完成, 这里不改变消息体, 也不修改 {@link BytesHolder} 的状态.
+ * 开启分块传输({@link JConstants#CHUNKED_TRANSFER})时, pipeline中必须在encoder之前(靠近head)
+ * 添加 {@link io.netty.handler.stream.ChunkedWriteHandler}.
  * </pre>
  */
 
 @ChannelHandler.Sharable
 public class ProtocolEncoder extends MessageToByteEncoder<BytesHolder> {
 
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof BytesHolder) {
+            BytesHolder holder = (BytesHolder) msg;
+            if (needChunk(ctx, holder)) {
+                NettyChannel channel = NettyChannel.attachChannel(ctx.channel());
+                int size = holder.size();
+                if (channel.addPendingChunkedBytes(size) > JConstants.MAX_CHUNKED_PENDING_BYTES) {
+                    // 对端消费太慢, 不再继续堆积
+                    channel.addPendingChunkedBytes(-size);
+                    holder.nullBytes();
+                    promise.setFailure(IoSignals.TOO_MANY_CHUNKED_BYTES);
+                    return;
+                }
+
+                // 交给 ChunkedWriteHandler 在链路可写时逐块写出, 每一块都是消息体的 slice, 不拷贝
+                ByteBuf body = holder.detachOutputBuf();
+                if (body == null) {
+                    body = Unpooled.wrappedBuffer(holder.bytes());
+                }
+                ChunkedBody chunked = new ChunkedBody(channel, holder, body, JConstants.CHUNK_SIZE);
+                channel.chunkedBody(chunked.id, chunked); // 接收端的 CHUNK_CREDIT 按 invoke id 找到对应的流
+                ctx.write(chunked, promise);
+                return;
+            }
+
+            // 消息体已经在业务线程中被直接序列化进 outputBuf (预留了协议头空间), 回填协议头后直接写出, 不再拷贝
+            ByteBuf out = holder.detachOutputBuf();
+            if (out != null) {
+                try {
+                    out = doEncodeHeader(ctx, holder, out);
+                } catch (Throwable t) {
+                    out.release();
+                    throw t;
+                }
+                ctx.write(out, promise);
+                return;
+            }
+        }
+        super.write(ctx, msg, promise);
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, BytesHolder msg, ByteBuf out) throws Exception {
+        byte[] bytes = msg.bytes();
+
+        doWriteHeader(msg, isV2(ctx), bytes.length, out);
+        out.writeBytes(bytes);
+    }
+
+    /**
+     * 在 {@code body} 的预留空间中回填协议头, 预留空间不足(v2扩展区过大)时使用 CompositeByteBuf 拼接协议头.
+     */
+    private ByteBuf doEncodeHeader(ChannelHandlerContext ctx, BytesHolder msg, ByteBuf body) {
+        boolean v2 = isV2(ctx);
+        int bodyLength = body.readableBytes();
+        int headLength = v2 ? JProtocolHeader.V2_HEAD_LENGTH + extLength(msg) : JProtocolHeader.HEAD_LENGTH;
+
+        int headerIndex = body.readerIndex() - headLength;
+        if (headerIndex >= 0) {
+            int writerIndex = body.writerIndex();
+            body.setIndex(headerIndex, headerIndex);
+            doWriteHeader(msg, v2, bodyLength, body);
+            body.writerIndex(writerIndex);
+            return body;
+        }
+
+        ByteBuf header = ctx.alloc().ioBuffer(headLength);
+        doWriteHeader(msg, v2, bodyLength, header);
+        return ctx.alloc().compositeBuffer(2).addComponents(true, header, body);
+    }
+
+    private static void doWriteHeader(BytesHolder msg, boolean v2, int bodyLength, ByteBuf out) {
+        doWriteHeader(msg, v2, msg.flags(), true, bodyLength, out);
+    }
+
+    private static void doWriteHeader(
+            BytesHolder msg, boolean v2, byte flags, boolean withExtensions, int bodyLength, ByteBuf out) {
+
+        byte messageCode;
+        byte status;
+        long invokeId;
         if (msg instanceof JRequestBytes) {
-            doEncodeRequest((JRequestBytes) msg, out);
+            // request.serializerCode() = (byte) 0x01, JProtocolHeader.REQUEST = 0x01
+            messageCode = JProtocolHeader.REQUEST;
+            status = 0x00;
+            invokeId = ((JRequestBytes) msg).invokeId();
         } else if (msg instanceof JResponseBytes) {
-            doEncodeResponse((JResponseBytes) msg, out);
+            messageCode = JProtocolHeader.RESPONSE;
+            status = ((JResponseBytes) msg).status();
+            invokeId = ((JResponseBytes) msg).id();
         } else {
             throw new IllegalArgumentException(Reflects.simpleClassName(msg));
         }
+
+        byte s_code = msg.serializerCode();
+        if (v2) {
+            out.writeShort(JProtocolHeader.MAGIC_V2)
+                    .writeByte(messageCode)
+                    .writeByte(s_code)
+                    .writeByte(status)
+                    .writeByte(flags)
+                    .writeLong(invokeId)
+                    .writeInt(bodyLength)
+                    .writeShort(withExtensions ? extLength(msg) : 0);
+            if (withExtensions) {
+                doWriteExtensions(msg, out);
+            }
+        } else {
+            if ((s_code & 0xf0) != 0 || flags != 0 || msg.hasExtensions()) {
+                throw new IllegalArgumentException("protocol v1 does not support: " + msg + ", need protocol v2");
+            }
+
+            out.writeShort(JProtocolHeader.MAGIC)
+                    .writeByte(JProtocolHeader.toSign(s_code, messageCode))
+                    .writeByte(status)
+                    .writeLong(invokeId)
+                    .writeInt(bodyLength);
+        }
     }
 
-    private void doEncodeRequest(JRequestBytes request, ByteBuf out) {
-        // request.serializerCode() = (byte) 0x01, JProtocolHeader.REQUEST = 0x01
-        byte sign = JProtocolHeader.toSign(request.serializerCode(), JProtocolHeader.REQUEST);
-        long invokeId = request.invokeId();
-        byte[] bytes = request.bytes();
-        int length = bytes.length;
-
-        out.writeShort(JProtocolHeader.MAGIC)
-                .writeByte(sign)
-                .writeByte(0x00)
-                .writeLong(invokeId)
-                .writeInt(length)
-                .writeBytes(bytes);
+    private static void doWriteExtensions(BytesHolder msg, ByteBuf out) {
+        if (!msg.hasExtensions()) {
+            return;
+        }
+        for (ByteObjectMap.PrimitiveEntry<byte[]> ext : msg.extensions().entries()) {
+            byte[] value = ext.value();
+            out.writeByte(ext.key())
+                    .writeShort(value.length)
+                    .writeBytes(value);
+        }
     }
 
-    private void doEncodeResponse(JResponseBytes response, ByteBuf out) {
-        byte sign = JProtocolHeader.toSign(response.serializerCode(), JProtocolHeader.RESPONSE);
-        byte status = response.status();
-        long invokeId = response.id();
-        byte[] bytes = response.bytes();
-        int length = bytes.length;
-
-        out.writeShort(JProtocolHeader.MAGIC)
-                .writeByte(sign)
-                .writeByte(status)
-                .writeLong(invokeId)
-                .writeInt(length)
-                .writeBytes(bytes);
+    private static int extLength(BytesHolder msg) {
+        if (!msg.hasExtensions()) {
+            return 0;
+        }
+        int length = 0;
+        for (ByteObjectMap.PrimitiveEntry<byte[]> ext : msg.extensions().entries()) {
+            length += 3 + ext.value().length; // type(1) + length(2) + value
+        }
+        if (length > 0xffff) {
+            throw new IllegalArgumentException("extensions too large: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * 分块传输的流量控制帧: 接收端向发送端授予 {@code credit} 个字节, {@code credit} < 0 表示放弃读取.
+     */
+    public static ByteBuf encodeChunkCredit(ByteBufAllocator allocator, long id, int credit) {
+        return allocator.ioBuffer(JProtocolHeader.V2_HEAD_LENGTH + 4)
+                .writeShort(JProtocolHeader.MAGIC_V2)
+                .writeByte(JProtocolHeader.CHUNK_CREDIT)
+                .writeByte(0)
+                .writeByte(0)
+                .writeByte(0)
+                .writeLong(id)
+                .writeInt(4)
+                .writeShort(0)
+                .writeInt(credit);
+    }
+
+    private static boolean needChunk(ChannelHandlerContext ctx, BytesHolder msg) {
+        return JConstants.CHUNKED_TRANSFER && msg.size() > JConstants.CHUNK_SIZE && isV2(ctx);
+    }
+
+    private static boolean isV2(ChannelHandlerContext ctx) {
+        return NettyChannel.attachChannel(ctx.channel()).protocolVersion() >= JProtocolHeader.PROTOCOL_VERSION_2;
+    }
+
+    /**
+     * 分块传输的消息体, 由 {@link io.netty.handler.stream.ChunkedWriteHandler} 驱动, 只在链路可写时才生成下一块,
+     * 避免一次性把整个大消息体压进 ChannelOutboundBuffer.
+     *
+     * 每一块 = v2协议头(FLAG_CHUNK, 最后一块另加 FLAG_LAST_CHUNK, 扩展区只在第一块) + 消息体的 retained slice.
+     * 第一块之后只发送接收端授予的credit以内的字节, credit用完时 {@link #readChunk(ByteBufAllocator)} 返回 null,
+     * ChunkedWriteHandler 暂停, 收到 CHUNK_CREDIT 后由decoder调用 {@link #credit(int)} 并恢复写出.
+     * 暂停期间同一个连接上排在后面的消息也要等待, 接收端的业务线程读取越快, 等待越短.
+     * 注意整个消息体在写出之前已经完整地在内存中, 写完(或连接断开)后从连接的 pendingChunkedBytes 中扣除.
+     */
+    public static final class ChunkedBody implements ChunkedInput<ByteBuf> {
+
+        private final NettyChannel channel;
+        private final BytesHolder msg;
+        private final long id;
+        private final ByteBuf body;
+        private final int chunkSize;
+        private final long length;
+        // 以下只在IO线程中访问
+        private long credit;
+        private boolean cancelled;
+        private boolean ended;
+        private boolean closed;
+
+        ChunkedBody(NettyChannel channel, BytesHolder msg, ByteBuf body, int chunkSize) {
+            this.channel = channel;
+            this.msg = msg;
+            this.id = msg instanceof JRequestBytes ? ((JRequestBytes) msg).invokeId() : ((JResponseBytes) msg).id();
+            this.body = body;
+            this.chunkSize = chunkSize;
+            this.length = body.readableBytes();
+        }
+
+        /**
+         * 收到接收端的 CHUNK_CREDIT, 只能在IO线程中调用.
+         */
+        public void credit(int credit) {
+            if (credit < 0) {
+                cancelled = true;
+            } else {
+                this.credit += credit;
+            }
+        }
+
+        @Override
+        public boolean isEndOfInput() throws Exception {
+            return ended || !body.isReadable();
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (channel.chunkedBody(id) == this) {
+                channel.chunkedBody(id, null);
+            }
+            channel.addPendingChunkedBytes(-length);
+            body.release();
+        }
+
+        @Deprecated
+        @Override
+        public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+            return readChunk(ctx.alloc());
+        }
+
+        @Override
+        public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+            if (isEndOfInput()) {
+                return null;
+            }
+
+            boolean first = progress() == 0;
+            int chunkLength;
+            boolean last;
+            if (cancelled) {
+                // 接收端已放弃读取, 以一个空的最后一块结束该流
+                chunkLength = 0;
+                last = ended = true;
+            } else {
+                chunkLength = Math.min(chunkSize, body.readableBytes());
+                if (!first) {
+                    if (credit <= 0) {
+                        return null; // 等待接收端补充credit
+                    }
+                    chunkLength = (int) Math.min(chunkLength, credit);
+                    credit -= chunkLength;
+                }
+                last = chunkLength == body.readableBytes();
+            }
+
+            byte flags = (byte) (msg.flags() | JProtocolHeader.FLAG_CHUNK);
+            if (last) {
+                flags |= JProtocolHeader.FLAG_LAST_CHUNK;
+            }
+
+            ByteBuf header = allocator.ioBuffer(JProtocolHeader.V2_HEAD_LENGTH + (first ? extLength(msg) : 0));
+            try {
+                doWriteHeader(msg, true, flags, first, chunkLength, header);
+            } catch (Throwable t) {
+                header.release();
+                throw t;
+            }
+            if (chunkLength == 0) {
+                return header;
+            }
+            return allocator.compositeBuffer(2).addComponents(true, header, body.readRetainedSlice(chunkLength));
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public long progress() {
+            return length - body.readableBytes();
+        }
     }
 }
@@ -7,18 +7,12 @@ import org.firefly.model.transport.protocol.JProtocolHeader;
 
 public class Heartbeats {
 
-    private static final ByteBuf HEARTBEAT_BUF;
-
-    static {
-        // 分配堆缓冲区
-        ByteBuf buf = Unpooled.buffer(JProtocolHeader.HEAD_LENGTH);
-        buf.writeShort(JProtocolHeader.MAGIC);
-        buf.writeByte(JProtocolHeader.HEARTBEAT); // 心跳包这里可忽略高地址的4位序列化/反序列化标志
-        buf.writeByte(0);
-        buf.writeLong(0);
-        buf.writeInt(0);
-        HEARTBEAT_BUF = Unpooled.unreleasableBuffer(buf).asReadOnly();
-    }
+    private static final ByteBuf HEARTBEAT_BUF = newHeartbeat((byte) 0, 0);
+    // 协议版本协商, 状态位为协议版本号, 总是使用v1格式发送以兼容老版本的对端
+    private static final ByteBuf NEGOTIATE_BUF =
+            newHeartbeat(JProtocolHeader.PROTOCOL_VERSION_2, JProtocolHeader.NEGOTIATE_REQUEST_ID);
+    private static final ByteBuf NEGOTIATE_ACK_BUF =
+            newHeartbeat(JProtocolHeader.PROTOCOL_VERSION_2, JProtocolHeader.NEGOTIATE_ACK_ID);
 
     /**
      * Returns the shared heartbeat content.
@@ -26,4 +20,29 @@ public class Heartbeats {
     public static ByteBuf heartbeatContent() {
         return HEARTBEAT_BUF.duplicate();
     }
+
+    /**
+     * Returns the shared protocol version negotiation content.
+     */
+    public static ByteBuf negotiateContent() {
+        return NEGOTIATE_BUF.duplicate();
+    }
+
+    /**
+     * Returns the shared protocol version negotiation ack content.
+     */
+    public static ByteBuf negotiateAckContent() {
+        return NEGOTIATE_ACK_BUF.duplicate();
+    }
+
+    private static ByteBuf newHeartbeat(byte status, long id) {
+        // 分配堆缓冲区
+        ByteBuf buf = Unpooled.buffer(JProtocolHeader.HEAD_LENGTH);
+        buf.writeShort(JProtocolHeader.MAGIC);
+        buf.writeByte(JProtocolHeader.HEARTBEAT); // 心跳包这里可忽略高地址的4位序列化/反序列化标志
+        buf.writeByte(status);
+        buf.writeLong(id);
+        buf.writeInt(0);
+        return Unpooled.unreleasableBuffer(buf).asReadOnly();
+    }
 }
@@ -4,10 +4,12 @@ import io.netty.channel.*;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.firefly.common.util.constant.JConstants;
 import org.firefly.common.util.exception.Signal;
 import org.firefly.model.rpc.response.JResponseBytes;
 import org.firefly.model.transport.channel.NettyChannel;
 import org.firefly.transport.api.processor.ConsumerProcessor;
+import org.firefly.transport.netty.handler.connector.Heartbeats;
 import java.io.IOException;
 import static org.firefly.common.util.exception.StackTraceUtil.stackTrace;
 
@@ -26,6 +28,7 @@ public class ConsumerToProviderConnectorHandler extends ChannelInboundHandlerAda
             try {
                 processor.handleResponse(NettyChannel.attachChannel(ch), (JResponseBytes) msg);
             } catch (Throwable t) {
+                ((JResponseBytes) msg).nullBytes(); // 释放零拷贝模式下的 inputBuf
                 logger.error("An exception was caught: {}, on {} #channelRead().", stackTrace(t), ch);
             }
         } else {
@@ -37,6 +40,30 @@ public class ConsumerToProviderConnectorHandler extends ChannelInboundHandlerAda
         }
     }
 
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (JConstants.PROTOCOL_V2) {
+            // 发起协议版本协商, 老版本的provider会忽略这个心跳包
+            ctx.writeAndFlush(Heartbeats.negotiateContent());
+        }
+
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        Channel ch = ctx.channel();
+
+        try {
+            // 进行中的调用立即失败, 不必等到超时
+            processor.handleInactive(NettyChannel.attachChannel(ch));
+        } catch (Throwable t) {
+            logger.error("An exception was caught: {}, on {} #channelInactive().", stackTrace(t), ch);
+        }
+
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
         Channel ch = ctx.channel();
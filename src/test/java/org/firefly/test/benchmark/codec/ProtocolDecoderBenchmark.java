@@ -0,0 +1,147 @@
+package org.firefly.test.benchmark.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.ReplayingDecoder;
+import io.netty.util.ReferenceCountUtil;
+import org.firefly.model.rpc.request.JRequestBytes;
+import org.firefly.model.transport.protocol.JProtocolHeader;
+import org.firefly.transport.api.exception.IoSignals;
+import org.firefly.transport.netty.handler.codec.decoder.ProtocolDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较 {@link ProtocolDecoder} (非重放) 与原 {@link ReplayingDecoder} 实现在消息体被拆成多个TCP分段到达时的解码开销.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ProtocolDecoderBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ProtocolDecoderBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    // 消息体大小
+    @Param({ "128", "65536", "1048576" })
+    int bodySize;
+
+    // 每个分段的大小, 模拟 MSS
+    @Param({ "1460" })
+    int segmentSize;
+
+    private ByteBuf frame;
+    private EmbeddedChannel nonReplayingChannel;
+    private EmbeddedChannel replayingChannel;
+
+    @Setup
+    public void setup() {
+        frame = PooledByteBufAllocator.DEFAULT.directBuffer(JProtocolHeader.HEAD_LENGTH + bodySize);
+        frame.writeShort(JProtocolHeader.MAGIC)
+                .writeByte(JProtocolHeader.toSign((byte) 0x01, JProtocolHeader.REQUEST))
+                .writeByte(0x00)
+                .writeLong(1L)
+                .writeInt(bodySize)
+                .writeZero(bodySize);
+
+        nonReplayingChannel = new EmbeddedChannel(new ProtocolDecoder());
+        replayingChannel = new EmbeddedChannel(new ReplayingProtocolDecoder());
+    }
+
+    @TearDown
+    public void tearDown() {
+        nonReplayingChannel.finishAndReleaseAll();
+        replayingChannel.finishAndReleaseAll();
+        frame.release();
+    }
+
+    @Benchmark
+    public Object nonReplayingDecoder() {
+        return decodeFragmented(nonReplayingChannel);
+    }
+
+    @Benchmark
+    public Object replayingDecoder() {
+        return decodeFragmented(replayingChannel);
+    }
+
+    private Object decodeFragmented(EmbeddedChannel channel) {
+        ByteBuf _frame = frame;
+        int length = _frame.readableBytes();
+        for (int i = 0; i < length; i += segmentSize) {
+            int segment = Math.min(segmentSize, length - i);
+            channel.writeInbound(_frame.retainedSlice(i, segment));
+        }
+        Object msg = channel.readInbound();
+        ReferenceCountUtil.release(msg);
+        return msg;
+    }
+
+    /**
+     * 原基于 {@link ReplayingDecoder} 的实现, 仅用于对比.
+     */
+    static class ReplayingProtocolDecoder extends ReplayingDecoder<ReplayingProtocolDecoder.State> {
+
+        private final JProtocolHeader header = new JProtocolHeader();
+
+        ReplayingProtocolDecoder() {
+            super(State.HEADER_MAGIC);
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+            switch (state()) {
+                case HEADER_MAGIC:
+                    if (in.readShort() != JProtocolHeader.MAGIC) {
+                        throw IoSignals.ILLEGAL_MAGIC;
+                    }
+                    checkpoint(State.HEADER_SIGN);
+                case HEADER_SIGN:
+                    header.sign(in.readByte());
+                    checkpoint(State.HEADER_STATUS);
+                case HEADER_STATUS:
+                    header.status(in.readByte());
+                    checkpoint(State.HEADER_ID);
+                case HEADER_ID:
+                    header.id(in.readLong());
+                    checkpoint(State.HEADER_BODY_LENGTH);
+                case HEADER_BODY_LENGTH:
+                    header.bodyLength(in.readInt());
+                    checkpoint(State.BODY);
+                case BODY:
+                    byte[] bytes = new byte[header.bodyLength()];
+                    in.readBytes(bytes);
+
+                    JRequestBytes request = new JRequestBytes(header.id());
+                    request.bytes(header.serializerCode(), bytes);
+                    out.add(request);
+                    checkpoint(State.HEADER_MAGIC);
+            }
+        }
+
+        enum State {
+            HEADER_MAGIC,
+            HEADER_SIGN,
+            HEADER_STATUS,
+            HEADER_ID,
+            HEADER_BODY_LENGTH,
+            BODY
+        }
+    }
+}
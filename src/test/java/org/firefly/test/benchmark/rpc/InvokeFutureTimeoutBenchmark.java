@@ -0,0 +1,109 @@
+package org.firefly.test.benchmark.rpc;
+
+import org.firefly.model.rpc.response.JResponse;
+import org.firefly.model.rpc.response.ResultWrapper;
+import org.firefly.model.rpc.type.DispatchType;
+import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.model.transport.configuration.Status;
+import org.firefly.rpc.consumer.proxy.future.DefaultInvokeFuture;
+import org.firefly.rpc.consumer.proxy.future.listener.JListener;
+import org.firefly.rpc.provider.processor.InJvmProviderProcessor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在 {@code outstanding} 个进行中(未超时也未收到响应)的调用的背景下:
+ *  1. registerAndReceive: 创建future(注册超时任务)并收到响应(取消超时任务)的开销, 应与进行中的调用数量无关;
+ *  2. timeoutLatency: 超时时间为 TIMEOUT_MILLIS 的调用从创建到超时通知的耗时, 超出 TIMEOUT_MILLIS 的部分即超时的触发延迟,
+ *     最多为一个时间轮刻度(firefly.rpc.invoke.timeout.tick.duration).
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class InvokeFutureTimeoutBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(InvokeFutureTimeoutBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    private static final JChannel CHANNEL = new InJvmProviderProcessor(false).channel();
+    private static final long TIMEOUT_MILLIS = 20;
+    private static final long OUTSTANDING_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final AtomicLong invokeIdGenerator = new AtomicLong();
+
+    @Param({ "0", "500000" })
+    int outstanding;
+
+    private long[] outstandingIds;
+
+    @Setup
+    public void setup() {
+        outstandingIds = new long[outstanding];
+        for (int i = 0; i < outstanding; i++) {
+            long invokeId = invokeIdGenerator.getAndIncrement();
+            DefaultInvokeFuture.with(
+                    invokeId, CHANNEL, Object.class, OUTSTANDING_TIMEOUT_MILLIS, DispatchType.ROUND);
+            outstandingIds[i] = invokeId;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (long invokeId : outstandingIds) {
+            DefaultInvokeFuture.received(CHANNEL, okResponse(invokeId));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public DefaultInvokeFuture<Object> registerAndReceive() {
+        long invokeId = invokeIdGenerator.getAndIncrement();
+        DefaultInvokeFuture<Object> future = DefaultInvokeFuture.with(
+                invokeId, CHANNEL, Object.class, OUTSTANDING_TIMEOUT_MILLIS, DispatchType.ROUND);
+        DefaultInvokeFuture.received(CHANNEL, okResponse(invokeId));
+        return future;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void timeoutLatency() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        DefaultInvokeFuture<Object> future = DefaultInvokeFuture.with(
+                invokeIdGenerator.getAndIncrement(), CHANNEL, Object.class, TIMEOUT_MILLIS, DispatchType.ROUND);
+        future.addListener(new JListener<Object>() {
+
+            @Override
+            public void complete(Object result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void failure(Throwable cause) {
+                latch.countDown();
+            }
+        });
+        latch.await();
+    }
+
+    private static JResponse okResponse(long invokeId) {
+        JResponse response = new JResponse(invokeId);
+        response.status(Status.OK);
+        response.result(new ResultWrapper());
+        return response;
+    }
+}
@@ -0,0 +1,109 @@
+package org.firefly.test.benchmark.rpc;
+
+import org.firefly.common.util.ThreadHints;
+import org.firefly.model.rpc.response.JResponse;
+import org.firefly.model.rpc.response.ResultWrapper;
+import org.firefly.model.rpc.type.DispatchType;
+import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.model.transport.configuration.Status;
+import org.firefly.rpc.consumer.proxy.future.DefaultInvokeFuture;
+import org.firefly.rpc.consumer.proxy.future.SpinWaitStrategy;
+import org.firefly.rpc.provider.processor.InJvmProviderProcessor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步调用 getResult() 的延迟分布(p50/p99见SampleTime的百分位输出), 比较直接park(spinWaitMaxNanos = 0)
+ * 与先自旋再park(spinWaitMaxNanos > 0).
+ *
+ * 另一个线程模拟provider, 收到请求后忙等 serviceNanos 再完成future; 需要多核机器, 单核上
+ * {@link SpinWaitStrategy} 不自旋, 两者结果相同.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SpinWaitBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(SpinWaitBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    private static final JChannel CHANNEL = new InJvmProviderProcessor(false).channel();
+    private static final long TIMEOUT_MILLIS = 3000;
+
+    @Param({ "0", "50000" })
+    long spinWaitMaxNanos;
+
+    @Param({ "5000", "20000" })
+    long serviceNanos;
+
+    private SpinWaitStrategy strategy;
+    private long invokeId;
+    private volatile long pendingId = -1;
+    private volatile boolean running;
+    private Thread responder;
+
+    @Setup
+    public void setup() {
+        strategy = SpinWaitStrategy.adaptive(spinWaitMaxNanos);
+        running = true;
+        responder = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (running) {
+                    long id = pendingId;
+                    if (id < 0) {
+                        Thread.yield();
+                        continue;
+                    }
+                    pendingId = -1;
+
+                    long deadline = System.nanoTime() + serviceNanos;
+                    while (System.nanoTime() < deadline) {
+                        ThreadHints.onSpinWait();
+                    }
+                    DefaultInvokeFuture.received(CHANNEL, okResponse(id));
+                }
+            }
+        }, "spin.wait.benchmark.responder");
+        responder.setDaemon(true);
+        responder.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        responder.join();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object invoke() throws Throwable {
+        long id = invokeId++;
+        DefaultInvokeFuture<Object> future = DefaultInvokeFuture
+                .with(id, CHANNEL, Object.class, TIMEOUT_MILLIS, DispatchType.ROUND)
+                .spinWaitStrategy(strategy);
+        pendingId = id;
+        return future.getResult();
+    }
+
+    private static JResponse okResponse(long invokeId) {
+        JResponse response = new JResponse(invokeId);
+        response.status(Status.OK);
+        response.result(new ResultWrapper());
+        return response;
+    }
+}
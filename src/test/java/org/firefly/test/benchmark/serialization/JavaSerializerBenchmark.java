@@ -0,0 +1,102 @@
+package org.firefly.test.benchmark.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.firefly.serialization.java.JavaSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较 {@link JavaSerializer} 每次新建对象流(fast = false)与复用线程内的对象流并缓存 resolveClass(fast = true).
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class JavaSerializerBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(JavaSerializerBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({ "false", "true" })
+    boolean fast;
+
+    private JavaSerializer serializer;
+    private Order order;
+    private byte[] bytes;
+    private ByteBuf buf;
+
+    @Setup
+    public void setup() {
+        serializer = new JavaSerializer(fast);
+
+        order = new Order();
+        order.id = 10086L;
+        order.buyer = "firefly";
+        order.amount = 99.9d;
+        for (int i = 0; i < 4; i++) {
+            Item item = new Item();
+            item.sku = "sku-" + i;
+            item.count = i + 1;
+            order.items.add(item);
+        }
+
+        bytes = serializer.writeObject(order);
+        buf = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length * 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buf.release();
+    }
+
+    @Benchmark
+    public byte[] writeBytes() {
+        return serializer.writeObject(order);
+    }
+
+    @Benchmark
+    public Order readBytes() {
+        return serializer.readObject(bytes, Order.class);
+    }
+
+    @Benchmark
+    public Order roundTripByteBuf() {
+        buf.clear();
+        serializer.writeObject(buf, order);
+        return serializer.readObject(buf, Order.class);
+    }
+
+    public static class Order implements Serializable {
+
+        private static final long serialVersionUID = -6571094360735622118L;
+
+        long id;
+        String buyer;
+        double amount;
+        List<Item> items = new ArrayList<>();
+    }
+
+    public static class Item implements Serializable {
+
+        private static final long serialVersionUID = 4213650218773960285L;
+
+        String sku;
+        int count;
+    }
+}
@@ -0,0 +1,107 @@
+package org.firefly.test.benchmark.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.SerializerType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较所有已注册的 serializer 在小而频繁的DTO上的序列化/反序列化开销, 重点是 ASM 生成的编解码器与 protostuff runtime schema.
+ *
+ * 注意: hessian 在 JDK 9+ 上需要 --add-opens java.base/java.lang=ALL-UNNAMED 等参数.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(SerializerBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Param({ "PROTO_STUFF", "HESSIAN", "KRYO", "JAVA", "ASM" })
+    String serializerType;
+
+    private Serializer serializer;
+    private User user;
+    private byte[] bytes;
+    private ByteBuf buf;
+
+    @Setup
+    public void setup() {
+        serializer = SerializerFactory.getSerializer(SerializerType.parse(serializerType).value());
+
+        user = new User();
+        user.id = 10086L;
+        user.age = 28;
+        user.vip = true;
+        user.score = 98.5d;
+        user.name = "firefly";
+        user.email = "firefly@example.com";
+        user.address = new Address();
+        user.address.city = "Hangzhou";
+        user.address.zipCode = 310000;
+
+        bytes = serializer.writeObject(user);
+        buf = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length * 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buf.release();
+    }
+
+    @Benchmark
+    public byte[] writeBytes() {
+        return serializer.writeObject(user);
+    }
+
+    @Benchmark
+    public User readBytes() {
+        return serializer.readObject(bytes, User.class);
+    }
+
+    @Benchmark
+    public User roundTripByteBuf() {
+        buf.clear();
+        serializer.writeObject(buf, user);
+        return serializer.readObject(buf, User.class);
+    }
+
+    public static class User implements Serializable {
+
+        private static final long serialVersionUID = 3316546154217436391L;
+
+        long id;
+        int age;
+        boolean vip;
+        double score;
+        String name;
+        String email;
+        Address address;
+    }
+
+    public static class Address implements Serializable {
+
+        private static final long serialVersionUID = -2176593532306914633L;
+
+        String city;
+        int zipCode;
+    }
+}
@@ -0,0 +1,165 @@
+package org.firefly.test.benchmark.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import org.firefly.model.transport.configuration.netty.JOption;
+import org.firefly.transport.netty.acceptor.NettyTcpAcceptor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模拟consumer集群同时重启时的"连接风暴": 多个线程同时向acceptor发起 STORM_SIZE 个连接,
+ * 统计acceptor全部accept完成的耗时, 比较单个server channel与 SO_REUSEPORT 绑定 N_BOSSES 个server channel.
+ *
+ * SO_REUSEPORT 只在 Linux native epoll 下生效, 其他平台上两组结果应该没有差别.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ConnectStormBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ConnectStormBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    private static final int PORT = 18190;
+    private static final int N_BOSSES = Runtime.getRuntime().availableProcessors();
+    private static final int STORM_SIZE = 2000;
+    private static final int CLIENT_THREADS = 32;
+
+    @Param({ "false", "true" })
+    boolean reusePort;
+
+    private StormAcceptor acceptor;
+    private ExecutorService clients;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        acceptor = new StormAcceptor(PORT, N_BOSSES);
+        acceptor.configGroup().parent().setOption(JOption.SO_REUSEPORT, reusePort);
+        acceptor.start(false);
+
+        clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        clients.shutdownNow();
+        acceptor.shutdownGracefully();
+    }
+
+    @Benchmark
+    public void connectStorm() throws Exception {
+        final CountDownLatch accepted = acceptor.expect(STORM_SIZE);
+        final AtomicInteger remaining = new AtomicInteger(STORM_SIZE);
+        final InetSocketAddress address = new InetSocketAddress("127.0.0.1", PORT);
+        final Queue<Socket> sockets = new ConcurrentLinkedQueue<>();
+
+        for (int i = 0; i < CLIENT_THREADS; i++) {
+            clients.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    while (remaining.getAndDecrement() > 0) {
+                        Socket socket = new Socket();
+                        sockets.add(socket);
+                        try {
+                            socket.connect(address, 10000);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            // 以服务端accept完成为准, 客户端connect返回时连接可能还在accept queue中
+            if (!accepted.await(30, TimeUnit.SECONDS)) {
+                throw new TimeoutException("accepted " + (STORM_SIZE - accepted.getCount()) + " of " + STORM_SIZE);
+            }
+        } finally {
+            // 服务端accept后先关闭连接, TIME_WAIT留在服务端, 不会耗尽客户端的本地端口
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    static class StormAcceptor extends NettyTcpAcceptor {
+
+        private final AcceptCounter counter = new AcceptCounter();
+
+        StormAcceptor(int port, int nBosses) {
+            super(port, nBosses, 1, true);
+        }
+
+        CountDownLatch expect(int count) {
+            CountDownLatch latch = new CountDownLatch(count);
+            counter.latch = latch;
+            return latch;
+        }
+
+        @Override
+        protected void doInit() {
+            configGroup().parent().setOption(JOption.SO_BACKLOG, 32768);
+            configGroup().parent().setOption(JOption.SO_REUSEADDR, true);
+        }
+
+        @Override
+        protected ChannelFuture bind(SocketAddress localAddress) {
+            initChannelFactory();
+
+            bootstrap().childHandler(new ChannelInitializer<Channel>() {
+
+                @Override
+                protected void initChannel(Channel ch) throws Exception {
+                    ch.pipeline().addLast(counter);
+                }
+            });
+
+            setOptions();
+
+            return bootstrap().bind(localAddress);
+        }
+    }
+
+    @ChannelHandler.Sharable
+    static class AcceptCounter extends ChannelInboundHandlerAdapter {
+
+        volatile CountDownLatch latch;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            CountDownLatch l = latch;
+            if (l != null) {
+                l.countDown();
+            }
+            ctx.close();
+        }
+    }
+}
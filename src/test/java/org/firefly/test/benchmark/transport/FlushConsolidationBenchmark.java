@@ -0,0 +1,154 @@
+package org.firefly.test.benchmark.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.ReferenceCountUtil;
+import org.firefly.model.rpc.response.JResponseBytes;
+import org.firefly.model.transport.channel.NettyChannel;
+import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.rpc.consumer.proxy.future.listener.JFutureListener;
+import org.firefly.transport.netty.handler.codec.encoder.ProtocolEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多个业务线程通过 {@link NettyChannel#write(Object, JFutureListener)} 并发写消息, 比较开启/关闭
+ * {@link FlushConsolidationHandler} 时的吞吐, 并在结束时输出每个消息平均触发的flush次数
+ * (每次真正到达transport的flush对应一次write/writev系统调用).
+ */
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class FlushConsolidationBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(FlushConsolidationBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    // 0 表示不合并flush
+    @Param({ "0", "256" })
+    int explicitFlushAfterFlushes;
+
+    // 每条连接上未完成(listener未回调)的写请求上限, 防止outbound buffer无限增长
+    private static final int MAX_PENDING_WRITES = 4096;
+
+    private static final byte[] BODY = new byte[128];
+
+    private final AtomicLong messages = new AtomicLong();
+    private final FlushCounter flushCounter = new FlushCounter();
+    private final Semaphore pendingWrites = new Semaphore(MAX_PENDING_WRITES);
+
+    private EventLoopGroup serverGroup;
+    private EventLoopGroup clientGroup;
+    private Channel serverChannel;
+    private JChannel channel;
+
+    private final JFutureListener<JChannel> listener = new JFutureListener<JChannel>() {
+
+        @Override
+        public void operationSuccess(JChannel channel) throws Exception {
+            pendingWrites.release();
+        }
+
+        @Override
+        public void operationFailure(JChannel channel, Throwable cause) throws Exception {
+            pendingWrites.release();
+        }
+    };
+
+    @Setup
+    public void setup() throws InterruptedException {
+        serverGroup = new NioEventLoopGroup(1);
+        clientGroup = new NioEventLoopGroup(1);
+
+        serverChannel = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInboundHandlerAdapter() {
+
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                        ReferenceCountUtil.release(msg); // 丢弃
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+
+        final ProtocolEncoder encoder = new ProtocolEncoder();
+        Channel ch = new Bootstrap()
+                .group(clientGroup)
+                .channel(NioSocketChannel.class)
+                .handler(new ChannelInitializer<Channel>() {
+
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ChannelPipeline pipeline = ch.pipeline();
+                        // 位于最靠近transport的位置, 统计真正到达socket的flush次数
+                        pipeline.addLast(flushCounter);
+                        if (explicitFlushAfterFlushes > 0) {
+                            pipeline.addLast(new FlushConsolidationHandler(explicitFlushAfterFlushes, true));
+                        }
+                        pipeline.addLast(encoder);
+                    }
+                })
+                .connect(serverChannel.localAddress()).sync().channel();
+
+        channel = NettyChannel.attachChannel(ch);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        long m = messages.get();
+        long f = flushCounter.flushes.get();
+        System.out.printf("%nexplicitFlushAfterFlushes=%d, messages=%d, flushes=%d, flushes per message=%.4f%n",
+                explicitFlushAfterFlushes, m, f, m == 0 ? 0d : (double) f / m);
+
+        channel.close();
+        serverChannel.close().sync();
+        clientGroup.shutdownGracefully().sync();
+        serverGroup.shutdownGracefully().sync();
+    }
+
+    @Benchmark
+    public void write() throws InterruptedException {
+        pendingWrites.acquire();
+
+        JResponseBytes response = new JResponseBytes(messages.getAndIncrement());
+        response.status((byte) 0x20);
+        response.bytes((byte) 0x01, BODY);
+
+        channel.write(response, listener);
+    }
+
+    @ChannelHandler.Sharable
+    static class FlushCounter extends ChannelOutboundHandlerAdapter {
+
+        final AtomicLong flushes = new AtomicLong();
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes.incrementAndGet();
+            super.flush(ctx);
+        }
+    }
+}
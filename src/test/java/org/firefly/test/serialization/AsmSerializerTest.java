@@ -0,0 +1,74 @@
+package org.firefly.test.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.SerializerType;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+
+public class AsmSerializerTest {
+
+    public static void main(String[] args) throws Exception {
+        Serializer serializer = SerializerFactory.getSerializer(SerializerType.ASM.value());
+        // 提前生成编解码器, 避免第一次调用时生成字节码
+        serializer.warmUp(ResultWrapper.class, SerializerObj.class);
+
+        ResultWrapper wrapper = new ResultWrapper();
+        wrapper.setResult("test");
+        wrapper.setError(new RuntimeException("test"));
+        wrapper.setClazz(new Class[] { String.class, ArrayList.class, Serializable.class });
+        byte[] bytes = serializer.writeObject(wrapper);
+        ResultWrapper wrapper1 = serializer.readObject(bytes, ResultWrapper.class);
+        wrapper1.getError().printStackTrace();
+        System.out.println(bytes.length);
+        System.out.println(wrapper1.getResult());
+
+        // 可以生成编解码器的类型直接按字段读写, 其余类型(集合, 异常等)交给protostuff
+        SerializerInterface obj = new SerializerObj();
+        obj.setStr("SerializerObj1");
+        wrapper.setResult(obj);
+        wrapper.setError(null);
+        bytes = serializer.writeObject(wrapper);
+        ResultWrapper wrapper2 = serializer.readObject(bytes, ResultWrapper.class);
+        System.out.println(bytes.length);
+        System.out.println(wrapper2.getResult());
+
+        // 零拷贝: 直接序列化到 ByteBuf 中, 再从 direct ByteBuf 中反序列化
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
+        try {
+            serializer.writeObject(buf, wrapper);
+            ResultWrapper wrapper3 = serializer.readObject(buf, ResultWrapper.class);
+            System.out.println(wrapper3.getResult());
+        } finally {
+            buf.release();
+        }
+
+        // 不同ClassLoader中的同名类: 按线程上下文ClassLoader解析, 不会拿到另一个ClassLoader缓存的Class
+        URL classes = AsmSerializerTest.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader1 = new URLClassLoader(new URL[] { classes }, null);
+        ClassLoader loader2 = new URLClassLoader(new URL[] { classes }, null);
+        Constructor<?> constructor = loader1.loadClass(SerializerObj.class.getName()).getDeclaredConstructor();
+        constructor.setAccessible(true); // 不同ClassLoader中是不同的运行时包, 包级可见性不再适用
+        wrapper.setResult(constructor.newInstance());
+        bytes = serializer.writeObject(wrapper);
+        ClassLoader tccl = Thread.currentThread().getContextClassLoader();
+        try {
+            for (ClassLoader loader : new ClassLoader[] { loader1, loader2, loader1 }) {
+                Thread.currentThread().setContextClassLoader(loader);
+                Object o = serializer.readObject(bytes, ResultWrapper.class).getResult();
+                if (o.getClass().getClassLoader() != loader) {
+                    throw new AssertionError("resolved by " + o.getClass().getClassLoader() + ", expected " + loader);
+                }
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(tccl);
+        }
+        System.out.println("class loader isolation ok");
+    }
+}
@@ -0,0 +1,36 @@
+package org.firefly.test.serialization;
+
+import org.firefly.serialization.BufSizeEstimator;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.SerializerType;
+
+public class BufSizeEstimatorTest {
+
+    public static void main(String[] args) {
+        BufSizeEstimator estimator = new BufSizeEstimator("test");
+        BufSizeEstimator.Estimate estimate = estimator.estimate(ResultWrapper.class);
+        System.out.println("initial: " + estimate.guess());
+
+        // 大的结果一次上调, 之后连续两次明显变小才下调一格
+        int[] sizes = { 100 * 1024, 100 * 1024, 40 * 1024, 40 * 1024, 40 * 1024, 40 * 1024, 200 };
+        for (int size : sizes) {
+            estimate.record(size);
+            System.out.println("record " + size + " -> guess " + estimate.guess());
+        }
+
+        // 同一类型序列化出的大结果, 之后按估计的大小预先分配缓冲区
+        Serializer serializer = SerializerFactory.getSerializer(SerializerType.PROTO_STUFF.value());
+        ResultWrapper wrapper = new ResultWrapper();
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 64 * 1024; i++) {
+            buf.append('a');
+        }
+        wrapper.setResult(buf.toString());
+        for (int i = 0; i < 3; i++) {
+            byte[] bytes = serializer.writeObject(wrapper);
+            ResultWrapper wrapper1 = serializer.readObject(bytes, ResultWrapper.class);
+            System.out.println(bytes.length + " " + ((String) wrapper1.getResult()).length());
+        }
+    }
+}
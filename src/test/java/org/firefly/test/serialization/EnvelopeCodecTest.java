@@ -0,0 +1,61 @@
+package org.firefly.test.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.firefly.model.rpc.metadata.ServiceMetadata;
+import org.firefly.model.rpc.request.MessageWrapper;
+import org.firefly.rpc.tracking.TraceId;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.SerializerType;
+import org.firefly.serialization.envelope.EnvelopeCodec;
+import org.firefly.serialization.envelope.EnvelopeDictionary;
+
+public class EnvelopeCodecTest {
+
+    public static void main(String[] args) {
+        MessageWrapper message = new MessageWrapper(new ServiceMetadata("test", "EnvelopeService", "1.0.0"));
+        message.setAppName("envelope-test");
+        message.setMethodName("sayHello");
+        message.setArgs(new Object[] { "firefly", 1, null });
+        message.setTraceId(TraceId.newInstance("envelope", 1));
+
+        for (SerializerType type : new SerializerType[] { SerializerType.PROTO_STUFF, SerializerType.KRYO }) {
+            Serializer serializer = SerializerFactory.getSerializer(type.value());
+
+            // 信封只把参数交给serializer, 服务元数据与traceId直接按字段写入
+            byte[] bytes = EnvelopeCodec.writeMessage(serializer, message);
+            System.out.println(type + " envelope: " + bytes.length + ", plain: " + serializer.writeObject(message).length);
+            System.out.println(EnvelopeCodec.readMessage(serializer, bytes));
+
+            ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
+            try {
+                EnvelopeCodec.writeMessage(serializer, message, buf);
+                System.out.println(EnvelopeCodec.readMessage(serializer, buf));
+            } finally {
+                buf.release();
+            }
+
+            org.firefly.model.rpc.response.ResultWrapper result = new org.firefly.model.rpc.response.ResultWrapper();
+            result.setResult("hello");
+            System.out.println(EnvelopeCodec.readResult(serializer, EnvelopeCodec.writeResult(serializer, result)).getResult());
+
+            // void/null 返回值不经过serializer, 只有一个字节
+            result.setResult(null);
+            System.out.println(EnvelopeCodec.writeResult(serializer, result).length);
+
+            // 连接级字典: 第一次携带字符串定义id, provider确认之后只携带id
+            EnvelopeDictionary consumerDictionary = new EnvelopeDictionary(16);
+            EnvelopeDictionary providerDictionary = new EnvelopeDictionary(16);
+            for (int i = 0; i < 2; i++) {
+                bytes = EnvelopeCodec.writeMessage(serializer, message, consumerDictionary);
+                int definedId = EnvelopeCodec.definedId(bytes);
+                System.out.println("kind: " + bytes[0] + ", size: " + bytes.length);
+                System.out.println(EnvelopeCodec.readMessage(serializer, bytes, providerDictionary));
+                if (definedId >= 0) {
+                    consumerDictionary.confirm(definedId);
+                }
+            }
+        }
+    }
+}
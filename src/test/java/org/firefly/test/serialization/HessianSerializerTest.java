@@ -0,0 +1,73 @@
+package org.firefly.test.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.SerializerType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class HessianSerializerTest {
+
+    public static void main(String[] args) {
+        Serializer serializer = SerializerFactory.getSerializer(SerializerType.HESSIAN.value());
+        ResultWrapper wrapper = new ResultWrapper();
+        wrapper.setResult("test");
+        wrapper.setError(new RuntimeException("test"));
+        wrapper.setClazz(new Class[] { String.class, ArrayList.class, Serializable.class });
+        byte[] bytes = serializer.writeObject(wrapper);
+        ResultWrapper wrapper1 = serializer.readObject(bytes, ResultWrapper.class);
+        wrapper1.getError().printStackTrace();
+        System.out.println(bytes.length);
+        System.out.println(wrapper1.getResult());
+        System.out.println(String.valueOf(wrapper1.getResult()));
+
+        SerializerInterface obj = new SerializerObj();
+        obj.setStr("SerializerObj1");
+        wrapper.setResult(obj);
+        wrapper.setError(null);
+        bytes = serializer.writeObject(wrapper);
+        ResultWrapper wrapper2 = serializer.readObject(bytes, ResultWrapper.class);
+        System.out.println(bytes.length);
+        System.out.println(wrapper2.getResult());
+
+        // 零拷贝: 直接序列化到 ByteBuf 中, 再从 direct ByteBuf 中反序列化
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
+        try {
+            serializer.writeObject(buf, wrapper);
+            ResultWrapper wrapper3 = serializer.readObject(buf, ResultWrapper.class);
+            System.out.println(wrapper3.getResult());
+        } finally {
+            buf.release();
+        }
+
+        // 读取在数据中间失败时 Hessian2Input 的缓冲区中还留有没读完的字节, 同一个线程的下一次读取不能受影响
+        wrapper.setResult("marker");
+        bytes = serializer.writeObject(wrapper);
+        byte[] corrupted = bytes.clone();
+        corrupted[lastIndexOf(bytes, "marker".getBytes()) - 1] = 'X'; // 改坏字符串的类型标记
+        try {
+            serializer.readObject(corrupted, ResultWrapper.class);
+            throw new AssertionError("corrupted bytes read");
+        } catch (Exception e) {
+            System.out.println("corrupted: " + e);
+        }
+        ResultWrapper wrapper4 = serializer.readObject(bytes, ResultWrapper.class);
+        if (!"marker".equals(wrapper4.getResult())) {
+            throw new AssertionError("read after failure: " + wrapper4.getResult());
+        }
+        System.out.println(wrapper4.getResult());
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte[] target) {
+        for (int i = bytes.length - target.length; i >= 0; i--) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + target.length), target)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+}
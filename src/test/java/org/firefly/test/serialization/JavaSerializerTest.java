@@ -1,15 +1,20 @@
 package org.firefly.test.serialization;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.firefly.serialization.Serializer;
 import org.firefly.serialization.SerializerFactory;
 import org.firefly.serialization.SerializerType;
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
 
 public class JavaSerializerTest {
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws Exception {
         Serializer serializer = SerializerFactory.getSerializer(SerializerType.JAVA.value());
         ResultWrapper wrapper = new ResultWrapper();
         wrapper.setResult("test");
@@ -32,6 +37,38 @@ public class JavaSerializerTest {
         ResultWrapper wrapper2 = serializer.readObject(bytes, ResultWrapper.class);
         System.out.println(wrapper2.getResult());
         System.out.println(String.valueOf(wrapper2.getResult()));
+
+        // 零拷贝: 直接从 direct ByteBuf 中反序列化
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length);
+        try {
+            buf.writeBytes(bytes);
+            ResultWrapper wrapper3 = serializer.readObject(buf, ResultWrapper.class);
+            System.out.println(wrapper3.getResult());
+        } finally {
+            buf.release();
+        }
+
+        // 不同ClassLoader中的同名类: 按线程上下文ClassLoader解析, 不会拿到另一个ClassLoader缓存的Class
+        URL classes = JavaSerializerTest.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader1 = new URLClassLoader(new URL[] { classes }, null);
+        ClassLoader loader2 = new URLClassLoader(new URL[] { classes }, null);
+        Constructor<?> constructor = loader1.loadClass(SerializerObj.class.getName()).getDeclaredConstructor();
+        constructor.setAccessible(true); // 不同ClassLoader中是不同的运行时包, 包级可见性不再适用
+        Object isolated = constructor.newInstance();
+        bytes = serializer.writeObject(isolated);
+        ClassLoader tccl = Thread.currentThread().getContextClassLoader();
+        try {
+            for (ClassLoader loader : new ClassLoader[] { loader1, loader2, loader1 }) {
+                Thread.currentThread().setContextClassLoader(loader);
+                Object o = serializer.readObject(bytes, Object.class);
+                if (o.getClass().getClassLoader() != loader) {
+                    throw new AssertionError("resolved by " + o.getClass().getClassLoader() + ", expected " + loader);
+                }
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(tccl);
+        }
+        System.out.println("class loader isolation ok");
     }
 }
 
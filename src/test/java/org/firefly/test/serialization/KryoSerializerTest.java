@@ -0,0 +1,59 @@
+package org.firefly.test.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.SerializerType;
+import org.firefly.serialization.kryo.KryoSerializer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+public class KryoSerializerTest {
+
+    public static void main(String[] args) {
+        // 注册过的类型只写入类型id, consumer与provider需要以相同顺序注册
+        KryoSerializer.registerClass(SerializerObj.class);
+
+        Serializer serializer = SerializerFactory.getSerializer(SerializerType.KRYO.value());
+        ResultWrapper wrapper = new ResultWrapper();
+        wrapper.setResult("test");
+        wrapper.setError(new RuntimeException("test"));
+        wrapper.setClazz(new Class[] { String.class, ArrayList.class, Serializable.class });
+        byte[] bytes = serializer.writeObject(wrapper);
+        ResultWrapper wrapper1 = serializer.readObject(bytes, ResultWrapper.class);
+        wrapper1.getError().printStackTrace();
+        System.out.println(bytes.length);
+        System.out.println(wrapper1.getResult());
+        System.out.println(String.valueOf(wrapper1.getResult()));
+
+        SerializerInterface obj = new SerializerObj();
+        obj.setStr("SerializerObj1");
+        wrapper.setResult(obj);
+        wrapper.setError(null);
+        bytes = serializer.writeObject(wrapper);
+        ResultWrapper wrapper2 = serializer.readObject(bytes, ResultWrapper.class);
+        System.out.println(bytes.length);
+        System.out.println(wrapper2.getResult());
+
+        // 零拷贝: 直接序列化到 ByteBuf 中, 再从 direct ByteBuf 中反序列化
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
+        try {
+            serializer.writeObject(buf, wrapper);
+            ResultWrapper wrapper3 = serializer.readObject(buf, ResultWrapper.class);
+            System.out.println(wrapper3.getResult());
+        } finally {
+            buf.release();
+        }
+
+        // 默认记录对象引用, 循环引用的对象图可以正常序列化
+        ResultWrapper cyclic = new ResultWrapper();
+        cyclic.setResult(cyclic);
+        ResultWrapper cyclic1 = serializer.readObject(serializer.writeObject(cyclic), ResultWrapper.class);
+        if (cyclic1.getResult() != cyclic1) {
+            throw new AssertionError("cyclic reference lost");
+        }
+        System.out.println("cyclic ok");
+    }
+}
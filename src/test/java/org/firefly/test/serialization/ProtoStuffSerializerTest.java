@@ -1,9 +1,12 @@
 package org.firefly.test.serialization;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.firefly.serialization.Serializer;
 import org.firefly.serialization.SerializerFactory;
 import org.firefly.serialization.SerializerType;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 public class ProtoStuffSerializerTest {
@@ -31,5 +34,21 @@ public class ProtoStuffSerializerTest {
         ResultWrapper wrapper2 = serializer.readObject(bytes, ResultWrapper.class);
         System.out.println(wrapper2.getResult());
         System.out.println(String.valueOf(wrapper2.getResult()));
+
+        // 零拷贝: 直接从 direct ByteBuf 中反序列化
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length);
+        try {
+            buf.writeBytes(bytes);
+            ResultWrapper wrapper3 = serializer.readObject(buf, ResultWrapper.class);
+            System.out.println(wrapper3.getResult());
+        } finally {
+            buf.release();
+        }
+
+        // 直接从堆外的 ByteBuffer 中反序列化
+        ByteBuffer nioBuf = ByteBuffer.allocateDirect(bytes.length);
+        nioBuf.put(bytes).flip();
+        ResultWrapper wrapper4 = serializer.readObject(nioBuf, ResultWrapper.class);
+        System.out.println(wrapper4.getResult());
     }
 }
@@ -0,0 +1,164 @@
+package org.firefly.test.transport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import org.firefly.model.rpc.request.JRequestBytes;
+import org.firefly.model.transport.channel.NettyChannel;
+import org.firefly.model.transport.protocol.JProtocolHeader;
+import org.firefly.serialization.SerializerType;
+import org.firefly.transport.api.exception.IoSignals;
+import org.firefly.transport.netty.handler.codec.decoder.ProtocolDecoder;
+import org.firefly.transport.netty.handler.codec.encoder.ProtocolEncoder;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 分块传输的流量控制: 接收端收到第一块就把消息体以流的形式交给上层, 发送端只发送接收端授予的窗口以内的数据,
+ * 业务线程读完一块即释放并补充credit, 所以接收端缓存的数据与消息体大小无关;
+ * 接收端放弃读取时发送端提前结束该流; 不遵守窗口的对端被断开.
+ */
+public class ChunkedTransferBackpressureTest {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int WINDOW = 64 * 1024;
+    private static final int BODY_SIZE = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        // 必须在 JConstants 初始化之前设置
+        System.setProperty("firefly.io.chunked.transfer", "true");
+        System.setProperty("firefly.io.chunk.size", String.valueOf(CHUNK_SIZE));
+        System.setProperty("firefly.io.chunked.stream.window", String.valueOf(WINDOW));
+
+        // 与真实的pipeline一样, 两端都需要decoder处理对端的 CHUNK_CREDIT
+        EmbeddedChannel sender =
+                new EmbeddedChannel(new ChunkedWriteHandler(), new ProtocolDecoder(), new ProtocolEncoder());
+        EmbeddedChannel receiver =
+                new EmbeddedChannel(new ChunkedWriteHandler(), new ProtocolDecoder(), new ProtocolEncoder());
+        NettyChannel.attachChannel(sender).protocolVersion(JProtocolHeader.PROTOCOL_VERSION_2);
+        NettyChannel.attachChannel(receiver).protocolVersion(JProtocolHeader.PROTOCOL_VERSION_2);
+
+        byte[] body = new byte[BODY_SIZE];
+        new Random(7).nextBytes(body);
+
+        // 边接收边读, 接收端缓存的数据不超过第一块加上一个窗口
+        JRequestBytes request = new JRequestBytes();
+        request.bytes(SerializerType.PROTO_STUFF.value(), body);
+        sender.writeAndFlush(request);
+
+        check(pump(sender, receiver) == CHUNK_SIZE, "only the first chunk may be sent without credit");
+        JRequestBytes received = receiver.readInbound();
+        check(received != null && received.inputStream() != null, "body not streamed on the first chunk");
+
+        InputStream in = received.inputStream();
+        byte[] read = new byte[BODY_SIZE];
+        int readBytes = 0;
+        long delivered = CHUNK_SIZE;
+        long maxBuffered = 0;
+        for (;;) {
+            pump(receiver, sender); // credit
+            delivered += pump(sender, receiver);
+            maxBuffered = Math.max(maxBuffered, delivered - readBytes);
+
+            int available = in.available();
+            if (available == 0) {
+                break;
+            }
+            while (available > 0) {
+                int n = in.read(read, readBytes, available);
+                readBytes += n;
+                available = in.available();
+            }
+        }
+        check(readBytes == BODY_SIZE && in.read() == -1, "body truncated: " + readBytes);
+        check(Arrays.equals(body, read), "body mismatch");
+        check(maxBuffered <= CHUNK_SIZE + WINDOW, "buffered too much: " + maxBuffered);
+        received.nullBytes();
+
+        // 接收端没有读完就放弃, 发送端以一个空的最后一块结束该流
+        request = new JRequestBytes();
+        request.bytes(SerializerType.PROTO_STUFF.value(), body);
+        sender.writeAndFlush(request);
+        pump(sender, receiver);
+        received = receiver.readInbound();
+        pump(receiver, sender);
+        delivered = pump(sender, receiver);
+        received.nullBytes(); // 取消
+        pump(receiver, sender);
+        delivered += pump(sender, receiver);
+        check(delivered <= WINDOW, "sent after cancel: " + delivered);
+        check(NettyChannel.attachChannel(sender).chunkedBody(request.invokeId()) == null, "stream not ended");
+
+        // 同一个连接上的下一个流不受影响
+        request = new JRequestBytes();
+        request.bytes(SerializerType.PROTO_STUFF.value(), new byte[CHUNK_SIZE * 2]);
+        sender.writeAndFlush(request);
+        pump(sender, receiver);
+        pump(receiver, sender);
+        pump(sender, receiver);
+        received = receiver.readInbound();
+        check(received != null && received.invokeId() == request.invokeId(), "next stream");
+        in = received.inputStream();
+        check(in.skip(CHUNK_SIZE * 2) == CHUNK_SIZE * 2 && in.read() == -1, "next stream body");
+        received.nullBytes();
+
+        // 对端不遵守窗口时断开
+        long id = 1L << 40;
+        receiver.writeInbound(chunk(id, CHUNK_SIZE, false));
+        received = receiver.readInbound(); // 不读取
+        try {
+            for (int i = 0; i < 16; i++) {
+                receiver.writeInbound(chunk(id, CHUNK_SIZE, false));
+            }
+            throw new AssertionError("window not enforced");
+        } catch (DecoderException e) {
+            check(e.getCause() == IoSignals.TOO_MANY_CHUNKED_BYTES, "cause: " + e.getCause());
+        }
+        received.nullBytes();
+
+        System.out.println("ok");
+
+        sender.finishAndReleaseAll();
+        receiver.releaseInbound(); // 解码失败后连接由 exceptionCaught 关闭, 这里不再 finish
+        receiver.releaseOutbound();
+    }
+
+    // 把 from 写出的帧交给 to, 返回其中分块的消息体字节数
+    private static long pump(EmbeddedChannel from, EmbeddedChannel to) {
+        long bytes = 0;
+        for (ByteBuf frame; (frame = from.readOutbound()) != null; ) {
+            if (frame.getByte(frame.readerIndex() + 2) != JProtocolHeader.CHUNK_CREDIT) {
+                bytes += frame.getInt(frame.readerIndex() + 14); // v2 body length
+            }
+            to.writeInbound(frame);
+        }
+        return bytes;
+    }
+
+    private static ByteBuf chunk(long id, int length, boolean last) {
+        byte flags = JProtocolHeader.FLAG_CHUNK;
+        if (last) {
+            flags |= JProtocolHeader.FLAG_LAST_CHUNK;
+        }
+        return Unpooled.buffer()
+                .writeShort(JProtocolHeader.MAGIC_V2)
+                .writeByte(JProtocolHeader.REQUEST)
+                .writeByte(SerializerType.PROTO_STUFF.value())
+                .writeByte(0)
+                .writeByte(flags)
+                .writeLong(id)
+                .writeInt(length)
+                .writeShort(0)
+                .writeZero(length);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.firefly.test.transport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import org.firefly.model.rpc.metadata.ServiceMetadata;
+import org.firefly.model.rpc.request.JRequestBytes;
+import org.firefly.model.rpc.request.MessageWrapper;
+import org.firefly.model.transport.channel.NettyChannel;
+import org.firefly.model.transport.protocol.JProtocolHeader;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.SerializerType;
+import org.firefly.serialization.compression.DeflateCompressor;
+import org.firefly.transport.netty.handler.codec.decoder.ProtocolDecoder;
+import org.firefly.transport.netty.handler.codec.encoder.ProtocolEncoder;
+
+/**
+ * 同时开启压缩与分块传输: 业务线程先压缩, encoder再把压缩后的消息体分块, decoder收到第一块就以流的形式交给上层,
+ * 业务线程边读边解压并反序列化.
+ */
+public class CompressedChunkedTransferTest {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        // 必须在 JConstants 初始化之前设置
+        System.setProperty("firefly.io.chunked.transfer", "true");
+        System.setProperty("firefly.io.chunk.size", String.valueOf(CHUNK_SIZE));
+
+        // 发送端需要decoder处理接收端的 CHUNK_CREDIT
+        EmbeddedChannel sender =
+                new EmbeddedChannel(new ChunkedWriteHandler(), new ProtocolDecoder(), new ProtocolEncoder());
+        EmbeddedChannel receiver = new EmbeddedChannel(new ProtocolDecoder());
+        NettyChannel jChannel = NettyChannel.attachChannel(sender);
+        jChannel.protocolVersion(JProtocolHeader.PROTOCOL_VERSION_2);
+        NettyChannel.attachChannel(receiver).protocolVersion(JProtocolHeader.PROTOCOL_VERSION_2);
+
+        // 可压缩的大参数, 压缩之后仍然大于 CHUNK_SIZE
+        StringBuilder arg = new StringBuilder();
+        java.util.Random random = new java.util.Random(7);
+        for (int i = 0; i < 512 * 1024; i++) {
+            arg.append((char) ('a' + random.nextInt(8)));
+        }
+        MessageWrapper message = new MessageWrapper(new ServiceMetadata("test", "CompressedChunked", "1.0.0"));
+        message.setMethodName("echo");
+        message.setArgs(new Object[] { arg.toString() });
+
+        Serializer serializer = SerializerFactory.getSerializer(SerializerType.PROTO_STUFF.value());
+        JRequestBytes request = new JRequestBytes();
+        request.bytes(serializer.code(), serializer.writeObject(message));
+        request.compressThreshold(1024);
+        int rawSize = request.size();
+
+        DeflateCompressor.compress(request, jChannel);
+        check((request.flags() & JProtocolHeader.FLAG_COMPRESSED) != 0, "not compressed");
+        int compressedSize = request.size();
+        check(compressedSize > CHUNK_SIZE, "compressed body is not large enough to be chunked: " + compressedSize);
+
+        sender.writeAndFlush(request);
+
+        // 第一块之后, 接收端授予的默认窗口足够发送剩下的所有块
+        int frames = 0;
+        for (int credits = -1; credits != 0; ) {
+            for (ByteBuf frame; (frame = sender.readOutbound()) != null; frames++) {
+                receiver.writeInbound(frame);
+            }
+            credits = 0;
+            for (ByteBuf frame; (frame = receiver.readOutbound()) != null; credits++) {
+                sender.writeInbound(frame);
+            }
+        }
+        check(frames == (compressedSize + CHUNK_SIZE - 1) / CHUNK_SIZE, "frames: " + frames);
+
+        JRequestBytes received = receiver.readInbound();
+        check(received != null, "no request received");
+        check(received.invokeId() == request.invokeId(), "invoke id");
+        check((received.flags() & JProtocolHeader.FLAG_COMPRESSED) != 0, "flag lost");
+        check(received.inputStream() != null, "body not streamed");
+
+        DeflateCompressor.decompress(received);
+        check((received.flags() & JProtocolHeader.FLAG_COMPRESSED) == 0, "flag not cleared");
+
+        MessageWrapper decoded = serializer.readObject(received.inputStream(), MessageWrapper.class);
+        received.nullBytes();
+        check(arg.toString().equals(decoded.getArgs()[0]), "body mismatch");
+
+        System.out.println("raw=" + rawSize + ", compressed=" + compressedSize + ", frames=" + frames + ", ok");
+
+        sender.finishAndReleaseAll();
+        receiver.finishAndReleaseAll();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
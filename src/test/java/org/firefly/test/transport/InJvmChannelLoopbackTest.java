@@ -0,0 +1,107 @@
+package org.firefly.test.transport;
+
+import org.firefly.common.util.Ints;
+import org.firefly.model.rpc.metadata.ServiceWrapper;
+import org.firefly.model.rpc.request.JRequestBytes;
+import org.firefly.model.rpc.request.MessageWrapper;
+import org.firefly.model.rpc.type.DispatchType;
+import org.firefly.model.transport.channel.InJvmChannel;
+import org.firefly.model.transport.channel.interfice.JChannel;
+import org.firefly.model.transport.protocol.JProtocolHeader;
+import org.firefly.rpc.consumer.proxy.future.DefaultInvokeFuture;
+import org.firefly.rpc.consumer.proxy.future.listener.JFutureListener;
+import org.firefly.rpc.provider.annotation.ServiceProvider;
+import org.firefly.rpc.provider.annotation.ServiceProviderImpl;
+import org.firefly.rpc.provider.processor.InJvmProviderProcessor;
+import org.firefly.rpc.provider.server.servicecontainer.DefaultServiceProviderContainer;
+import org.firefly.rpc.provider.server.servicecontainer.InJvmProviders;
+import org.firefly.rpc.provider.server.servicewrapperfactory.DefaultServiceWrapperProducer;
+import org.firefly.serialization.Serializer;
+import org.firefly.serialization.SerializerFactory;
+import org.firefly.serialization.SerializerType;
+
+/**
+ * 已序列化的请求写入 {@link InJvmChannel} 后回环交给provider, 响应序列化(及压缩)后再回环交给consumer的future.
+ */
+public class InJvmChannelLoopbackTest {
+
+    @ServiceProvider(group = "test")
+    public interface Echo {
+
+        String echo(String s);
+    }
+
+    @ServiceProviderImpl(version = "1.0.0")
+    public static class EchoImpl implements Echo {
+
+        @Override
+        public String echo(String s) {
+            return "echo " + s;
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        // 只发布到同一个JVM中, 不启动server
+        ServiceWrapper wrapper = new DefaultServiceWrapperProducer(new DefaultServiceProviderContainer())
+                .provider(new EchoImpl())
+                .register();
+        InJvmProviders.registerService(wrapper);
+
+        InJvmProviderProcessor processor = new InJvmProviderProcessor(false);
+        JChannel channel = processor.channel();
+        Serializer serializer = SerializerFactory.getSerializer(SerializerType.PROTO_STUFF.value());
+
+        check("echo x".equals(call(channel, serializer, wrapper, "x", 0)), "plain");
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 4096; i++) {
+            large.append('a');
+        }
+        // 要求provider压缩响应, consumer端在反序列化之前解压
+        check(("echo " + large).equals(call(channel, serializer, wrapper, large.toString(), 64)), "compressed");
+
+        check(channel.inFlightFutures().isEmpty(), "in-flight futures not removed");
+
+        System.out.println("ok");
+    }
+
+    private static String call(JChannel channel, Serializer serializer, ServiceWrapper wrapper, String arg,
+                               int compressThreshold) throws Throwable {
+
+        MessageWrapper message = new MessageWrapper(wrapper.getMetadata());
+        message.setMethodName("echo");
+        message.setArgs(new Object[] { arg });
+
+        JRequestBytes request = new JRequestBytes();
+        request.bytes(serializer.code(), serializer.writeObject(message));
+        if (compressThreshold > 0) {
+            request.extension(JProtocolHeader.EXT_COMPRESS_THRESHOLD, Ints.toByteArray(compressThreshold));
+        }
+
+        DefaultInvokeFuture<String> future = DefaultInvokeFuture
+                .with(request.invokeId(), channel, String.class, 3000, DispatchType.ROUND);
+        final boolean[] written = new boolean[1];
+        channel.write(request, new JFutureListener<JChannel>() {
+
+            @Override
+            public void operationSuccess(JChannel channel) throws Exception {
+                written[0] = true;
+            }
+
+            @Override
+            public void operationFailure(JChannel channel, Throwable cause) throws Exception {
+                throw new AssertionError(cause);
+            }
+        });
+        check(written[0], "write not completed");
+        request.nullBytes(); // 与远程调用一样, 写出后释放不影响provider
+
+        return future.getResult();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}